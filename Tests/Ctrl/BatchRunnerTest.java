@@ -0,0 +1,192 @@
+package Ctrl;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests the batch mode without GUI.
+ */
+public class BatchRunnerTest {
+    private static final int W = 40;
+    private static final int H = 30;
+    private static final String[] NAMES = {"1:10.png", "1:40.png", "1:160.png"};
+
+    private File directory() throws Exception {
+        File d = File.createTempFile("batch", "");
+        d.delete();
+        d.mkdirs();
+        return d;
+    }
+
+    /**
+     * writes a bracket of a gamma curve with noise, the exposure times are in the file names
+     */
+    private void bracket(File directory, long seed) throws Exception {
+        directory.mkdirs();
+        Random r = new Random(seed);
+        double[] E = new double[W * H];
+        for (int i = 0; i < E.length; i++) {
+            E[i] = Math.exp(r.nextGaussian() * 2 + 3);
+        }
+        double[] T = {0.1, 0.025, 0.00625};
+        for (int j = 0; j < T.length; j++) {
+            BufferedImage img = new BufferedImage(W, H, BufferedImage.TYPE_BYTE_GRAY);
+            for (int i = 0; i < E.length; i++) {
+                double v = 255 * Math.pow(Math.min(1, E[i] * T[j] / 20), 1 / 2.2) + r.nextGaussian() * 2;
+                int z = (int) Math.max(0, Math.min(255, v));
+                img.getRaster().setSample(i % W, i / W, 0, z);
+            }
+            ImageIO.write(img, "png", new File(directory, NAMES[j]));
+        }
+    }
+
+    @Test
+    public void readDirectory() throws Exception {
+        File root = directory();
+        bracket(new File(root, "a"), 1);
+        bracket(new File(root, "b"), 2);
+        new File(root, "empty").mkdirs();
+        List<BatchRunner.Bracket> brackets = BatchRunner.readDirectory(root);
+        assertEquals(2, brackets.size());
+        assertEquals("a", brackets.get(0).getName());
+        assertEquals(3, brackets.get(0).getFiles().size());
+        // the exposure time is read from the file name
+        assertEquals(0.1f, brackets.get(0).getExposureTime(0), 0.0f);
+    }
+
+    @Test
+    public void readManifest() throws Exception {
+        File root = directory();
+        File manifest = new File(root, "brackets.txt");
+        FileWriter w = new FileWriter(manifest);
+        w.write("# name and pictures\n\nscene a.png=1/8 /tmp/b.png\n");
+        w.close();
+        List<BatchRunner.Bracket> brackets = BatchRunner.readManifest(manifest);
+        assertEquals(1, brackets.size());
+        BatchRunner.Bracket b = brackets.get(0);
+        assertEquals("scene", b.getName());
+        assertEquals(new File(root, "a.png"), b.getFiles().get(0));
+        assertEquals(new File("/tmp/b.png"), b.getFiles().get(1));
+        assertEquals(0.125f, b.getExposureTime(0), 0.0f);
+    }
+
+    @Test
+    public void invalidArguments() throws Exception {
+        String[][] invalid = {{}, {"-workers", "0", "."}, {"-lambda"}, {"-weight", "LINEAR", "."}, {"/does/not/exist"},
+                {"-tiled", "0", "."}, {"-tiled", "64", "-alpha", "1", "."}, {"-tiled", "64", "-checkpoint", "2", "."}};
+        for (String[] args : invalid) {
+            try {
+                BatchRunner.parse(args);
+                fail("invalid arguments accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void invalidBracketNames() throws Exception {
+        File root = directory();
+        for (String content : new String[]{"../escape a.png=1/8\n", "a/b a.png=1/8\n", "scene a.png=1/8\nscene b.png=1/8\n"}) {
+            File manifest = new File(root, "brackets.txt");
+            FileWriter w = new FileWriter(manifest);
+            w.write(content);
+            w.close();
+            try {
+                BatchRunner.parse(new String[]{manifest.getPath()});
+                fail("invalid bracket name accepted: " + content);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        // the same directory given twice writes the same files
+        bracket(new File(root, "a"), 1);
+        try {
+            BatchRunner.parse(new String[]{new File(root, "a").getPath(), root.getPath()});
+            fail("duplicate bracket accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void run() throws Exception {
+        File root = directory();
+        bracket(new File(root, "a"), 1);
+        bracket(new File(root, "b"), 2);
+        File output = new File(root, "out");
+        BatchRunner runner = BatchRunner.parse(new String[]{"-o", output.getPath(), "-iterations", "3", "-robust-g", "-workers", "2", "-checkpoint", "2", root.getPath()});
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        runner.setOutput(new PrintStream(log, true, "UTF-8"));
+        assertEquals(0, runner.run());
+        assertTrue(log.toString("UTF-8").contains("[b] 100%"));
+        for (String name : new String[]{"a", "b"}) {
+            for (String suffix : new String[]{".pfm", "-g.txt", "-reinhard.png", "-local-reinhard.png"}) {
+                assertTrue(name + suffix, new File(output, name + suffix).isFile());
+            }
+            File pfm = new File(output, name + ".pfm");
+            String header = "Pf\n" + W + " " + H + "\n-1.0\n";
+            assertEquals(header.length() + 4L * W * H, pfm.length());
+            DataInputStream in = new DataInputStream(new FileInputStream(pfm));
+            byte[] h = new byte[header.length()];
+            in.readFully(h);
+            float first = Float.intBitsToFloat(Integer.reverseBytes(in.readInt()));
+            in.close();
+            assertEquals(header, new String(h, "US-ASCII"));
+            assertTrue(first > 0);
+        }
+        // the resumed run starts from the checkpoints of the last iteration
+        assertTrue(new File(output, "a.checkpoint").isFile());
+        runner = BatchRunner.parse(new String[]{"-o", output.getPath(), "-iterations", "3", "-robust-g", "-resume",
+                new File(root, "a").getPath(), new File(root, "b").getPath()});
+        log.reset();
+        runner.setOutput(new PrintStream(log, true, "UTF-8"));
+        assertEquals(0, runner.run());
+        assertTrue(log.toString("UTF-8").contains("[a]   Resuming after iteration 3"));
+    }
+
+    @Test
+    public void runTiled() throws Exception {
+        File root = directory();
+        bracket(new File(root, "a"), 1);
+        File output = new File(root, "out");
+        File tiled = new File(root, "tiled");
+        BatchRunner runner = BatchRunner.parse(new String[]{"-o", output.getPath(), "-iterations", "3", "-robust-g", new File(root, "a").getPath()});
+        runner.setOutput(new PrintStream(new ByteArrayOutputStream(), true, "UTF-8"));
+        assertEquals(0, runner.run());
+        runner = BatchRunner.parse(new String[]{"-o", tiled.getPath(), "-iterations", "3", "-robust-g", "-tiled", "100", new File(root, "a").getPath()});
+        runner.setOutput(new PrintStream(new ByteArrayOutputStream(), true, "UTF-8"));
+        assertEquals(0, runner.run());
+        // the tiled solver calculates the same radiance map, only the output files are left
+        assertEquals(4, tiled.list().length);
+        for (String suffix : new String[]{".pfm", "-g.txt"}) {
+            assertTrue(suffix, Arrays.equals(read(new File(output, "a" + suffix)), read(new File(tiled, "a" + suffix))));
+        }
+    }
+
+    private byte[] read(File file) throws Exception {
+        byte[] content = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(content);
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertArrayEquals;
 
 /**
@@ -411,4 +412,217 @@ public class BandMatrixTest {
                         " 0 0 0 0 1 -4 3").toString(), test.toString());
 
     }
+
+    @Test
+    public void multVector() {
+        BandMatrix m = BandMatrix.parse(" 2 -1 0 0\n" +
+                " -1 2 -1 0\n" +
+                " 0 -1 2 -1\n" +
+                " 0 0 -1 2");
+        Vector x = new Vector(new double[]{1, 2, 3, 4});
+        assertArrayEquals(new double[]{0, 0, 0, 5}, m.mult(x).toArray(), 0.00001);
+        assertArrayEquals(new Matrix(m.toArray()).mult(x).toArray(), m.mult(x).toArray(), 0.00001);
+    }
+
+    @Test
+    public void getBand() {
+        BandMatrix m = new BandMatrix(5, new int[]{2, -1, 0});
+        assertEquals(0, m.getBand(-1));
+        assertEquals(4, m.getBand(0));
+        assertEquals(9, m.getBand(2));
+        assertEquals(-1, m.getBand(1));
+        assertEquals(-1, m.getBand(3));
+        assertEquals(-1, m.getBand(-2));
+        m.set(3, 2, 7);
+        m.set(1, 3, 5);
+        assertEquals(7, m.getElements()[m.getBand(-1) + 2], 0);
+        assertEquals(5, m.getElements()[m.getBand(2) + 1], 0);
+    }
+
+    @Test
+    public void transposeBands() {
+        BandMatrix m = BandMatrix.parse(" 1 2 0 0\n" +
+                " 3 4 5 0\n" +
+                " 0 6 7 8\n" +
+                " 9 0 1 2");
+        assertEquals(new Matrix(m.toArray()).transpose().toString(), m.transpose().toString());
+    }
+
+    @Test
+    public void solveCG() throws EquationSolverException {
+        BandMatrix d = m(7);
+        Vector b = new Vector(new double[]{
+                4, 5, 12, 3, 1, 2, 4
+        });
+        double[] s = new double[]{4.788461, 6.245192, 6.913462, 4.759616, 2.836539, 2.437500, 3.019231};
+        for (EquationSolverAlgorithm algorithm : new EquationSolverAlgorithm[]{EquationSolverAlgorithm.CG_JACOBI, EquationSolverAlgorithm.CG_INCOMPLETE_CHOLESKY}) {
+            EquationSolverReport report = new EquationSolverReport();
+            Vector r = EquationSolver.solve(d, b, algorithm, report);
+            assertArrayEquals(s, r.toArray(), 0.0001);
+            assertEquals(algorithm, report.getAlgorithm());
+            assertTrue(report.getIterations() > 0);
+            assertTrue(report.getResidual() < 0.00001);
+        }
+    }
+
+    @Test
+    public void solveLargeMatrixCG() throws EquationSolverException {
+        int cols = 20;
+        int n = cols * 15;
+        BandMatrix m = new BandMatrix(n, new int[]{-cols, -1, 0, 1, cols});
+        for (int i = 0; i < n; i++) {
+            m.set(i, i, 5);
+            if (i + 1 < n) {
+                m.set(i, i + 1, -1);
+                m.set(i + 1, i, -1);
+            }
+            if (i + cols < n) {
+                m.set(i, i + cols, -1);
+                m.set(i + cols, i, -1);
+            }
+        }
+        Vector b = new Vector(n);
+        for (int i = 0; i < n; i++) {
+            b.set(i, (i % 7) - 3);
+        }
+        EquationSolverReport jacobi = new EquationSolverReport();
+        EquationSolverReport ic = new EquationSolverReport();
+        Vector x1 = EquationSolver.solve(m, b, EquationSolverAlgorithm.CG_JACOBI, jacobi);
+        Vector x2 = EquationSolver.solve(m, b, EquationSolverAlgorithm.CG_INCOMPLETE_CHOLESKY, ic);
+        assertArrayEquals(b.toArray(), m.mult(x1).toArray(), 0.0001);
+        assertArrayEquals(b.toArray(), m.mult(x2).toArray(), 0.0001);
+        // the better preconditioner needs less iterations
+        assertTrue(ic.getIterations() < jacobi.getIterations());
+    }
+
+    @Test
+    public void solveLargeMatrixMultigrid() throws EquationSolverException {
+        // smoothness term with a weak data term on a grid with odd and even sizes
+        int cols = 64;
+        int rows = 47;
+        int n = cols * rows;
+        BandMatrix m = new BandMatrix(n, new int[]{-cols, -1, 0, 1, cols});
+        for (int i = 0; i < n; i++) {
+            m.set(i, i, 0.01);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j : new int[]{i + 1, i + cols}) {
+                if (j < n) {
+                    m.set(i, j, -1);
+                    m.set(j, i, -1);
+                    m.set(i, i, m.get(i, i) + 1);
+                    m.set(j, j, m.get(j, j) + 1);
+                }
+            }
+        }
+        Vector b = new Vector(n);
+        for (int i = 0; i < n; i++) {
+            b.set(i, (i % 7) - 3);
+        }
+        MultigridSolver solver = new MultigridSolver(m, cols, rows);
+        assertTrue(solver.levels() > 3);
+        EquationSolverReport mg = new EquationSolverReport();
+        Vector x1 = EquationSolver.solveWithMultigrid(m, b, cols, rows, mg);
+        assertArrayEquals(b.toArray(), m.mult(x1).toArray(), 0.0001);
+        assertEquals(EquationSolverAlgorithm.MULTIGRID, mg.getAlgorithm());
+        assertTrue(mg.getResidual() < 0.000001);
+        // the number of cycles does not grow with the size of the grid
+        assertTrue(mg.getIterations() < 20);
+        // the grid width is taken from the outermost diagonale
+        Vector x2 = EquationSolver.solve(m, b, EquationSolverAlgorithm.MULTIGRID);
+        assertArrayEquals(x1.toArray(), x2.toArray(), 0.0);
+    }
+
+    @Test
+    public void solveRedBlackSOR() throws EquationSolverException {
+        assertEquals(2, EquationSolver.colorCount(new int[]{-21, -1, 0, 1, 21}));
+        assertEquals(3, EquationSolver.colorCount(new int[]{-20, -1, 0, 1, 20}));
+        assertEquals(5, EquationSolver.colorCount(new int[]{-12, -1, 0, 1, 12}));
+        for (int cols : new int[]{20, 21}) {
+            int n = cols * 15;
+            BandMatrix m = new BandMatrix(n, new int[]{-cols, -1, 0, 1, cols});
+            for (int i = 0; i < n; i++) {
+                m.set(i, i, 4.5);
+                if (i + 1 < n) {
+                    m.set(i, i + 1, -1);
+                    m.set(i + 1, i, -1);
+                }
+                if (i + cols < n) {
+                    m.set(i, i + cols, -1);
+                    m.set(i + cols, i, -1);
+                }
+            }
+            double omega = EquationSolver.estimateOmega(m);
+            assertTrue(omega > 1 && omega < 2);
+            Vector b = new Vector(n);
+            for (int i = 0; i < n; i++) {
+                b.set(i, (i % 7) - 3);
+            }
+            ParallelLoop single = new ParallelLoop(1);
+            ParallelLoop parallel = new ParallelLoop(3);
+            EquationSolverReport report = new EquationSolverReport();
+            Vector x1 = EquationSolver.solveWithRedBlackSOR(m, b, single, report);
+            Vector x2 = EquationSolver.solveWithRedBlackSOR(m, b, parallel, null);
+            single.shutdown();
+            parallel.shutdown();
+            // independent of the number of threads
+            assertArrayEquals(x1.toArray(), x2.toArray(), 0.0);
+            assertEquals(EquationSolverAlgorithm.SOR_RED_BLACK, report.getAlgorithm());
+            assertTrue(report.getResidual() < 0.02);
+            Vector sor = EquationSolver.solve(m, b, EquationSolverAlgorithm.SOR);
+            assertArrayEquals(sor.toArray(), x1.toArray(), 0.01);
+        }
+    }
+
+    @Test
+    public void incompleteCholeskyTridiagonal() throws EquationSolverException {
+        // without fill in the incomplete factorization is exact
+        BandMatrix m = BandMatrix.parse(" 4 -1 0 0\n" +
+                " -1 4 -1 0\n" +
+                " 0 -1 4 -1\n" +
+                " 0 0 -1 4");
+        double[] b = new double[]{1, 2, 3, 4};
+        double[] z = new double[4];
+        new IncompleteCholesky(m).apply(b, z);
+        assertArrayEquals(b, m.mult(new Vector(z)).toArray(), 0.000001);
+    }
+
+    @Test
+    public void addScaledInPlace() {
+        BandMatrix d = m(7);
+        BandMatrix t = new BandMatrix(7, new int[]{-1, 0, 1});
+        for (int i = 0; i < 7; i++) {
+            t.set(i, i, i + 1);
+            if (i > 0) {
+                t.set(i, i - 1, -i);
+                t.set(i - 1, i, 2 * i);
+            }
+        }
+        BandMatrix expected = d.add(t.mult(0.5));
+        d.addScaled(t, 0.5);
+        for (int row = 0; row < 7; row++) {
+            for (int col = 0; col < 7; col++) {
+                assertEquals(expected.get(row, col), d.get(row, col), 0.0);
+            }
+        }
+        try {
+            t.addScaled(m(7), 1);
+            fail("the band 2 is not stored in t");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void addToDiagonalAndCopy() {
+        BandMatrix d = m(7);
+        BandMatrix c = new BandMatrix(7, new int[]{-2, -1, 0, 1, 2});
+        d.copyTo(c);
+        c.addToDiagonal(3, 2.5);
+        for (int row = 0; row < 7; row++) {
+            for (int col = 0; col < 7; col++) {
+                assertEquals(d.get(row, col) + (row == 3 && col == 3 ? 2.5 : 0), c.get(row, col), 0.0);
+            }
+        }
+    }
 }
@@ -0,0 +1,44 @@
+package Maths;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the vector with single precision.
+ */
+public class FloatVectorTest {
+    @Test
+    public void roundsToFloat() {
+        FloatVector v = new FloatVector(3);
+        assertEquals(3, v.length());
+        v.set(1, 0.1);
+        assertEquals((double) 0.1f, v.get(1), 0.0);
+        assertEquals(0.1, v.get(1), 1e-8);
+        assertEquals(0.0, v.get(2), 0.0);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void tooLarge() {
+        new FloatVector(1).set(0, 1e40);
+    }
+
+    @Test
+    public void copy() {
+        Vector d = new Vector(new double[]{1.5, -2.25, 1e-3});
+        FloatVector f = new FloatVector(3);
+        d.copyTo(f);
+        assertArrayEquals(new double[]{1.5, -2.25, (float) 1e-3}, f.toArray(), 0.0);
+        FloatVector f2 = new FloatVector(3);
+        f.copyTo(f2);
+        assertArrayEquals(f.toArray(), f2.toArray(), 0.0);
+        Vector d2 = new Vector(3);
+        f.copyTo(d2);
+        assertArrayEquals(f.toArray(), d2.toArray(), 0.0);
+        // the calculations are done with double vectors
+        assertEquals(Vector.class, f.add(d).getClass());
+        assertEquals(2.25, f.absMax(), 0.0);
+        assertEquals(-2.25, f.min(), 0.0);
+    }
+}
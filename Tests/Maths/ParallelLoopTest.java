@@ -0,0 +1,172 @@
+package Maths;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests the partitioning of index ranges on several threads.
+ */
+public class ParallelLoopTest {
+
+    private void assertEachIndexOnce(ParallelLoop loop, int n) {
+        final AtomicIntegerArray visited = new AtomicIntegerArray(n);
+        loop.run(n, new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    visited.incrementAndGet(i);
+                }
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            assertEquals(1, visited.get(i));
+        }
+    }
+
+    @Test
+    public void testEachIndexOnce() throws Exception {
+        ParallelLoop loop = new ParallelLoop(4);
+        assertEachIndexOnce(loop, 1000);
+        assertEachIndexOnce(loop, 3);
+        assertEachIndexOnce(loop, 1);
+        assertEachIndexOnce(loop, 0);
+    }
+
+    @Test
+    public void testSequential() throws Exception {
+        ParallelLoop loop = new ParallelLoop(1);
+        assertEquals(1, loop.getParallelism());
+        final Thread caller = Thread.currentThread();
+        loop.run(100, new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                assertEquals(caller, Thread.currentThread());
+            }
+        });
+        assertEachIndexOnce(loop, 100);
+    }
+
+    @Test
+    public void testExceptionIsRethrown() throws Exception {
+        try {
+            new ParallelLoop(3).run(30, new RangeTask() {
+                @Override
+                public void run(int from, int to) {
+                    if (from > 0)
+                        throw new ArithmeticException("failed");
+                }
+            });
+            fail();
+        } catch (ArithmeticException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+
+    /**
+     * a task whose first part runs the given action as soon as another part is running, the other parts take a while
+     */
+    private RangeTask slowParts(final AtomicInteger running, final Runnable first) {
+        return new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                if (from == 0) {
+                    while (running.get() == 0)
+                        Thread.yield();
+                    first.run();
+                    return;
+                }
+                running.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testWaitsForOtherPartsOnFailure() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        try {
+            new ParallelLoop(3).run(30, slowParts(running, new Runnable() {
+                @Override
+                public void run() {
+                    throw new ArithmeticException("failed");
+                }
+            }));
+            fail();
+        } catch (ArithmeticException e) {
+            // no part works on the data of the caller any more
+            assertEquals(0, running.get());
+        }
+    }
+
+    @Test
+    public void testWaitsForOtherPartsOnInterrupt() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        try {
+            new ParallelLoop(3).run(30, slowParts(running, new Runnable() {
+                @Override
+                public void run() {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals(0, running.get());
+        } finally {
+            // the interrupt is kept
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void testInvalidParallelism() throws Exception {
+        try {
+            new ParallelLoop(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+
+        }
+    }
+
+    @Test
+    public void testChunksEachIndexOnce() throws Exception {
+        final int n = 1003;
+        final AtomicIntegerArray visited = new AtomicIntegerArray(n);
+        new ParallelLoop(3).run(n, 10, new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                assertTrue(to - from <= 10);
+                for (int i = from; i < to; i++) {
+                    visited.incrementAndGet(i);
+                }
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            assertEquals(1, visited.get(i));
+        }
+    }
+
+    @Test
+    public void testDefault() throws Exception {
+        ParallelLoop loop = ParallelLoop.getDefault();
+        assertEquals(loop, ParallelLoop.getDefault());
+        ParallelLoop own = new ParallelLoop(2);
+        ParallelLoop.setDefault(own);
+        assertEquals(own, ParallelLoop.getDefault());
+        ParallelLoop.setDefault(null);
+        own.shutdown();
+        assertNotNull(ParallelLoop.getDefault());
+    }
+}
@@ -0,0 +1,84 @@
+package Maths;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the allocation free solver for pentadiagonale systems against the LU decomposition.
+ */
+public class PentadiagonalSolverTest {
+
+    private BandMatrix random(int n, long seed) {
+        Random r = new Random(seed);
+        BandMatrix m = new BandMatrix(n, new int[]{-2, -1, 0, 1, 2});
+        for (int row = 0; row < n; row++) {
+            for (int col = Math.max(0, row - 2); col <= Math.min(n - 1, row + 2); col++) {
+                m.set(row, col, row == col ? 10 + r.nextDouble() : r.nextDouble() - 0.5);
+            }
+        }
+        return m;
+    }
+
+    @Test
+    public void testSameAsLU() throws Exception {
+        for (int n = 3; n < 40; n += 7) {
+            BandMatrix m = random(n, n);
+            Vector b = new Vector(n);
+            for (int i = 0; i < n; i++) {
+                b.set(i, i - n / 2);
+            }
+            Vector lu = EquationSolver.solve(m, b, EquationSolverAlgorithm.LU);
+            assertArrayEquals(lu.toArray(), new PentadiagonalSolver(n).solve(m, b).toArray(), 0);
+            assertArrayEquals(lu.toArray(), EquationSolver.solve(m, b, EquationSolverAlgorithm.PENTA).toArray(), 0);
+            // dense matrices are read element wise
+            assertArrayEquals(lu.toArray(), new PentadiagonalSolver(n).solve(new Matrix(m.toArray()), b).toArray(), 0);
+        }
+    }
+
+    @Test
+    public void testReuseWorkspace() throws Exception {
+        PentadiagonalSolver solver = new PentadiagonalSolver(7);
+        Vector b = new Vector(new double[]{4, 5, 12, 3, 1, 2, 4});
+        Vector x = new Vector(7);
+        for (int s = 0; s < 3; s++) {
+            BandMatrix m = random(7, s);
+            solver.solve(m, b, x);
+            assertArrayEquals(b.toArray(), m.mult(x).toArray(), 0.000001);
+        }
+    }
+
+    @Test
+    public void testTridiagonal() throws Exception {
+        BandMatrix m = BandMatrix.parse(" 2 -1 0 0\n" +
+                " -1 2 -1 0\n" +
+                " 0 -1 2 -1\n" +
+                " 0 0 -1 2");
+        Vector b = new Vector(new double[]{0, 0, 0, 5});
+        assertArrayEquals(new double[]{1, 2, 3, 4}, new PentadiagonalSolver(4).solve(m, b).toArray(), 0.000001);
+    }
+
+    @Test
+    public void testNotPentadiagonale() throws Exception {
+        BandMatrix m = new BandMatrix(5, new int[]{-3, 0});
+        try {
+            new PentadiagonalSolver(5).solve(m, new Vector(5));
+            fail();
+        } catch (EquationSolverException e) {
+
+        }
+    }
+
+    @Test
+    public void testSingular() throws Exception {
+        try {
+            new PentadiagonalSolver(5).solve(new BandMatrix(5, new int[]{0}), new Vector(5, 1));
+            fail();
+        } catch (EquationSolverException e) {
+
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package Model;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the exposure stack stored in a file.
+ */
+public class ExposureStackFileTest {
+    private static final int W = 13;
+    private static final int H = 7;
+    private static final double[] T = {0.1, 0.02, 0.004};
+
+    private List<Image> images() {
+        List<Image> images = new ArrayList<Image>();
+        for (int j = 0; j < T.length; j++) {
+            Image im = new Image(W, H);
+            im.exposureTime = T[j];
+            for (int x = 0; x < W; x++) {
+                for (int y = 0; y < H; y++) {
+                    im.set(x, y, (x * 19 + y * 7 + j * 83) % 256);
+                }
+            }
+            images.add(im);
+        }
+        return images;
+    }
+
+    private File tempFile(String suffix) throws Exception {
+        File f = File.createTempFile("stack", suffix);
+        f.deleteOnExit();
+        return f;
+    }
+
+    private void assertSameSamples(ExposureStack expected, ExposureStackFile actual) throws Exception {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getImageCount(), actual.getImageCount());
+        assertArrayEquals(expected.getLnT(), actual.getLnT(), 0.0);
+        byte[] all = new byte[expected.getSamples().length];
+        actual.read(0, actual.getImageSize(), all);
+        assertArrayEquals(expected.getSamples(), all);
+        // a tile in the middle
+        byte[] tile = new byte[10 * T.length];
+        actual.read(20, 10, tile);
+        for (int n = 0; n < tile.length; n++) {
+            assertEquals(expected.getSamples()[20 * T.length + n], tile[n]);
+        }
+    }
+
+    @Test
+    public void testCreateFromStack() throws Exception {
+        ExposureStack stack = new ExposureStack(images());
+        ExposureStackFile file = ExposureStackFile.create(tempFile(".bin"), stack);
+        assertSameSamples(stack, file);
+        file.close();
+        // reopen
+        file = ExposureStackFile.open(file.getFile());
+        assertSameSamples(stack, file);
+        file.close();
+    }
+
+    @Test
+    public void testCreateFromPictures() throws Exception {
+        List<String> fileNames = new ArrayList<String>();
+        List<Image> loaded = new ArrayList<Image>();
+        for (Image im : images()) {
+            File f = tempFile(".png");
+            im.save(f.getAbsolutePath());
+            fileNames.add(f.getAbsolutePath());
+            // same grey values as the pictures loaded completely
+            loaded.add(new Image(f.getAbsolutePath(), im.getExposureTime()));
+        }
+        ExposureStack stack = new ExposureStack(loaded);
+        // stripes which do not divide the height
+        for (int stripeHeight : new int[]{1, 3, H}) {
+            ExposureStackFile file = ExposureStackFile.create(tempFile(".bin"), fileNames, T, stripeHeight);
+            assertSameSamples(stack, file);
+            file.close();
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReadOutside() throws Exception {
+        ExposureStackFile file = ExposureStackFile.create(tempFile(".bin"), new ExposureStack(images()));
+        try {
+            file.read(W * H - 2, 3, new byte[3 * T.length]);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package Model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the packed representation of an image series.
+ */
+public class ExposureStackTest {
+
+    private List<Image> images() throws Exception {
+        List<Image> images = new ArrayList<Image>();
+        double[] t = {0.1, 0.5};
+        for (int j = 0; j < t.length; j++) {
+            Image im = new Image(3, 2);
+            im.exposureTime = t[j];
+            for (int x = 0; x < 3; x++) {
+                for (int y = 0; y < 2; y++) {
+                    im.set(x, y, 100 + 10 * x + y + 50 * j);
+                }
+            }
+            images.add(im);
+        }
+        return images;
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        List<Image> images = images();
+        ExposureStack stack = new ExposureStack(images);
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 2; j++) {
+                assertEquals(images.get(j).getValue(i), stack.get(i, j));
+            }
+        }
+        // pixel-major order
+        assertEquals(images.get(1).getValue(2), stack.getSamples()[2 * 2 + 1] & 0xff);
+    }
+
+    @Test
+    public void testSize() throws Exception {
+        ExposureStack stack = new ExposureStack(images());
+        assertEquals(3, stack.getWidth());
+        assertEquals(2, stack.getHeight());
+        assertEquals(6, stack.getImageSize());
+        assertEquals(2, stack.getImageCount());
+        assertEquals(12, stack.getSamples().length);
+    }
+
+    @Test
+    public void testExposureTimes() throws Exception {
+        ExposureStack stack = new ExposureStack(images());
+        assertEquals(0.5, stack.getExposureTime(1), 0);
+        assertArrayEquals(new double[]{Math.log(0.1), Math.log(0.5)}, stack.getLnT(), 0);
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        List<Image> images = images();
+        int[] h = new int[256];
+        for (Image im : images) {
+            for (int k = 0; k < 256; k++) {
+                h[k] += im.getHistogram()[k];
+            }
+        }
+        assertArrayEquals(h, new ExposureStack(images).getHistogram());
+    }
+
+    @Test
+    public void testDifferentSizes() throws Exception {
+        List<Image> images = images();
+        images.add(new Image(2, 2));
+        try {
+            new ExposureStack(images);
+            fail();
+        } catch (IllegalArgumentException e) {
+
+        }
+    }
+}
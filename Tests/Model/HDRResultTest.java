@@ -5,6 +5,9 @@ import Model.HDRResult;
 import org.junit.Test;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
 /**
@@ -46,4 +49,18 @@ public class HDRResultTest {
         assertEquals(10, h.getHeight());
         assertEquals(20, h.getWidth());
     }
+
+    @Test
+    public void testFromLogRadiance() throws Exception {
+        Vector F = new Vector(new double[]{0, 1, -2});
+        HDRResult h = HDRResult.fromLogRadiance(F, new Vector(256), 3, 1);
+        assertFalse(h.isRadianceMapCalculated());
+        Vector E = h.getE();
+        assertTrue(h.isRadianceMapCalculated());
+        assertEquals(1.0, E.get(0), 0.0);
+        assertEquals(Math.E, E.get(1), 1e-12);
+        assertEquals(Math.exp(-2), E.get(2), 1e-12);
+        // E is calculated only once
+        assertSame(E, h.getE());
+    }
 }
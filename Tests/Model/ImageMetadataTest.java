@@ -0,0 +1,43 @@
+package Model;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Tests reading the exposure time without GUI.
+ */
+public class ImageMetadataTest {
+    @Test
+    public void parseExposureTime() {
+        assertEquals(0.2f, ImageMetadata.parseExposureTime("1/5"), 0.0001f);
+        assertEquals(0.2f, ImageMetadata.parseExposureTime("1:5"), 0.0001f);
+        assertEquals(0.2f, ImageMetadata.parseExposureTime("10/50"), 0.0001f);
+        assertEquals(0.2f, ImageMetadata.parseExposureTime("0.2"), 0.0001f);
+        assertEquals(0.4f, ImageMetadata.parseExposureTime("1/2.5"), 0.0f);
+        assertEquals(0.625f, ImageMetadata.parseExposureTime("1/1.6"), 0.0f);
+        assertNull(ImageMetadata.parseExposureTime("test"));
+    }
+
+    @Test
+    public void invalidExposureTime() {
+        String[] invalid = {"", "1/", "/5", "1/5/2", "1:10.jpg", "1/0", "0", "-0.5", "NaN", "1e400", "1/5+1",
+                "java.lang.System.exit(1)", "(function(){return 1})()"};
+        for (String s : invalid) {
+            assertNull(s, ImageMetadata.parseExposureTime(s));
+        }
+    }
+
+    @Test
+    public void withoutExif() {
+        assertEquals(0.1f, ImageMetadata.exposureTime(new File("does-not-exist/1:10.jpg")), 0.0001f);
+        // only the extension is removed from the file name
+        assertEquals(0.4f, ImageMetadata.exposureTime(new File("does-not-exist/1:2.5.jpg")), 0.0f);
+        assertEquals(0.5f, ImageMetadata.exposureTime(new File("does-not-exist/0.5.png")), 0.0f);
+        assertNull(ImageMetadata.cameraModel(new File("does-not-exist/1:10.jpg")));
+        assertEquals(0, ImageMetadata.iso(new File("does-not-exist/1:10.jpg")));
+    }
+}
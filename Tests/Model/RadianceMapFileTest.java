@@ -0,0 +1,190 @@
+package Model;
+
+import Maths.Vector;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the PFM and Radiance RGBE files of the radiance map.
+ */
+public class RadianceMapFileTest {
+
+    /**
+     * a lazy result with a smooth gradient, some noise and constant areas (runs)
+     */
+    private HDRResult result(int width, int height) {
+        Random r = new Random(7);
+        Vector F = new Vector(width * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double v = x < width / 3 ? 0.5 : (x - width / 2.0) / width * 20 + r.nextGaussian() * 0.1;
+                F.set(x + y * width, y % 4 == 0 ? -80 : v);
+            }
+        }
+        return HDRResult.fromLogRadiance(F, new Vector(256), width, height);
+    }
+
+    private File file(String suffix) throws IOException {
+        File f = File.createTempFile("radiance", suffix);
+        f.deleteOnExit();
+        return f;
+    }
+
+    private String readLine(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0)
+                throw new IOException("Unexpected end of file");
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    /**
+     * reads a Radiance RGBE file with or without run length encoding
+     */
+    private double[][] readHDR(File f) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        try {
+            assertEquals("#?RADIANCE", readLine(in));
+            assertEquals("FORMAT=32-bit_rle_rgbe", readLine(in));
+            assertEquals("", readLine(in));
+            String[] size = readLine(in).split(" ");
+            assertEquals("-Y", size[0]);
+            assertEquals("+X", size[2]);
+            int height = Integer.parseInt(size[1]);
+            int width = Integer.parseInt(size[3]);
+            double[][] E = new double[height][width];
+            byte[][] rgbe = new byte[4][width];
+            for (int y = 0; y < height; y++) {
+                if (width >= 8 && width <= 0x7fff) {
+                    assertEquals(2, in.read());
+                    assertEquals(2, in.read());
+                    assertEquals(width, in.read() << 8 | in.read());
+                    for (int c = 0; c < 4; c++) {
+                        for (int x = 0; x < width; ) {
+                            int count = in.read();
+                            if (count > 128) {
+                                byte value = (byte) in.read();
+                                for (int i = 0; i < count - 128; i++)
+                                    rgbe[c][x++] = value;
+                            } else {
+                                assertTrue(count > 0);
+                                in.readFully(rgbe[c], x, count);
+                                x += count;
+                            }
+                        }
+                    }
+                } else {
+                    for (int x = 0; x < width; x++) {
+                        for (int c = 0; c < 4; c++)
+                            rgbe[c][x] = in.readByte();
+                    }
+                }
+                for (int x = 0; x < width; x++) {
+                    assertEquals(rgbe[0][x], rgbe[1][x]);
+                    assertEquals(rgbe[0][x], rgbe[2][x]);
+                    E[y][x] = RadianceMapFile.fromRGBE(rgbe[0][x] & 0xff, rgbe[3][x] & 0xff);
+                }
+            }
+            assertEquals(-1, in.read());
+            return E;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void rgbe() {
+        for (double v : new double[]{1e-30, 0.001, 0.5, 1, 1.7, 255.9, 1e6, 3e30}) {
+            int rgbe = RadianceMapFile.rgbe(v);
+            int mantissa = rgbe >> 8;
+            assertTrue(mantissa >= 128 && mantissa <= 255);
+            // 8 bit mantissa: the relative error is below 1/128
+            assertEquals(v, RadianceMapFile.fromRGBE(mantissa, rgbe & 0xff), v / 128);
+        }
+        assertEquals(0, RadianceMapFile.rgbe(0));
+        assertEquals(0, RadianceMapFile.rgbe(1e-40));
+        assertEquals(0.0, RadianceMapFile.fromRGBE(0, 0));
+    }
+
+    @Test
+    public void writeHDR() throws IOException {
+        // run length encoded rows and flat rows (width < 8)
+        for (int width : new int[]{300, 5}) {
+            HDRResult result = result(width, 9);
+            File f = file(".hdr");
+            RadianceMapFile.write(result, f);
+            // the radiance map is calculated row by row only
+            assertFalse(result.isRadianceMapCalculated());
+            double[][] E = readHDR(f);
+            double[] row = new double[width];
+            for (int y = 0; y < E.length; y++) {
+                result.getRadianceRow(y, row);
+                for (int x = 0; x < width; x++) {
+                    // values below 1e-32 are stored as 0
+                    assertEquals(row[x], E[y][x], Math.max(row[x] / 128, 1e-32));
+                }
+            }
+            if (width == 300)
+                assertTrue("no run length encoding: " + f.length(), f.length() < 4 * 300 * 9);
+            assertTrue(f.delete());
+        }
+    }
+
+    @Test
+    public void writePFM() throws IOException {
+        HDRResult result = result(70, 4);
+        File f = file(".pfm");
+        RadianceMapFile.write(result, f);
+        assertFalse(result.isRadianceMapCalculated());
+        String header = "Pf\n70 4\n-1.0\n";
+        assertEquals(header.length() + 4L * 70 * 4, f.length());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        try {
+            byte[] h = new byte[header.length()];
+            in.readFully(h);
+            assertEquals(header, new String(h, "US-ASCII"));
+            // the bottom row is the first one
+            Vector E = result.getE();
+            for (int y = 3; y >= 0; y--) {
+                for (int x = 0; x < 70; x++) {
+                    float v = Float.intBitsToFloat(Integer.reverseBytes(in.readInt()));
+                    assertEquals((float) E.get(x + y * 70), v);
+                }
+            }
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+        assertTrue(f.delete());
+    }
+
+    @Test
+    public void invalidResults() throws IOException {
+        File f = file(".pfm");
+        try {
+            RadianceMapFile.writePFM(new HDRResult(new Vector(5), new Vector(256), 2, 2), f);
+            assertTrue("wrong size was written", false);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            RadianceMapFile.write(result(2, 2), new File(f.getPath() + ".png"));
+            assertTrue("unknown format was written", false);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertTrue(f.delete());
+    }
+}
@@ -0,0 +1,173 @@
+package Model;
+
+import Maths.Vector;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the persistent cache of response curves.
+ */
+public class ResponseCurveCacheTest {
+
+    private File file() throws Exception {
+        File f = File.createTempFile("curves", ".bin");
+        f.delete();
+        f.deleteOnExit();
+        return f;
+    }
+
+    private Vector curve(double offset) {
+        Vector g = new Vector(256);
+        for (int z = 0; z < 256; z++) {
+            g.set(z, Math.log(z + 1) + offset);
+        }
+        return g;
+    }
+
+    private ResponseCurveCache.Key key(String model) {
+        return key(model, 100, 50, 5, 0, WeightMode.DEFAULT.getTable(), false, false);
+    }
+
+    private ResponseCurveCache.Key key(String model, int iso, double lambda, double mu, double alpha, WeightTable weights,
+                                       boolean robustnessDataG, boolean robustnessSmoothnessE) {
+        return new ResponseCurveCache.Key(model, iso, lambda, mu, alpha, weights, robustnessDataG, robustnessSmoothnessE);
+    }
+
+    @Test
+    public void testStoredBetweenRuns() throws Exception {
+        File f = file();
+        ResponseCurveCache cache = ResponseCurveCache.open(f, 4);
+        assertNull(cache.get(key("Canon EOS 5D")));
+        cache.put(key("Canon EOS 5D"), curve(0));
+
+        ResponseCurveCache reopened = ResponseCurveCache.open(f, 4);
+        assertEquals(1, reopened.size());
+        assertArrayEquals(curve(0).toArray(), reopened.get(key("Canon EOS 5D")).toArray(), 0.0);
+        assertEquals(1, reopened.getHits());
+        assertEquals(1, reopened.getMisses());
+    }
+
+    @Test
+    public void testParametersArePartOfTheKey() throws Exception {
+        ResponseCurveCache cache = ResponseCurveCache.open(file(), 4);
+        cache.put(key("Canon EOS 5D"), curve(0));
+        WeightTable weights = WeightMode.DEFAULT.getTable();
+        assertNull(cache.get(key("Canon EOS 5D", 200, 50, 5, 0, weights, false, false)));
+        assertNull(cache.get(key("Canon EOS 5D", 100, 10, 5, 0, weights, false, false)));
+        assertNull(cache.get(key("Canon EOS 5D", 100, 50, 0, 0, weights, false, false)));
+        assertNull(cache.get(key("Canon EOS 5D", 100, 50, 5, 1, weights, false, false)));
+        assertNull(cache.get(key("Canon EOS 5D", 100, 50, 5, 0, WeightMode.PARABEL.getTable(), false, false)));
+        assertNull(cache.get(key("Canon EOS 5D", 100, 50, 5, 0, WeightTable.gaussian(40), false, false)));
+        assertNull(cache.get(key("Canon EOS 5D", 100, 50, 5, 0, weights, true, false)));
+        assertNull(cache.get(key("Canon EOS 5D", 100, 50, 5, 0, weights, false, true)));
+        assertEquals(0, cache.getHits());
+        assertEquals(8, cache.getMisses());
+    }
+
+    @Test
+    public void testWeightsAreComparedByValue() throws Exception {
+        File f = file();
+        ResponseCurveCache cache = ResponseCurveCache.open(f, 4);
+        WeightTable gaussian = WeightTable.gaussian(40);
+        cache.put(key("A", 100, 50, 5, 0, gaussian, false, false), curve(1));
+        WeightTable copy = new WeightTable("copy", gaussian.getWeights());
+        assertNotNull(cache.get(key("A", 100, 50, 5, 0, copy, false, false)));
+        // the weights are stored in the file
+        ResponseCurveCache reopened = ResponseCurveCache.open(f, 4);
+        assertNotNull(reopened.get(key("A", 100, 50, 5, 0, copy, false, false)));
+    }
+
+    @Test
+    public void testFirstVersionIsDropped() throws Exception {
+        File f = file();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
+        out.writeInt(0x48445243);
+        out.writeInt(3);
+        out.writeInt(4);
+        out.writeInt(1);
+        out.close();
+        ResponseCurveCache cache = ResponseCurveCache.open(f, 2);
+        assertEquals(0, cache.size());
+        cache.put(key("A"), curve(1));
+        assertEquals(1, ResponseCurveCache.open(f, 2).size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsRemoved() throws Exception {
+        File f = file();
+        ResponseCurveCache cache = ResponseCurveCache.open(f, 2);
+        cache.put(key("A"), curve(1));
+        cache.put(key("B"), curve(2));
+        // A is used, so B is the least recently used curve
+        cache.get(key("A"));
+        cache.put(key("C"), curve(3));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(key("B")));
+
+        // the order of use is kept in the file
+        ResponseCurveCache reopened = ResponseCurveCache.open(f, 2);
+        reopened.put(key("D"), curve(4));
+        assertNull(reopened.get(key("A")));
+        assertArrayEquals(curve(3).toArray(), reopened.get(key("C")).toArray(), 0.0);
+        assertFalse(new File(f.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testRequestDoesNotWriteFile() throws Exception {
+        File f = file();
+        ResponseCurveCache cache = ResponseCurveCache.open(f, 2);
+        assertNull(cache.get(key("A")));
+        assertFalse(f.exists());
+        cache.put(key("A"), curve(1));
+        long modified = f.lastModified();
+        long length = f.length();
+        assertEquals(curve(1).get(7), cache.get(key("A")).get(7), 0.0);
+        assertEquals(modified, f.lastModified());
+        assertEquals(length, f.length());
+        // the counters are written with the next curve
+        cache.put(key("B"), curve(2));
+        ResponseCurveCache reopened = ResponseCurveCache.open(f, 2);
+        assertEquals(1, reopened.getHits());
+        assertEquals(1, reopened.getMisses());
+        assertFalse(new File(f.getPath() + ".bak").exists());
+    }
+
+    @Test
+    public void testRestoredFromBackup() throws Exception {
+        File f = file();
+        ResponseCurveCache.open(f, 2).put(key("A"), curve(1));
+        // the replacement was interrupted after the old file was renamed
+        File backup = new File(f.getPath() + ".bak");
+        backup.deleteOnExit();
+        assertTrue(f.renameTo(backup));
+        ResponseCurveCache reopened = ResponseCurveCache.open(f, 2);
+        assertEquals(1, reopened.size());
+        assertTrue(f.exists());
+        assertFalse(backup.exists());
+    }
+
+    @Test
+    public void testInvalidFile() throws Exception {
+        File f = file();
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(new byte[]{1, 2, 3, 4, 5});
+        out.close();
+        try {
+            ResponseCurveCache.open(f, 2);
+            fail();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package Model;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests the tables of the weightning functions.
+ */
+public class WeightTableTest {
+    @Test
+    public void modeTables() {
+        for (int z = 0; z < WeightTable.SIZE; z++) {
+            assertEquals(1.0, WeightMode.NONE.w(z), 0.0);
+            assertEquals(WeightMode.triangle(z), WeightMode.DEFAULT.w(z), 0.0);
+            double parabel = -(1.0 / 129) * z * z + (127.0 / 64) * z;
+            assertEquals(parabel, WeightMode.PARABEL.w(z), 0.0);
+            assertEquals(parabel * parabel, WeightMode.PARABEL.w2(z), 0.0);
+        }
+        assertEquals("DEFAULT", WeightMode.DEFAULT.getTable().getName());
+    }
+
+    @Test
+    public void gaussian() {
+        WeightTable g = WeightTable.gaussian(40);
+        assertEquals(g.w(127), g.w(128), 0.0);
+        assertTrue(g.w(127) > 127);
+        for (int z = 1; z <= 127; z++) {
+            assertTrue(g.w(z) >= g.w(z - 1));
+            assertEquals(g.w(z), g.w(255 - z), 0.0);
+        }
+        assertEquals(g.w(0) * g.w(0), g.w2(0), 0.0);
+    }
+
+    @Test
+    public void invalidWeights() {
+        try {
+            new WeightTable("short", new double[255]);
+            fail("a table needs 256 values");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        double[] w = new double[256];
+        w[3] = -1;
+        try {
+            new WeightTable("negative", w);
+            fail("weights must not be negative");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        // the table is copied
+        w[3] = 2;
+        WeightTable t = new WeightTable("copy", w);
+        w[3] = 5;
+        assertEquals(2.0, t.w(3), 0.0);
+        assertEquals(4.0, t.w2(3), 0.0);
+    }
+}
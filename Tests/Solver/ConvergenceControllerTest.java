@@ -0,0 +1,75 @@
+package Solver;
+
+import Maths.Vector;
+import Model.ExposureStack;
+import Model.WeightMode;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the early termination of the iterations.
+ */
+public class ConvergenceControllerTest {
+    private static final double[] T = {0.1, 0.025, 0.00625};
+
+    private ExposureStack stack(int width, int height) {
+        Random r = new Random(3);
+        byte[] samples = new byte[width * height * T.length];
+        for (int i = 0; i < width * height; i++) {
+            double E = Math.exp(r.nextGaussian() * 2 + 3);
+            for (int j = 0; j < T.length; j++) {
+                double v = 255 * Math.pow(Math.min(1, E * T[j] / 20), 1 / 2.2) + r.nextGaussian() * 2;
+                samples[i * T.length + j] = (byte) Math.max(0, Math.min(255, v));
+            }
+        }
+        return new ExposureStack(width, height, T, samples);
+    }
+
+    @Test
+    public void testEnergyConverged() throws Exception {
+        ConvergenceController c = new ConvergenceController(1e-3, 0);
+        assertFalse(c.energyConverged(Double.NaN, 100));
+        assertFalse(c.energyConverged(100, 99));
+        assertTrue(c.energyConverged(100, 99.95));
+        // an increasing energy is no convergence
+        assertFalse(c.energyConverged(100, 100.01));
+        assertFalse(ConvergenceController.DISABLED.energyConverged(100, 100));
+    }
+
+    @Test
+    public void testChangeConverged() throws Exception {
+        ConvergenceController c = new ConvergenceController(0, 1e-3);
+        Vector a = new Vector(new double[]{1, 2, 3});
+        assertTrue(c.changeConverged(a, new Vector(new double[]{1, 2.0005, 3})));
+        assertFalse(c.changeConverged(a, new Vector(new double[]{1, 2, 3.01})));
+        assertEquals(0.01, ConvergenceController.maxChange(a, new Vector(new double[]{1, 2, 3.01})), 1e-12);
+        assertFalse(ConvergenceController.DISABLED.changeConverged(a, a));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTolerance() throws Exception {
+        new ConvergenceController(-1, 0);
+    }
+
+    @Test
+    public void testInnerIterationsAreSaved() throws Exception {
+        ExposureStack stack = stack(40, 30);
+        IterativeEnergySolver all = new IterativeEnergySolver(stack, 10, 8, 50, false, false, WeightMode.DEFAULT, 0, null);
+        Vector expected = all.estimateG();
+
+        // without robustness F does not depend on its old value, so all but the first two inner steps are saved
+        ConvergenceController convergence = new ConvergenceController(0, 1e-6);
+        IterativeEnergySolver early = new IterativeEnergySolver(stack, 10, 8, 50, false, false, WeightMode.DEFAULT, 0, null);
+        early.setConvergenceController(convergence);
+        Vector g = early.estimateG();
+        assertTrue(convergence.getSavedInnerIterations() >= 8 * 6);
+        for (int z = 0; z < 256; z++) {
+            assertEquals(expected.get(z), g.get(z), 1e-6);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package Solver;
+
+import Maths.ParallelLoop;
+import Maths.Vector;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the parallel reduction of the statistics of g.
+ */
+public class GreyValueStatisticsReducerTest {
+    private static final int P = 3;
+
+    private byte[] samples(int n) {
+        Random r = new Random(11);
+        byte[] samples = new byte[n * P];
+        r.nextBytes(samples);
+        return samples;
+    }
+
+    private double[] values(int n) {
+        Random r = new Random(13);
+        double[] F = new double[n];
+        for (int i = 0; i < n; i++) {
+            F[i] = r.nextGaussian();
+        }
+        return F;
+    }
+
+    private GreyValueStatisticsReducer.Accumulator accumulator(final byte[] samples, final double[] F) {
+        return new GreyValueStatisticsReducer.Accumulator() {
+            @Override
+            public void accumulate(int from, int to, GreyValueStatistics statistics) {
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < P; j++) {
+                        statistics.add(samples[i * P + j] & 0xff, 1, F[i] - j);
+                    }
+                }
+            }
+        };
+    }
+
+    private GreyValueStatistics sequential(byte[] samples, double[] F) {
+        GreyValueStatistics statistics = new GreyValueStatistics();
+        accumulator(samples, F).accumulate(0, F.length, statistics);
+        return statistics;
+    }
+
+    private GreyValueStatistics parallel(byte[] samples, double[] F, int threads) {
+        GreyValueStatisticsReducer reducer = new GreyValueStatisticsReducer(F.length);
+        reducer.clear();
+        reducer.accumulate(new ParallelLoop(threads), 0, F.length, accumulator(samples, F));
+        GreyValueStatistics statistics = new GreyValueStatistics();
+        reducer.reduce(statistics);
+        return statistics;
+    }
+
+    private double[] weights(GreyValueStatistics s) {
+        double[] r = new double[256];
+        for (int k = 0; k < 256; k++) r[k] = s.getWeight(k);
+        return r;
+    }
+
+    private double[] targets(GreyValueStatistics s) {
+        double[] r = new double[256];
+        for (int k = 0; k < 256; k++) r[k] = s.getTarget(k);
+        return r;
+    }
+
+    @Test
+    public void testSmallPictureIsExact() throws Exception {
+        int n = 40 * 30;
+        byte[] samples = samples(n);
+        double[] F = values(n);
+        GreyValueStatistics expected = sequential(samples, F);
+        GreyValueStatistics actual = parallel(samples, F, 4);
+        assertArrayEquals(weights(expected), weights(actual), 0.0);
+        assertArrayEquals(targets(expected), targets(actual), 0.0);
+    }
+
+    @Test
+    public void testLargePictureMatchesSequentialSums() throws Exception {
+        int n = 300 * 300;
+        byte[] samples = samples(n);
+        double[] F = values(n);
+        GreyValueStatistics expected = sequential(samples, F);
+        GreyValueStatistics one = parallel(samples, F, 1);
+        GreyValueStatistics three = parallel(samples, F, 3);
+        // the counts are integers and therefore exact
+        assertArrayEquals(weights(expected), weights(three), 0.0);
+        assertArrayEquals(targets(expected), targets(three), 1e-9);
+        // the result does not depend on the number of threads
+        assertArrayEquals(targets(one), targets(three), 0.0);
+
+        // the response curve is the same within the rounding errors
+        double[] w = new double[256];
+        for (int z = 0; z < 256; z++) {
+            w[z] = IHDRSolver.triangle(z);
+        }
+        ResponseCurveSystem system = new ResponseCurveSystem(w, 10, 0, false);
+        Vector g = new Vector(256);
+        assertArrayEquals(system.solve(expected, g).toArray(), system.solve(three, g).toArray(), 1e-9);
+    }
+
+    @Test
+    public void testAccumulateInParts() throws Exception {
+        int n = GreyValueStatisticsReducer.BLOCK_SIZE + 1000;
+        byte[] samples = samples(n);
+        double[] F = values(n);
+        GreyValueStatisticsReducer reducer = new GreyValueStatisticsReducer(n);
+        ParallelLoop loop = new ParallelLoop(2);
+        for (int first = 0; first < n; first += 777) {
+            reducer.accumulate(loop, first, Math.min(777, n - first), accumulator(samples, F));
+        }
+        GreyValueStatistics parts = new GreyValueStatistics();
+        reducer.reduce(parts);
+        GreyValueStatistics whole = parallel(samples, F, 2);
+        assertArrayEquals(targets(whole), targets(parts), 0.0);
+        assertEquals((double) n * P, sum(weights(parts)), 0.0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfRange() throws Exception {
+        new GreyValueStatisticsReducer(10).accumulate(new ParallelLoop(1), 5, 6, accumulator(samples(11), values(11)));
+    }
+
+    private double sum(double[] a) {
+        double s = 0;
+        for (double v : a) s += v;
+        return s;
+    }
+}
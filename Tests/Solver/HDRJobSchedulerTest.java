@@ -0,0 +1,250 @@
+package Solver;
+
+import Model.ExposureStack;
+import Model.HDRResult;
+import Model.WeightMode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the order, the memory budget and the cancellation of the job scheduler.
+ */
+public class HDRJobSchedulerTest {
+    private static final double[] T = {0.1, 0.025, 0.00625};
+
+    private static ExposureStack stack(int width, int height) {
+        Random r = new Random(3);
+        byte[] samples = new byte[width * height * T.length];
+        r.nextBytes(samples);
+        return new ExposureStack(width, height, T, samples);
+    }
+
+    /**
+     * solver which waits until it is released and records how many solvers run at the same time
+     */
+    private static class WaitingSolver extends IHDRSolver {
+        private final long memory;
+        private final CountDownLatch release;
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+        private final List<String> order;
+        private final String name;
+        private volatile boolean interrupted = false;
+
+        WaitingSolver(String name, long memory, CountDownLatch release, AtomicInteger running, AtomicInteger maxRunning,
+                      List<String> order, HDRSolverUpdateListener listener) {
+            super(stack(4, 4), listener);
+            this.name = name;
+            this.memory = memory;
+            this.release = release;
+            this.running = running;
+            this.maxRunning = maxRunning;
+            this.order = order;
+        }
+
+        @Override
+        public long estimateMemory() {
+            return memory;
+        }
+
+        @Override
+        public void run() {
+            order.add(name);
+            int now = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), now));
+            }
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            running.decrementAndGet();
+        }
+    }
+
+    private static class ErrorListener implements HDRSolverUpdateListener {
+        private volatile String error = null;
+        private volatile int progress = -1;
+
+        @Override
+        public void updateState(int progress, HDRResult hdrResult) {
+            this.progress = progress;
+        }
+
+        @Override
+        public void energyUpdated(int iteration, double energy) {
+        }
+
+        @Override
+        public void log(String message) {
+        }
+
+        @Override
+        public void errorOccured(String message, HDRResult lastResult) {
+            error = message;
+        }
+    }
+
+    private void awaitRunning(HDRJobScheduler scheduler, int jobs) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (scheduler.getRunning() < jobs && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        assertEquals(jobs, scheduler.getRunning());
+    }
+
+    @Test
+    public void testMemoryBudget() throws InterruptedException {
+        HDRJobScheduler scheduler = new HDRJobScheduler(4, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        for (int i = 0; i < 6; i++) {
+            scheduler.submit(new WaitingSolver("job" + i, 30, release, running, maxRunning, order, null));
+        }
+        // 3 jobs of 30 bytes fit into 100 bytes
+        awaitRunning(scheduler, 3);
+        while (running.get() < 3) {
+            Thread.sleep(5);
+        }
+        assertEquals(3, scheduler.getQueued());
+        assertEquals(90, scheduler.getUsedMemory());
+        release.countDown();
+        scheduler.awaitIdle();
+        assertEquals(3, maxRunning.get());
+        assertEquals(0, scheduler.getUsedMemory());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testLargeJobRunsAlone() throws InterruptedException {
+        HDRJobScheduler scheduler = new HDRJobScheduler(4, 100);
+        CountDownLatch release = new CountDownLatch(0);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<HDRJobScheduler.Job> jobs = new ArrayList<HDRJobScheduler.Job>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(scheduler.submit(new WaitingSolver("job" + i, 250, release, running, maxRunning, order, null)));
+        }
+        scheduler.awaitIdle();
+        assertEquals(1, maxRunning.get());
+        for (HDRJobScheduler.Job job : jobs) {
+            assertEquals(HDRJobScheduler.State.FINISHED, job.getState());
+        }
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testPriorities() throws InterruptedException {
+        HDRJobScheduler scheduler = new HDRJobScheduler(1, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        scheduler.submit(new WaitingSolver("first", 10, release, running, maxRunning, order, null), "first", 0);
+        awaitRunning(scheduler, 1);
+        scheduler.submit(new WaitingSolver("low", 10, release, running, maxRunning, order, null), "low", -1);
+        scheduler.submit(new WaitingSolver("normal1", 10, release, running, maxRunning, order, null), "normal1", 0);
+        scheduler.submit(new WaitingSolver("high", 10, release, running, maxRunning, order, null), "high", 5);
+        scheduler.submit(new WaitingSolver("normal2", 10, release, running, maxRunning, order, null), "normal2", 0);
+        release.countDown();
+        scheduler.awaitIdle();
+        assertEquals("[first, high, normal1, normal2, low]", order.toString());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        HDRJobScheduler scheduler = new HDRJobScheduler(1, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        ErrorListener listener = new ErrorListener();
+        WaitingSolver first = new WaitingSolver("first", 10, release, running, maxRunning, order, null);
+        HDRJobScheduler.Job runningJob = scheduler.submit(first);
+        HDRJobScheduler.Job queuedJob = scheduler.submit(new WaitingSolver("queued", 10, release, running, maxRunning, order, listener));
+        awaitRunning(scheduler, 1);
+        while (running.get() < 1) {
+            Thread.sleep(5);
+        }
+
+        assertTrue(queuedJob.cancel());
+        assertEquals(HDRJobScheduler.State.CANCELLED, queuedJob.getState());
+        assertTrue(queuedJob.await(0, TimeUnit.MILLISECONDS));
+        assertNotNull(listener.error);
+        assertEquals(0, scheduler.getQueued());
+
+        // the thread of a running job is interrupted
+        assertTrue(runningJob.cancel());
+        assertTrue(runningJob.await(5, TimeUnit.SECONDS));
+        assertTrue(first.interrupted);
+        assertEquals(HDRJobScheduler.State.CANCELLED, runningJob.getState());
+        assertFalse(runningJob.cancel());
+        scheduler.awaitIdle();
+        assertEquals("[first]", order.toString());
+
+        // the thread of the cancelled job is not interrupted anymore
+        WaitingSolver next = new WaitingSolver("next", 10, new CountDownLatch(0), running, maxRunning, order, null);
+        scheduler.submit(next).await();
+        assertFalse(next.interrupted);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testProgress() throws InterruptedException {
+        HDRJobScheduler scheduler = new HDRJobScheduler(2, HDRJobScheduler.defaultMemoryBudget());
+        List<HDRJobScheduler.Job> jobs = new ArrayList<HDRJobScheduler.Job>();
+        List<ErrorListener> listeners = new ArrayList<ErrorListener>();
+        for (int i = 0; i < 3; i++) {
+            ErrorListener listener = new ErrorListener();
+            listeners.add(listener);
+            IterativeEnergySolver solver = new IterativeEnergySolver(stack(40, 30), 50, 3, 5, i == 1, false, WeightMode.DEFAULT, 0, listener);
+            jobs.add(scheduler.submit(solver, "bracket" + i, 0));
+        }
+        scheduler.awaitIdle();
+        for (int i = 0; i < jobs.size(); i++) {
+            assertEquals(HDRJobScheduler.State.FINISHED, jobs.get(i).getState());
+            assertEquals(100, jobs.get(i).getProgress());
+            assertEquals(100, listeners.get(i).progress);
+            assertEquals(null, listeners.get(i).error);
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.submit(jobs.get(0).getSolver());
+            assertTrue("a shut down scheduler must not accept jobs", false);
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEstimateMemory() {
+        ExposureStack stack = stack(40, 30);
+        long plain = new IterativeEnergySolver(stack, 50, 3, 5, false, false, WeightMode.DEFAULT, 0, null).estimateMemory();
+        IterativeEnergySolver robust = new IterativeEnergySolver(stack, 50, 3, 5, true, false, WeightMode.DEFAULT, 0, null);
+        long robustDouble = robust.estimateMemory();
+        robust.setFloatPrecision(true);
+        long robustFloat = robust.estimateMemory();
+        long smooth = new IterativeEnergySolver(stack, 50, 3, 5, false, false, WeightMode.DEFAULT, 0.5, null).estimateMemory();
+        assertTrue(plain >= 40 * 30 * T.length);
+        assertTrue(robustDouble > robustFloat);
+        assertTrue(robustFloat > plain);
+        assertTrue(smooth > plain);
+    }
+}
@@ -0,0 +1,315 @@
+package Solver;
+
+import Maths.EquationSolverAlgorithm;
+import Maths.ParallelLoop;
+import Maths.RangeTask;
+import Maths.Vector;
+import Model.ExposureStack;
+import Model.HDRResult;
+import Model.WeightMode;
+import Model.WeightTable;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the energy of the iterative solver.
+ */
+public class IterativeEnergySolverTest {
+    private static final double[] T = {0.1, 0.025, 0.00625};
+    private static final int N = 150 * 120;
+
+    private ExposureStack stack() {
+        Random r = new Random(9);
+        byte[] samples = new byte[N * T.length];
+        r.nextBytes(samples);
+        return new ExposureStack(150, 120, T, samples);
+    }
+
+    private Vector g() {
+        Vector g = new Vector(256);
+        for (int z = 0; z < 256; z++) {
+            g.set(z, Math.log(z + 1) - 4 + (z % 7 == 0 ? 0.1 : 0));
+        }
+        return g;
+    }
+
+    private Vector F() {
+        Random r = new Random(4);
+        Vector F = new Vector(N);
+        for (int i = 0; i < N; i++) {
+            F.set(i, r.nextGaussian());
+        }
+        return F;
+    }
+
+    /**
+     * the energy functional written out directly
+     */
+    private double energy(ExposureStack stack, Vector F, Vector g, double lambda, double mu) {
+        double data = 0;
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < T.length; j++) {
+                int z = stack.get(i, j);
+                double w = IHDRSolver.triangle(z);
+                double r = g.get(z) - F.get(i) - Math.log(T[j]);
+                data += w * w * Math.sqrt(r * r + IterativeEnergySolver.EPSILON_2);
+            }
+        }
+        double smoothing = 0;
+        for (int z = 1; z < 255; z++) {
+            double g2 = g.get(z - 1) - 2 * g.get(z) + g.get(z + 1);
+            double w = IHDRSolver.triangle(z);
+            smoothing += w * w * Math.sqrt(g2 * g2 + IterativeEnergySolver.EPSILON_2);
+        }
+        double monotonie = 0;
+        for (int z = 1; z <= 255; z++) {
+            double g1 = g.get(z - 1) - g.get(z);
+            if (g1 < 0)
+                monotonie += IHDRSolver.triangle(z) * g1 * g1;
+        }
+        return data + lambda * smoothing + mu * monotonie;
+    }
+
+    @Test
+    public void testEnergy() throws Exception {
+        ExposureStack stack = stack();
+        Vector F = F();
+        Vector g = g();
+        double expected = energy(stack, F, g, 10, 50);
+        for (boolean robust : new boolean[]{false, true}) {
+            IterativeEnergySolver solver = new IterativeEnergySolver(stack, 10, 3, 50, robust, false, WeightMode.DEFAULT, 0, null);
+            assertEquals(expected, solver.calculateEnergy(F, g), expected * 1e-12);
+            // the residuals are reused for the same g and F
+            assertEquals(solver.calculateEnergy(F, g), solver.calculateEnergy(F, g), 0.0);
+            // a new g is recognized
+            Vector g2 = g.add(0.5);
+            assertEquals(energy(stack, F, g2, 10, 50), solver.calculateEnergy(F, g2), expected * 1e-12);
+        }
+    }
+
+    @Test
+    public void testEnergyDoesNotDependOnThreads() throws Exception {
+        ExposureStack stack = stack();
+        IterativeEnergySolver one = new IterativeEnergySolver(stack, 10, 3, 50, true, false, WeightMode.DEFAULT, 0, null);
+        one.setParallelism(1);
+        IterativeEnergySolver three = new IterativeEnergySolver(stack, 10, 3, 50, true, false, WeightMode.DEFAULT, 0, null);
+        three.setParallelism(3);
+        assertEquals(one.calculateEnergy(F(), g()), three.calculateEnergy(F(), g()), 0.0);
+    }
+
+    @Test
+    public void testOwnThreadsForAllCalculations() throws Exception {
+        final AtomicInteger used = new AtomicInteger();
+        ParallelLoop shared = ParallelLoop.getDefault();
+        ParallelLoop.setDefault(new ParallelLoop(2) {
+            @Override
+            public void run(int n, int chunkSize, RangeTask task) {
+                used.incrementAndGet();
+                super.run(n, chunkSize, task);
+            }
+
+            @Override
+            public void run(int n, RangeTask task) {
+                used.incrementAndGet();
+                super.run(n, task);
+            }
+        });
+        try {
+            for (EquationSolverAlgorithm algorithm : new EquationSolverAlgorithm[]{EquationSolverAlgorithm.SOR,
+                    EquationSolverAlgorithm.SOR_RED_BLACK, EquationSolverAlgorithm.CG_JACOBI,
+                    EquationSolverAlgorithm.CG_INCOMPLETE_CHOLESKY, EquationSolverAlgorithm.MULTIGRID}) {
+                IterativeEnergySolver solver = new IterativeEnergySolver(stack(), 10, 2, 50, false, true, WeightMode.DEFAULT, 1, null);
+                solver.setParallelism(2);
+                solver.setSmoothnessAlgorithm(algorithm);
+                solver.estimateG();
+                // the shared threads are not used by a solver with its own threads
+                assertEquals(algorithm.toString(), 0, used.get());
+            }
+        } finally {
+            ParallelLoop.setDefault(shared);
+        }
+    }
+
+    @Test
+    public void testIterationsDoNotAllocatePerPixel() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (boolean robust : new boolean[]{false, true}) {
+            IterativeEnergySolver solver = new IterativeEnergySolver(stack(), 10, 5, 50, robust, false, WeightMode.DEFAULT, 0, null);
+            solver.setParallelism(1);
+            // the first run allocates the buffers
+            Vector expected = solver.estimateG();
+            long before = threads.getThreadAllocatedBytes(thread);
+            Vector g = solver.estimateG();
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            assertEquals(0.0, g.subtract(expected).absMax(), 0.0);
+            // 5 outer iterations with up to 5 inner iterations of g and F, a single copy of F would need 8 * N bytes
+            assertTrue("allocated " + allocated + " bytes", allocated < 8 * N);
+        }
+    }
+
+    @Test
+    public void testWeightTable() throws Exception {
+        ExposureStack stack = stack();
+        IterativeEnergySolver none = new IterativeEnergySolver(stack, 10, 3, 50, true, false, WeightMode.NONE, 0, null);
+        IterativeEnergySolver replaced = new IterativeEnergySolver(stack, 10, 3, 50, true, false, WeightMode.DEFAULT, 0, null);
+        replaced.setWeightTable(WeightMode.NONE.getTable());
+        assertEquals(0.0, none.estimateG().subtract(replaced.estimateG()).absMax(), 0.0);
+        // a custom curve changes g
+        replaced.setWeightTable(WeightTable.gaussian(40));
+        assertTrue(none.estimateG().subtract(replaced.estimateG()).absMax() > 0);
+    }
+
+    @Test
+    public void testFloatPrecision() throws Exception {
+        // a stack of a gamma curve with noise, so g and F are well defined
+        Random r = new Random(3);
+        byte[] samples = new byte[N * T.length];
+        for (int i = 0; i < N; i++) {
+            double E = Math.exp(r.nextGaussian() * 2 + 3);
+            for (int j = 0; j < T.length; j++) {
+                double v = 255 * Math.pow(Math.min(1, E * T[j] / 20), 1 / 2.2) + r.nextGaussian() * 2;
+                samples[i * T.length + j] = (byte) Math.max(0, Math.min(255, v));
+            }
+        }
+        ExposureStack stack = new ExposureStack(150, 120, T, samples);
+        for (double alpha : new double[]{0, 0.5}) {
+            IterativeEnergySolver d = new IterativeEnergySolver(stack, 10, 5, 50, true, false, WeightMode.DEFAULT, alpha, null);
+            IterativeEnergySolver f = new IterativeEnergySolver(stack, 10, 5, 50, true, false, WeightMode.DEFAULT, alpha, null);
+            f.setFloatPrecision(true);
+            Vector gd = d.estimateG();
+            Vector gf = f.estimateG();
+            // g spans about 10, the difference is in the order of the float precision of F
+            double dg = gd.subtract(gf).absMax();
+            assertTrue("max |g - g_float| = " + dg, dg > 0 && dg < 1e-4);
+            double dF = d.estimateF(gd).subtract(f.estimateF(gf)).absMax();
+            assertTrue("max |F - F_float| = " + dF, dF < 1e-4);
+        }
+    }
+
+    /**
+     * keeps the final result and the error, it cancels the solver after the given number of iterations
+     */
+    private static class ResultListener implements HDRSolverUpdateListener {
+        private final int cancelAfter;
+        private IHDRSolver solver;
+        private HDRResult result;
+        private String error;
+        private final StringBuilder log = new StringBuilder();
+
+        ResultListener(int cancelAfter) {
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void updateState(int progress, HDRResult hdrResult) {
+            if (progress == 100)
+                result = hdrResult;
+        }
+
+        @Override
+        public void energyUpdated(int iteration, double energy) {
+            if (iteration + 1 == cancelAfter)
+                solver.cancel();
+        }
+
+        @Override
+        public void log(String message) {
+            log.append(message).append('\n');
+        }
+
+        @Override
+        public void errorOccured(String message, HDRResult lastResult) {
+            error = message;
+        }
+    }
+
+    private IterativeEnergySolver solver(ResultListener listener) {
+        IterativeEnergySolver solver = new IterativeEnergySolver(stack(), 10, 6, 50, true, false, WeightMode.DEFAULT, 0, listener);
+        listener.solver = solver;
+        return solver;
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        ResultListener listener = new ResultListener(2);
+        IterativeEnergySolver solver = solver(listener);
+        solver.run();
+        assertTrue(solver.isCancelled());
+        assertNotNull(listener.error);
+        assertNull(listener.result);
+    }
+
+    @Test
+    public void testCheckpointResume() throws Exception {
+        ResultListener full = new ResultListener(-1);
+        solver(full).run();
+        assertNull(full.error);
+
+        File checkpoint = File.createTempFile("hdr", ".checkpoint");
+        checkpoint.deleteOnExit();
+        checkpoint.delete();
+        // the first run is cancelled after 3 of 6 iterations, the checkpoint holds the state after iteration 2
+        ResultListener cancelled = new ResultListener(3);
+        IterativeEnergySolver first = solver(cancelled);
+        first.setCheckpoint(checkpoint, 2);
+        first.run();
+        assertNotNull(cancelled.error);
+        assertEquals(2, SolverCheckpoint.read(checkpoint).getIteration());
+
+        ResultListener resumed = new ResultListener(-1);
+        IterativeEnergySolver second = solver(resumed);
+        second.setCheckpoint(checkpoint, 2);
+        second.setResume(true);
+        second.run();
+        assertNull(resumed.error);
+        assertEquals(6, SolverCheckpoint.read(checkpoint).getIteration());
+        // the resumed calculation continues with exactly the same state
+        assertEquals(0.0, full.result.getG().subtract(resumed.result.getG()).absMax(), 0.0);
+        assertEquals(0.0, full.result.getE().subtract(resumed.result.getE()).absMax(), 0.0);
+        assertEquals(6, second.getEnergyTrace().length);
+        assertTrue(checkpoint.delete());
+    }
+
+    @Test
+    public void testCheckpointOfOtherParameters() throws Exception {
+        File checkpoint = File.createTempFile("hdr", ".checkpoint");
+        checkpoint.deleteOnExit();
+        checkpoint.delete();
+        IterativeEnergySolver first = solver(new ResultListener(-1));
+        first.setCheckpoint(checkpoint, 2);
+        first.run();
+
+        // another weightning function changes g and F, so the checkpoint is not used
+        ResultListener other = new ResultListener(-1);
+        IterativeEnergySolver second = solver(other);
+        second.setWeightTable(WeightTable.gaussian(40));
+        second.setCheckpoint(checkpoint, 2);
+        second.setResume(true);
+        second.run();
+        assertNull(other.error);
+        assertTrue(other.log.toString(), other.log.toString().contains("other parameters, starting from the beginning"));
+        assertFalse(other.log.toString().contains("Resuming"));
+
+        // fewer iterations would mix the states of the inner iterations, so the checkpoint is not used either
+        ResultListener fewer = new ResultListener(-1);
+        IterativeEnergySolver third = new IterativeEnergySolver(stack(), 10, 4, 50, true, false, WeightMode.DEFAULT, 0, fewer);
+        fewer.solver = third;
+        third.setCheckpoint(checkpoint, 2);
+        third.setResume(true);
+        third.run();
+        assertNull(fewer.error);
+        assertTrue(fewer.log.toString(), fewer.log.toString().contains("other parameters, starting from the beginning"));
+        assertTrue(checkpoint.delete());
+    }
+}
@@ -0,0 +1,115 @@
+package Solver;
+
+import Maths.BandMatrix;
+import Maths.EquationSolver;
+import Maths.EquationSolverAlgorithm;
+import Maths.Vector;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the matrix free system of the spatial smoothness of F against the equivalent band matrix.
+ */
+public class NeighbourhoodOperatorTest {
+    private static final int COLS = 7;
+    private static final int ROWS = 5;
+    private static final double ALPHA = 2.5;
+
+    private Vector F() {
+        Vector F = new Vector(COLS * ROWS);
+        for (int i = 0; i < F.length(); i++) {
+            F.set(i, Math.sin(i * 0.7) + (i % 4 == 0 ? 0 : 0.1 * i));
+        }
+        return F;
+    }
+
+    private double[] dataWeights() {
+        double[] w = new double[COLS * ROWS];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = 1 + (i * 13) % 5;
+        }
+        return w;
+    }
+
+    /**
+     * builds the band matrix in the same way as the IterativeEnergySolver
+     */
+    private BandMatrix matrix(Vector F, double[] dataWeights, boolean robust) {
+        int n = COLS * ROWS;
+        BandMatrix m = new BandMatrix(n, new int[]{-COLS, -1, 0, 1, COLS});
+        for (int i = 0; i < n; i++) {
+            double d = 0;
+            if (i - 1 >= 0) {
+                double v = NeighbourhoodOperator.phi(F, i, i - 1, robust);
+                d += v;
+                m.set(i - 1, i, -v * ALPHA);
+            }
+            if (i + 1 < n) {
+                double v = NeighbourhoodOperator.phi(F, i + 1, i, robust);
+                d += v;
+                m.set(i + 1, i, -v * ALPHA);
+            }
+            if (i - COLS >= 0) {
+                double v = NeighbourhoodOperator.phi(F, i, i - COLS, robust);
+                d += v;
+                m.set(i - COLS, i, -v * ALPHA);
+            }
+            if (i + COLS < n) {
+                double v = NeighbourhoodOperator.phi(F, i + COLS, i, robust);
+                d += v;
+                m.set(i + COLS, i, -v * ALPHA);
+            }
+            m.set(i, i, dataWeights[i] + ALPHA * d);
+        }
+        return m;
+    }
+
+    @Test
+    public void testSameAsBandMatrix() throws Exception {
+        for (boolean robust : new boolean[]{false, true}) {
+            Vector F = F();
+            double[] w = dataWeights();
+            BandMatrix m = matrix(F, w, robust);
+            NeighbourhoodOperator op = new NeighbourhoodOperator(w, F, ALPHA, COLS, ROWS, robust);
+            assertEquals(m.size(), op.size());
+            double[] x = new double[COLS * ROWS];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = (i % 5) - 1.5;
+            }
+            double[] expected = new double[x.length];
+            double[] actual = new double[x.length];
+            m.apply(x, expected);
+            op.apply(x, actual);
+            assertArrayEquals(expected, actual, 0.0);
+            for (int i = 0; i < x.length; i++) {
+                assertEquals(m.diagonal(i), op.diagonal(i), 0.0);
+                assertEquals(m.offDiagonalProduct(i, x), op.offDiagonalProduct(i, x), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testSolveMatrixFree() throws Exception {
+        Vector F = F();
+        double[] w = dataWeights();
+        BandMatrix m = matrix(F, w, true);
+        NeighbourhoodOperator op = new NeighbourhoodOperator(w, F, ALPHA, COLS, ROWS, true);
+        Vector b = new Vector(COLS * ROWS);
+        for (int i = 0; i < b.length(); i++) {
+            b.set(i, i % 3);
+        }
+        for (EquationSolverAlgorithm algorithm : new EquationSolverAlgorithm[]{EquationSolverAlgorithm.SOR, EquationSolverAlgorithm.CG_JACOBI}) {
+            Vector expected = EquationSolver.solve(m, b, algorithm);
+            Vector actual = EquationSolver.solveMatrixFree(op, b, algorithm, null);
+            assertArrayEquals(expected.toArray(), actual.toArray(), 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedAlgorithm() throws Exception {
+        NeighbourhoodOperator op = new NeighbourhoodOperator(dataWeights(), F(), ALPHA, COLS, ROWS, false);
+        EquationSolver.solveMatrixFree(op, new Vector(COLS * ROWS), EquationSolverAlgorithm.CG_INCOMPLETE_CHOLESKY, null);
+    }
+}
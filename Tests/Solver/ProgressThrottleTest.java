@@ -0,0 +1,98 @@
+package Solver;
+
+import Model.ExposureStack;
+import Model.HDRResult;
+import Model.WeightMode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests how often intermediate results are reported.
+ */
+public class ProgressThrottleTest {
+
+    /**
+     * keeps the reported progress and results
+     */
+    private static class ProgressListener implements HDRSolverUpdateListener {
+        private final List<Integer> progress = new ArrayList<Integer>();
+        private final List<HDRResult> results = new ArrayList<HDRResult>();
+
+        @Override
+        public void updateState(int progress, HDRResult hdrResult) {
+            this.progress.add(progress);
+            results.add(hdrResult);
+        }
+
+        @Override
+        public void energyUpdated(int iteration, double energy) {
+        }
+
+        @Override
+        public void log(String message) {
+        }
+
+        @Override
+        public void errorOccured(String message, HDRResult lastResult) {
+        }
+    }
+
+    private ProgressListener run(ProgressThrottle throttle) {
+        Random r = new Random(5);
+        byte[] samples = new byte[40 * 30 * 3];
+        r.nextBytes(samples);
+        ProgressListener listener = new ProgressListener();
+        IterativeEnergySolver solver = new IterativeEnergySolver(new ExposureStack(40, 30, new double[]{0.1, 0.025, 0.00625}, samples),
+                10, 6, 50, true, false, WeightMode.DEFAULT, 0, listener);
+        solver.setProgressThrottle(throttle);
+        solver.run();
+        return listener;
+    }
+
+    @Test
+    public void shouldReport() {
+        ProgressThrottle throttle = new ProgressThrottle(3, 100);
+        assertFalse(throttle.shouldReport(2, 1000));
+        assertFalse(throttle.shouldReport(3, 99));
+        assertTrue(throttle.shouldReport(3, 100));
+        assertTrue(ProgressThrottle.EVERY_ITERATION.shouldReport(1, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidIterations() {
+        new ProgressThrottle(0, 0);
+    }
+
+    @Test
+    public void everyIteration() {
+        ProgressListener listener = run(ProgressThrottle.EVERY_ITERATION);
+        assertEquals("[0, 16, 33, 50, 66, 83, 100]", listener.progress.toString());
+    }
+
+    @Test
+    public void everyOtherIteration() {
+        ProgressListener listener = run(new ProgressThrottle(2, 0));
+        assertEquals("[0, 33, 66, 100]", listener.progress.toString());
+        // the radiance maps are only calculated when they are read
+        for (HDRResult result : listener.results) {
+            assertFalse(result.isRadianceMapCalculated());
+        }
+        HDRResult last = listener.results.get(listener.results.size() - 1);
+        assertEquals(40 * 30, last.getE().length());
+        assertTrue(last.isRadianceMapCalculated());
+    }
+
+    @Test
+    public void timeBased() {
+        // the first intermediate result and the final one are always reported
+        ProgressListener listener = run(new ProgressThrottle(1, 60 * 60 * 1000));
+        assertEquals("[0, 100]", listener.progress.toString());
+    }
+}
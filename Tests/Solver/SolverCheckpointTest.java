@@ -0,0 +1,148 @@
+package Solver;
+
+import Maths.EquationSolverAlgorithm;
+import Maths.FloatVector;
+import Maths.Vector;
+import Model.WeightMode;
+import Model.WeightTable;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests writing and reading of checkpoints.
+ */
+public class SolverCheckpointTest {
+    private static final double[] LN_T = {Math.log(0.1), Math.log(0.025)};
+
+    private SolverCheckpoint.Parameters parameters(double lambda, WeightTable weights, boolean floatPrecision) {
+        return parameters(lambda, 10, weights, false, EquationSolverAlgorithm.CG_JACOBI, floatPrecision);
+    }
+
+    private SolverCheckpoint.Parameters parameters(double lambda, int iterations, WeightTable weights,
+                                                   boolean robustnessSmoothnessE, EquationSolverAlgorithm algorithm,
+                                                   boolean floatPrecision) {
+        return new SolverCheckpoint.Parameters(lambda, 5, 0.5, iterations, weights.getWeights(), true,
+                robustnessSmoothnessE, algorithm, floatPrecision);
+    }
+
+    private SolverCheckpoint checkpoint(Vector F) {
+        Vector g = new Vector(256);
+        for (int z = 0; z < 256; z++)
+            g.set(z, Math.log(z + 1) / 3);
+        for (int i = 0; i < F.length(); i++)
+            F.set(i, Math.sin(i) * 1.7);
+        SolverCheckpoint.Parameters parameters = parameters(50, WeightMode.DEFAULT.getTable(), F instanceof FloatVector);
+        return new SolverCheckpoint(4, 3, LN_T, parameters, 2, new double[]{5.5, 4.25, 4.0}, g, F);
+    }
+
+    private File file() throws IOException {
+        File f = File.createTempFile("hdr", ".checkpoint");
+        f.deleteOnExit();
+        return f;
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        for (Vector F : new Vector[]{new Vector(12), new FloatVector(12)}) {
+            SolverCheckpoint c = checkpoint(F);
+            File f = file();
+            c.write(f);
+            // header, exposure times, parameters, energies, g and F
+            assertEquals(4 * 5 + 8 * 2 + 8 * 3 + 4 + 8 * 256 + 2 + "CG_JACOBI".length() + 3 + 4 + 8 * 2 + 8 * 256
+                            + (F instanceof FloatVector ? 4 : 8) * 12,
+                    f.length());
+            SolverCheckpoint read = SolverCheckpoint.read(f);
+            assertEquals(2, read.getIteration());
+            assertArrayEquals(new double[]{5.5, 4.25}, read.getEnergy(), 0);
+            assertEquals(0.0, read.getG().subtract(c.getG()).absMax(), 0.0);
+            assertEquals(0.0, read.getF().subtract(c.getF()).absMax(), 0.0);
+            assertEquals(F instanceof FloatVector, read.getF() instanceof FloatVector);
+            assertTrue(read.matches(4, 3, LN_T));
+            assertFalse(read.matches(3, 4, LN_T));
+            assertFalse(read.matches(4, 3, new double[]{Math.log(0.1), Math.log(0.05)}));
+            assertTrue(read.matches(c.getParameters()));
+            assertFalse(new File(f.getPath() + ".tmp").exists());
+            assertTrue(f.delete());
+        }
+    }
+
+    @Test
+    public void invalidFiles() throws IOException {
+        File f = file();
+        checkpoint(new Vector(12)).write(f);
+        byte[] truncated = new byte[(int) f.length() - 10];
+        FileInputStream in = new FileInputStream(f);
+        try {
+            assertEquals(truncated.length, in.read(truncated));
+        } finally {
+            in.close();
+        }
+        for (byte[] content : new byte[][]{truncated, "no checkpoint".getBytes("US-ASCII")}) {
+            FileOutputStream out = new FileOutputStream(f);
+            out.write(content);
+            out.close();
+            try {
+                SolverCheckpoint.read(f);
+                assertTrue("invalid checkpoint was read", false);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        assertTrue(f.delete());
+    }
+
+    @Test
+    public void damagedSizes() throws IOException {
+        File f = file();
+        // width, height, number of pictures and number of finished iterations
+        for (long position : new long[]{8, 12, 16, 4 * 5 + 8 * 2 + 8 * 3 + 4 + 8 * 256 + 2 + "CG_JACOBI".length() + 3}) {
+            checkpoint(new Vector(12)).write(f);
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            try {
+                raf.seek(position);
+                raf.writeInt(Integer.MAX_VALUE);
+            } finally {
+                raf.close();
+            }
+            try {
+                SolverCheckpoint.read(f);
+                assertTrue("damaged checkpoint was read", false);
+            } catch (IOException e) {
+                // expected, without allocating the sizes of the header
+            }
+        }
+        assertTrue(f.delete());
+    }
+
+    @Test
+    public void otherParameters() throws IOException {
+        File f = file();
+        checkpoint(new Vector(12)).write(f);
+        SolverCheckpoint read = SolverCheckpoint.read(f);
+        assertTrue(read.matches(parameters(50, WeightMode.DEFAULT.getTable(), false)));
+        assertFalse(read.matches(parameters(10, WeightMode.DEFAULT.getTable(), false)));
+        assertFalse(read.matches(parameters(50, WeightMode.PARABEL.getTable(), false)));
+        assertFalse(read.matches(parameters(50, WeightTable.gaussian(40), false)));
+        assertFalse(read.matches(parameters(50, WeightMode.DEFAULT.getTable(), true)));
+        assertFalse(read.matches(parameters(50, 10, WeightMode.DEFAULT.getTable(), true, EquationSolverAlgorithm.CG_JACOBI, false)));
+        assertFalse(read.matches(parameters(50, 5, WeightMode.DEFAULT.getTable(), false, EquationSolverAlgorithm.CG_JACOBI, false)));
+        assertFalse(read.matches(parameters(50, 10, WeightMode.DEFAULT.getTable(), false, EquationSolverAlgorithm.MULTIGRID, false)));
+        assertTrue(f.delete());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongSize() {
+        new SolverCheckpoint(5, 3, LN_T, parameters(50, WeightMode.DEFAULT.getTable(), false), 0, new double[0],
+                new Vector(256), new Vector(12));
+    }
+}
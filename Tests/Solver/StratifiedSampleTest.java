@@ -0,0 +1,89 @@
+package Solver;
+
+import Maths.Vector;
+import Model.ExposureStack;
+import Model.WeightMode;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the stratified sample of the pixels and the estimation of g on it.
+ */
+public class StratifiedSampleTest {
+    private static final double[] T = {0.1, 0.025, 0.00625};
+
+    private ExposureStack stack(int width, int height) {
+        Random r = new Random(5);
+        byte[] samples = new byte[width * height * T.length];
+        for (int i = 0; i < width * height; i++) {
+            double E = Math.exp(r.nextGaussian() * 2 + 3);
+            for (int j = 0; j < T.length; j++) {
+                double v = 255 * Math.pow(Math.min(1, E * T[j] / 20), 1 / 2.2) + r.nextGaussian() * 2;
+                samples[i * T.length + j] = (byte) Math.max(0, Math.min(255, v));
+            }
+        }
+        return new ExposureStack(width, height, T, samples);
+    }
+
+    @Test
+    public void testAllGreyValuesAreCovered() throws Exception {
+        ExposureStack stack = stack(200, 150);
+        StratifiedSample sample = new StratifiedSample(stack, 10);
+        int[] histogram = stack.getHistogram();
+        int[] covered = sample.getStack().getHistogram();
+        for (int k = 0; k < 256; k++) {
+            // each grey value occurs at least min(10, histogram) times in the sample
+            assertTrue(covered[k] >= Math.min(10, histogram[k]));
+        }
+        assertTrue(sample.size() <= 256 * 10);
+        assertEquals(sample.size(), sample.getStack().getImageSize());
+
+        int[] pixels = sample.getPixels();
+        for (int c = 0; c < pixels.length; c++) {
+            if (c > 0)
+                assertTrue(pixels[c - 1] < pixels[c]);
+            for (int j = 0; j < T.length; j++) {
+                assertEquals(stack.get(pixels[c], j), sample.getStack().get(c, j));
+            }
+        }
+    }
+
+    @Test
+    public void testSmallStackIsTakenCompletely() throws Exception {
+        ExposureStack stack = stack(4, 3);
+        assertEquals(12, new StratifiedSample(stack, 1000).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSamples() throws Exception {
+        new StratifiedSample(stack(4, 3), 0);
+    }
+
+    @Test
+    public void testResponseCurveOfSample() throws Exception {
+        IterativeEnergySolver solver = new IterativeEnergySolver(stack(200, 150), 10, 3, 0, true, false, WeightMode.DEFAULT, 0, null);
+        solver.setSubsampling(20, true);
+        Vector g = solver.estimateGOnSample();
+        assertTrue(solver.getSampleSize() < 200 * 150 / 4);
+        assertEquals(0, g.get(127), 0.0);
+        assertTrue(solver.getSubsamplingDifference() < 1);
+        // the well exposed grey values are determined by the sample as well as by all pixels
+        Vector full = solver.estimateG();
+        for (int z = 20; z < 236; z++) {
+            assertEquals(full.get(z), g.get(z), 0.25);
+        }
+    }
+
+    @Test
+    public void testCompleteSampleGivesSameResponseCurve() throws Exception {
+        IterativeEnergySolver solver = new IterativeEnergySolver(stack(40, 30), 10, 3, 50, true, false, WeightMode.DEFAULT, 0, null);
+        solver.setSubsampling(40 * 30 * T.length, true);
+        solver.estimateGOnSample();
+        assertEquals(40 * 30, solver.getSampleSize());
+        assertEquals(0.0, solver.getSubsamplingDifference());
+    }
+}
@@ -0,0 +1,82 @@
+package Solver;
+
+import Maths.Vector;
+import Model.ExposureStack;
+import Model.ExposureStackFile;
+import Model.WeightMode;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the out of core solver.
+ */
+public class TiledEnergySolverTest {
+    private static final int W = 30;
+    private static final int H = 20;
+    private static final double[] T = {0.1, 0.025, 0.00625};
+
+    private ExposureStackFile stack() throws Exception {
+        Random r = new Random(7);
+        byte[] samples = new byte[W * H * T.length];
+        for (int i = 0; i < W * H; i++) {
+            double E = Math.exp(r.nextGaussian() * 2 + 3);
+            for (int j = 0; j < T.length; j++) {
+                double v = 255 * Math.pow(Math.min(1, E * T[j] / 20), 1 / 2.2) + r.nextGaussian() * 2;
+                samples[i * T.length + j] = (byte) Math.max(0, Math.min(255, v));
+            }
+        }
+        File f = File.createTempFile("stack", ".bin");
+        f.deleteOnExit();
+        return ExposureStackFile.create(f, new ExposureStack(W, H, T, samples));
+    }
+
+    private double[] readF(File file) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            DoubleBuffer b = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()).asDoubleBuffer();
+            double[] F = new double[b.capacity()];
+            b.get(F);
+            return F;
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testTileSizeDoesNotChangeResult() throws Exception {
+        ExposureStackFile stack = stack();
+        for (boolean robust : new boolean[]{false, true}) {
+            double[] F0 = null;
+            Vector g0 = null;
+            for (int tileSize : new int[]{W * H, 64, 1}) {
+                File out = File.createTempFile("radiance", ".bin");
+                out.deleteOnExit();
+                TiledEnergySolver solver = new TiledEnergySolver(stack, out, tileSize, 10, 3, 50, robust, WeightMode.DEFAULT);
+                Vector g = solver.solve();
+                double[] F = readF(out);
+                assertEquals(W * H, F.length);
+                if (F0 == null) {
+                    F0 = F;
+                    g0 = g;
+                } else {
+                    assertArrayEquals(F0, F, 0.0);
+                    assertArrayEquals(g0.toArray(), g.toArray(), 0.0);
+                }
+            }
+            // g is fixed at 127 and increasing over the well exposed grey values
+            assertEquals(0, g0.get(127), 0.0);
+            assertTrue(g0.get(50) < g0.get(127));
+            assertTrue(g0.get(127) < g0.get(200));
+        }
+        stack.close();
+    }
+}
@@ -0,0 +1,699 @@
+package Ctrl;
+
+import Maths.Vector;
+import Model.HDRResult;
+import Model.Image;
+import Model.ExposureStackFile;
+import Model.ImageMetadata;
+import Model.RadianceMapFile;
+import Model.WeightMode;
+import Solver.ConvergenceController;
+import Solver.HDRJobScheduler;
+import Solver.HDRSolverUpdateListener;
+import Solver.IterativeEnergySolver;
+import Solver.ProgressThrottle;
+import Solver.TiledEnergySolver;
+import View.ToneMappers.LocalReinhardMapping;
+import View.ToneMappers.ReinhardMapping;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line entry point which generates HDR images without the GUI, e.g. on a server without display.
+ * <p/>
+ * Each bracket (a series of pictures of the same scene) is calculated with the @see IterativeEnergySolver. The
+ * brackets are read from directories or from manifest files:
+ * <ul>
+ * <li>a directory which contains pictures is one bracket, named after the directory. Each sub directory which
+ * contains pictures is a bracket as well.</li>
+ * <li>a manifest is a text file with one bracket per line: the name of the bracket followed by the pictures. The
+ * exposure time of a picture can be appended with '=' (e.g. <code>church a.jpg=1/10 b.jpg=1/40</code>). Relative
+ * paths are relative to the manifest, lines starting with '#' are ignored.</li>
+ * </ul>
+ * If no exposure time is given it is read from the EXIF data or from the file name (@see ImageMetadata). For each
+ * bracket the radiance map (&lt;name&gt;.pfm, with -hdr also &lt;name&gt;.hdr), the response curve (&lt;name&gt;-g.txt) and two tone mapped pictures
+ * (&lt;name&gt;-reinhard.png, &lt;name&gt;-local-reinhard.png) are written to the output directory.
+ * <p/>
+ * The brackets are read concurrently by a fixed number of workers. The pictures of a bracket are only read when a
+ * worker starts it, so the memory needed is bounded by the number of workers. The calculations are queued in a
+ * @see HDRJobScheduler, which only runs as many of them at the same time as fit into the memory budget. A bracket is
+ * submitted after its pictures were read, so the budget does not limit the memory of reading the pictures, only the
+ * number of workers does.
+ * <p/>
+ * With -tiled (only without spatial smoothness, alpha = 0) the brackets are calculated out of core by the
+ * @see TiledEnergySolver: the pictures are converted into an @see ExposureStackFile and the radiance map is kept in a
+ * file in the output directory, so the memory of the calculation is bounded by the size of a tile. These
+ * calculations do not pass the scheduler and run all iterations. Only the tone mapped pictures need the whole
+ * radiance map in memory.
+ *
+ * @author sebastianzillessen
+ */
+public class BatchRunner {
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".jpeg", ".png", ".bmp", ".gif", ".tif", ".tiff"};
+    private static final String USAGE = "Aufruf: java -cp hdr-generator.jar Ctrl.BatchRunner [Optionen] <Verzeichnis|Manifest>...\n" +
+            "  -o <dir>          Ausgabeverzeichnis (Standard: .)\n" +
+            "  -lambda <Wert>    Glattheit von g (Standard: 50)\n" +
+            "  -mu <Wert>        Monotonie von g (Standard: 5)\n" +
+            "  -alpha <Wert>     räumliche Glattheit von E (Standard: 0)\n" +
+            "  -iterations <n>   innere und äußere Iterationen (Standard: 10)\n" +
+            "  -weight <Modus>   NONE, DEFAULT oder PARABEL (Standard: DEFAULT)\n" +
+            "  -robust-g         subquadratische Bestrafung im Datenterm von g\n" +
+            "  -robust-e         subquadratische Bestrafung im Glattheitsterm von E\n" +
+            "  -subsampling <n>  g aus n Stichproben je Grauwert schätzen (Standard: 0, alle Pixel)\n" +
+            "  -float            Zustand je Pixel mit einfacher Genauigkeit speichern\n" +
+            "  -hdr              Radiance Map zusätzlich als Radiance-RGBE-Datei schreiben (<Name>.hdr)\n" +
+            "  -workers <n>      Anzahl gleichzeitig berechneter Belichtungsreihen (Standard: 1)\n" +
+            "  -memory <MB>      Speicherbudget der laufenden Berechnungen, die Bilder von bis zu -workers\n" +
+            "                    Belichtungsreihen werden unabhängig davon gelesen (Standard: 3/4 des Heaps)\n" +
+            "  -checkpoint <n>   nach je n Iterationen <Name>.checkpoint schreiben (Standard: 0, aus)\n" +
+            "  -resume           an den Checkpoints eines früheren Laufs fortsetzen\n" +
+            "  -tiled <Pixel>    ohne räumliche Glattheit (alpha 0) in Kacheln dieser Größe über Dateien rechnen";
+
+    /**
+     * A series of pictures of the same scene with different exposure times.
+     */
+    public static class Bracket {
+        private final String name;
+        private final List<File> files = new ArrayList<File>();
+        // null if the exposure time is read from the picture
+        private final List<Float> exposureTimes = new ArrayList<Float>();
+
+        /**
+         * @param name name of the bracket, it is used for the output files
+         */
+        public Bracket(String name) {
+            this.name = name;
+        }
+
+        /**
+         * adds a picture to the bracket
+         *
+         * @param file         the picture
+         * @param exposureTime exposure time of the picture (null to read it from the EXIF data or the file name)
+         */
+        public void add(File file, Float exposureTime) {
+            files.add(file);
+            exposureTimes.add(exposureTime);
+        }
+
+        /**
+         * @return name of the bracket
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return pictures of the bracket
+         */
+        public List<File> getFiles() {
+            return files;
+        }
+
+        /**
+         * returns the exposure time of a picture
+         *
+         * @param i index of the picture
+         * @return exposure time given for the picture or read from it (null if not detectable)
+         */
+        public Float getExposureTime(int i) {
+            Float t = exposureTimes.get(i);
+            return t != null ? t : ImageMetadata.exposureTime(files.get(i));
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + files.size() + " Bilder)";
+        }
+    }
+
+    private final List<Bracket> brackets = new ArrayList<Bracket>();
+    private File outputDirectory = new File(".");
+    private double lambda = 50;
+    private double mu = 5;
+    private double alpha = 0;
+    private int iterations = 10;
+    private WeightMode weightMode = WeightMode.DEFAULT;
+    private boolean robustnessDataG = false;
+    private boolean robustnessSmoothnessE = false;
+    private int samplesPerGreyValue = 0;
+    private boolean floatPrecision = false;
+    private int workers = 1;
+    private long memoryBudget = HDRJobScheduler.defaultMemoryBudget();
+    private HDRJobScheduler scheduler = null;
+    private int checkpointInterval = 0;
+    private boolean resume = false;
+    private boolean writeHDR = false;
+    private int tileSize = 0;
+    private PrintStream out = System.out;
+
+    /**
+     * Application entrance point for the batch mode.
+     *
+     * @param args options and the directories or manifests of the brackets
+     */
+    public static void main(String[] args) {
+        BatchRunner runner;
+        try {
+            runner = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.exit(runner.run() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Parses the arguments of the command line.
+     *
+     * @param args options and the directories or manifests of the brackets
+     * @return the configured runner
+     * @throws IllegalArgumentException if an argument is invalid
+     * @throws IOException              if a manifest could not be read
+     */
+    public static BatchRunner parse(String[] args) throws IOException {
+        BatchRunner runner = new BatchRunner();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-robust-g")) {
+                runner.robustnessDataG = true;
+            } else if (arg.equals("-robust-e")) {
+                runner.robustnessSmoothnessE = true;
+            } else if (arg.equals("-float")) {
+                runner.floatPrecision = true;
+            } else if (arg.equals("-resume")) {
+                runner.resume = true;
+            } else if (arg.equals("-hdr")) {
+                runner.writeHDR = true;
+            } else if (arg.startsWith("-")) {
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Fehlender Wert von " + arg);
+                String value = args[++i];
+                try {
+                    if (arg.equals("-o"))
+                        runner.outputDirectory = new File(value);
+                    else if (arg.equals("-lambda"))
+                        runner.lambda = Double.parseDouble(value);
+                    else if (arg.equals("-mu"))
+                        runner.mu = Double.parseDouble(value);
+                    else if (arg.equals("-alpha"))
+                        runner.alpha = Double.parseDouble(value);
+                    else if (arg.equals("-iterations"))
+                        runner.iterations = positive(arg, Integer.parseInt(value));
+                    else if (arg.equals("-subsampling"))
+                        runner.samplesPerGreyValue = Integer.parseInt(value);
+                    else if (arg.equals("-workers"))
+                        runner.workers = positive(arg, Integer.parseInt(value));
+                    else if (arg.equals("-checkpoint"))
+                        runner.checkpointInterval = Integer.parseInt(value);
+                    else if (arg.equals("-memory"))
+                        runner.memoryBudget = positive(arg, Integer.parseInt(value)) * 1024L * 1024L;
+                    else if (arg.equals("-tiled"))
+                        runner.tileSize = positive(arg, Integer.parseInt(value));
+                    else if (arg.equals("-weight"))
+                        runner.weightMode = WeightMode.valueOf(value.toUpperCase(Locale.ENGLISH));
+                    else
+                        throw new IllegalArgumentException("Unbekannte Option " + arg);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Ungültiger Wert von " + arg + ": " + value);
+                }
+            } else {
+                File input = new File(arg);
+                if (input.isDirectory())
+                    runner.brackets.addAll(readDirectory(input));
+                else if (input.isFile())
+                    runner.brackets.addAll(readManifest(input));
+                else
+                    throw new IllegalArgumentException("Eingabe " + arg + " existiert nicht.");
+            }
+        }
+        if (runner.brackets.isEmpty())
+            throw new IllegalArgumentException("Keine Belichtungsreihen angegeben.");
+        checkNames(runner.brackets);
+        if (runner.tileSize > 0)
+            checkTiled(runner);
+        return runner;
+    }
+
+    /**
+     * the names of the brackets are used as file names in the output directory, so they must not contain a path and
+     * must be unique.
+     *
+     * @throws IllegalArgumentException if a name is empty, contains a path separator or is used twice
+     */
+    private static void checkNames(List<Bracket> brackets) {
+        Set<String> names = new HashSet<String>();
+        for (Bracket bracket : brackets) {
+            String name = bracket.getName();
+            if (name.isEmpty() || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0 || name.indexOf(File.separatorChar) >= 0)
+                throw new IllegalArgumentException("Ungültiger Name der Belichtungsreihe: '" + name + "'");
+            if (!names.add(name))
+                throw new IllegalArgumentException("Der Name der Belichtungsreihe '" + name + "' ist doppelt vergeben.");
+        }
+    }
+
+    /**
+     * the tiled solver has no spatial smoothness and keeps its state in files only while it runs.
+     *
+     * @throws IllegalArgumentException if an option is used which the tiled solver does not support
+     */
+    private static void checkTiled(BatchRunner runner) {
+        if (runner.alpha != 0)
+            throw new IllegalArgumentException("-tiled rechnet ohne räumliche Glattheit, -alpha muss 0 sein.");
+        if (runner.robustnessSmoothnessE)
+            throw new IllegalArgumentException("-tiled und -robust-e können nicht zusammen verwendet werden.");
+        if (runner.samplesPerGreyValue > 0)
+            throw new IllegalArgumentException("-tiled und -subsampling können nicht zusammen verwendet werden.");
+        if (runner.floatPrecision)
+            throw new IllegalArgumentException("-tiled und -float können nicht zusammen verwendet werden.");
+        if (runner.checkpointInterval > 0 || runner.resume)
+            throw new IllegalArgumentException("-tiled und -checkpoint/-resume können nicht zusammen verwendet werden.");
+    }
+
+    private static int positive(String option, int value) {
+        if (value < 1)
+            throw new IllegalArgumentException(option + " muss mindestens 1 sein.");
+        return value;
+    }
+
+    /**
+     * reads the brackets of a directory: the directory itself and each sub directory which contain pictures.
+     *
+     * @param directory the directory
+     * @return the brackets (sorted by name)
+     */
+    public static List<Bracket> readDirectory(File directory) {
+        List<Bracket> result = new ArrayList<Bracket>();
+        Bracket own = bracketOf(directory);
+        if (own != null)
+            result.add(own);
+        File[] children = directory.listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    Bracket b = bracketOf(child);
+                    if (b != null)
+                        result.add(b);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * returns the bracket of the pictures in a directory (sorted by file name) or null if it contains no pictures
+     */
+    private static Bracket bracketOf(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return null;
+        Arrays.sort(files);
+        Bracket bracket = new Bracket(directory.getAbsoluteFile().getName());
+        for (File f : files) {
+            if (f.isFile() && isImage(f))
+                bracket.add(f, null);
+        }
+        return bracket.getFiles().isEmpty() ? null : bracket;
+    }
+
+    private static boolean isImage(File f) {
+        String name = f.getName().toLowerCase(Locale.ENGLISH);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (name.endsWith(extension))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * reads the brackets of a manifest file.
+     *
+     * @param manifest the manifest
+     * @return the brackets in the order of the file
+     * @throws IOException              if the manifest could not be read
+     * @throws IllegalArgumentException if a line is invalid
+     */
+    public static List<Bracket> readManifest(File manifest) throws IOException {
+        List<Bracket> result = new ArrayList<Bracket>();
+        File base = manifest.getAbsoluteFile().getParentFile();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), Charset.forName("UTF-8")));
+        try {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] parts = line.split("\\s+");
+                if (parts.length < 2)
+                    throw new IllegalArgumentException(manifest + ":" + number + ": eine Belichtungsreihe braucht einen Namen und mindestens ein Bild.");
+                Bracket bracket = new Bracket(parts[0]);
+                for (int i = 1; i < parts.length; i++) {
+                    String path = parts[i];
+                    Float exposureTime = null;
+                    int separator = path.lastIndexOf('=');
+                    if (separator >= 0) {
+                        exposureTime = ImageMetadata.parseExposureTime(path.substring(separator + 1));
+                        if (exposureTime == null)
+                            throw new IllegalArgumentException(manifest + ":" + number + ": ungültige Belichtungszeit " + path.substring(separator + 1));
+                        path = path.substring(0, separator);
+                    }
+                    File f = new File(path);
+                    bracket.add(f.isAbsolute() ? f : new File(base, path), exposureTime);
+                }
+                result.add(bracket);
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    /**
+     * @return brackets which are calculated
+     */
+    public List<Bracket> getBrackets() {
+        return brackets;
+    }
+
+    /**
+     * @return directory of the output files
+     */
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * @return memory budget in bytes of the calculations which run at the same time
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * sets the stream for the messages of the calculations (default System.out)
+     *
+     * @param out the stream
+     */
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Calculates all brackets with the workers.
+     *
+     * @return number of brackets which failed
+     */
+    public int run() {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            log(null, "Ausgabeverzeichnis " + outputDirectory + " konnte nicht angelegt werden.");
+            return brackets.size();
+        }
+        // the processors are shared between the workers
+        final int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+        scheduler = new HDRJobScheduler(workers, memoryBudget);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (final Bracket bracket : brackets) {
+            results.add(pool.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return process(bracket, parallelism);
+                }
+            }));
+        }
+        pool.shutdown();
+        int failed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                if (!results.get(i).get())
+                    failed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed++;
+            } catch (ExecutionException e) {
+                log(brackets.get(i), "Unbekannter Fehler: " + e.getCause());
+                failed++;
+            }
+        }
+        scheduler.shutdown();
+        log(null, (brackets.size() - failed) + " von " + brackets.size() + " Belichtungsreihen berechnet.");
+        return failed;
+    }
+
+    /**
+     * calculates a bracket and writes its output files.
+     *
+     * @param bracket     the bracket
+     * @param parallelism number of threads of the solver
+     * @return true if the bracket was calculated
+     */
+    boolean process(final Bracket bracket, int parallelism) {
+        if (tileSize > 0)
+            return processTiled(bracket, parallelism);
+        long started = System.currentTimeMillis();
+        List<Image> images = new ArrayList<Image>();
+        for (int i = 0; i < bracket.getFiles().size(); i++) {
+            File f = bracket.getFiles().get(i);
+            Float exposureTime = bracket.getExposureTime(i);
+            if (exposureTime == null) {
+                log(bracket, "Belichtungszeit von '" + f + "' ist unbekannt.");
+                return false;
+            }
+            try {
+                images.add(new Image(f.getPath(), exposureTime));
+            } catch (Exception e) {
+                log(bracket, "Datei '" + f + "' konnte nicht gelesen werden. (" + e.getMessage() + ")");
+                return false;
+            }
+        }
+        BracketListener listener = new BracketListener(bracket);
+        IterativeEnergySolver solver;
+        try {
+            solver = new IterativeEnergySolver(images, lambda, iterations, mu, robustnessDataG, robustnessSmoothnessE, weightMode, alpha, listener);
+        } catch (IllegalArgumentException e) {
+            log(bracket, e.getMessage());
+            return false;
+        }
+        // the pictures are packed into the exposure stack of the solver
+        images = null;
+        solver.setParallelism(parallelism);
+        solver.setConvergenceController(new ConvergenceController(Controller.ENERGY_TOLERANCE, Controller.CHANGE_TOLERANCE));
+        solver.setSubsampling(samplesPerGreyValue, false);
+        solver.setFloatPrecision(floatPrecision);
+        // only the progress is printed, E of the final result is calculated when it is written
+        solver.setProgressThrottle(new ProgressThrottle(1, Controller.PROGRESS_INTERVAL));
+        if (checkpointInterval > 0 || resume) {
+            solver.setCheckpoint(new File(outputDirectory, bracket.getName() + ".checkpoint"), Math.max(1, checkpointInterval));
+            solver.setResume(resume);
+        }
+        log(bracket, "Starte " + bracket + String.format(Locale.ENGLISH, " (ca. %.1f MB)", solver.estimateMemory() / (1024.0 * 1024.0)));
+        // the worker waits until the scheduler has calculated the bracket
+        HDRJobScheduler.Job job = scheduler.submit(solver, bracket.getName(), 0);
+        try {
+            job.await();
+        } catch (InterruptedException e) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+            log(bracket, "Abgebrochen.");
+            return false;
+        }
+        if (listener.error != null) {
+            log(bracket, "Fehler: " + listener.error);
+            return false;
+        }
+        if (listener.result == null) {
+            log(bracket, "Kein Ergebnis berechnet.");
+            return false;
+        }
+        try {
+            write(bracket, listener.result);
+        } catch (IOException e) {
+            log(bracket, "Ergebnis konnte nicht gespeichert werden: " + e.getMessage());
+            return false;
+        }
+        log(bracket, "Fertig nach " + (System.currentTimeMillis() - started) / 1000.0 + "s");
+        return true;
+    }
+
+    /**
+     * calculates a bracket with the @see TiledEnergySolver and writes its output files. The exposure stack and the
+     * radiance map are kept in temporary files in the output directory.
+     *
+     * @param bracket     the bracket
+     * @param parallelism number of threads of the solver
+     * @return true if the bracket was calculated
+     */
+    private boolean processTiled(Bracket bracket, int parallelism) {
+        long started = System.currentTimeMillis();
+        List<String> fileNames = new ArrayList<String>();
+        double[] exposureTimes = new double[bracket.getFiles().size()];
+        for (int i = 0; i < exposureTimes.length; i++) {
+            File f = bracket.getFiles().get(i);
+            Float exposureTime = bracket.getExposureTime(i);
+            if (exposureTime == null) {
+                log(bracket, "Belichtungszeit von '" + f + "' ist unbekannt.");
+                return false;
+            }
+            fileNames.add(f.getPath());
+            exposureTimes[i] = exposureTime;
+        }
+        File stackFile = new File(outputDirectory, bracket.getName() + ".stack");
+        File radianceFile = new File(outputDirectory, bracket.getName() + ".radiance");
+        BracketListener listener = new BracketListener(bracket);
+        try {
+            ExposureStackFile stack;
+            try {
+                stack = ExposureStackFile.create(stackFile, fileNames, exposureTimes);
+            } catch (IOException e) {
+                log(bracket, "Bilder konnten nicht gelesen werden. (" + e.getMessage() + ")");
+                return false;
+            }
+            HDRResult result;
+            try {
+                try {
+                    log(bracket, "Starte " + bracket + " in Kacheln von " + tileSize + " Pixeln");
+                    TiledEnergySolver solver = new TiledEnergySolver(stack, radianceFile, tileSize, lambda, iterations, mu, robustnessDataG, weightMode);
+                    solver.setParallelism(parallelism);
+                    solver.setUpdateListener(listener);
+                    Vector g = solver.solve();
+                    result = HDRResult.fromLogRadiance(readRadiance(radianceFile, stack.getImageSize()), g, stack.getWidth(), stack.getHeight());
+                } finally {
+                    stack.close();
+                }
+            } catch (IOException e) {
+                log(bracket, "Fehler: " + e.getMessage());
+                return false;
+            } catch (RuntimeException e) {
+                log(bracket, "Fehler: " + e);
+                return false;
+            }
+            try {
+                write(bracket, result);
+            } catch (IOException e) {
+                log(bracket, "Ergebnis konnte nicht gespeichert werden: " + e.getMessage());
+                return false;
+            }
+        } finally {
+            stackFile.delete();
+            radianceFile.delete();
+        }
+        log(bracket, "Fertig nach " + (System.currentTimeMillis() - started) / 1000.0 + "s");
+        return true;
+    }
+
+    /**
+     * reads F = ln E of the radiance file of the @see TiledEnergySolver
+     */
+    private static Vector readRadiance(File radianceFile, int n) throws IOException {
+        Vector F = new Vector(n);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(radianceFile)));
+        try {
+            for (int i = 0; i < n; i++) {
+                F.set(i, in.readDouble());
+            }
+        } finally {
+            in.close();
+        }
+        return F;
+    }
+
+    /**
+     * writes the radiance map, the response curve and the tone mapped pictures of a bracket.
+     */
+    private void write(Bracket bracket, HDRResult result) throws IOException {
+        String name = bracket.getName();
+        RadianceMapFile.writePFM(result, new File(outputDirectory, name + ".pfm"));
+        if (writeHDR)
+            RadianceMapFile.writeHDR(result, new File(outputDirectory, name + ".hdr"));
+        PrintWriter g = new PrintWriter(new File(outputDirectory, name + "-g.txt"), "UTF-8");
+        try {
+            Vector curve = result.getG();
+            for (int z = 0; z < curve.length(); z++) {
+                g.println(curve.get(z));
+            }
+        } finally {
+            g.close();
+        }
+        double[] E = result.getE().toArray();
+        if (!new ReinhardMapping(0.72).getImage(result.getWidth(), result.getHeight(), E)
+                .save(new File(outputDirectory, name + "-reinhard.png").getPath()))
+            throw new IOException("Tone-Mapping-Bild von " + name + " konnte nicht geschrieben werden.");
+        if (!new LocalReinhardMapping(0.6, 0.05, 8.0, 0.18).getImage(result.getWidth(), result.getHeight(), E)
+                .save(new File(outputDirectory, name + "-local-reinhard.png").getPath()))
+            throw new IOException("Tone-Mapping-Bild von " + name + " konnte nicht geschrieben werden.");
+    }
+
+    private void log(Bracket bracket, String message) {
+        // the lines of the workers must not be mixed
+        synchronized (out) {
+            out.println(bracket == null ? message : "[" + bracket.getName() + "] " + message);
+        }
+    }
+
+    /**
+     * Receives the progress and the messages of the solver of a bracket.
+     */
+    private class BracketListener implements HDRSolverUpdateListener {
+        private final Bracket bracket;
+        private HDRResult result;
+        private String error;
+        private int progress = -1;
+
+        BracketListener(Bracket bracket) {
+            this.bracket = bracket;
+        }
+
+        @Override
+        public void updateState(int progress, HDRResult hdrResult) {
+            if (progress != this.progress)
+                BatchRunner.this.log(bracket, progress + "%");
+            this.progress = progress;
+            if (progress >= 100)
+                result = hdrResult;
+        }
+
+        @Override
+        public void energyUpdated(int iteration, double energy) {
+            BatchRunner.this.log(bracket, String.format(Locale.ENGLISH, "  Energie nach Iteration %d: %.6e", iteration, energy));
+        }
+
+        @Override
+        public void log(String message) {
+            BatchRunner.this.log(bracket, message);
+        }
+
+        @Override
+        public void errorOccured(String message, HDRResult lastResult) {
+            error = message;
+        }
+    }
+}
@@ -3,23 +3,23 @@ package Ctrl;
 import Maths.Vector;
 import Model.HDRResult;
 import Model.Image;
+import Model.ImageMetadata;
+import Model.ResponseCurveCache;
 import Model.WeightMode;
+import Solver.ConvergenceController;
 import Solver.HDRSolverUpdateListener;
 import Solver.IHDRSolver;
 import Solver.IterativeEnergySolver;
+import Solver.ProgressThrottle;
 import View.GUIFrame;
 import View.Plots.ScatterPlot;
 import View.Plots.ToneMappingPlot;
 import View.ToneMappers.LocalReinhardMapping;
 import View.ToneMappers.ReinhardMapping;
-import com.drew.imaging.ImageMetadataReader;
-import com.drew.metadata.Metadata;
-import com.drew.metadata.exif.ExifSubIFDDirectory;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.swing.*;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Map;
 
@@ -33,12 +33,27 @@ import java.util.Map;
 public class Controller implements HDRSolverUpdateListener {
 
     private static final double PERCENTAGE_OF_SALT_N_PEPPER = 0.02;
+    // tolerances of the convergence controller (relative decrease of the energy, largest change of g and F)
+    static final double ENERGY_TOLERANCE = 1e-5;
+    static final double CHANGE_TOLERANCE = 1e-4;
+    // minimal time between two intermediate results of the solver
+    static final long PROGRESS_INTERVAL = 1000;
     private GUIFrame display;
 
     private static Controller ourInstance = null;
     private SwingWorker<HDRResult, Vector> worker;
     private IHDRSolver solver;
     private ArrayList<Image> images;
+    // camera of the read images (null if the EXIF data does not contain it)
+    private String cameraModel;
+    private int iso;
+    private ResponseCurveCache responseCurveCache;
+    // key to store the calculated response curve with (null if it is not stored)
+    private ResponseCurveCache.Key responseCurveKey;
+    // energy after each outer iteration of the running calculation
+    private ArrayList<Double> energyTrace = new ArrayList<Double>();
+    // plot of g which is updated with the intermediate results of the running calculation
+    private ScatterPlot progressPlot;
 
 
     /**
@@ -85,16 +100,99 @@ public class Controller implements HDRSolverUpdateListener {
      * @param alpha                 weight factor of the 2d smoothness term of the resulting irradiance map
      */
     public void solve(double lambda, final int iterations, double mu, boolean robustnessDataG, boolean robustnessSmoothnessE, WeightMode weight, double alpha) {
+        solve(lambda, iterations, mu, robustnessDataG, robustnessSmoothnessE, weight, alpha, false);
+    }
+
+    /**
+     * Method to start the generation of an HDR Image. Is called by the UI and updates the UI asynchron.
+     * <p/>
+     * If the response curve cache is used and the camera of the images is known, a cached response curve of the same
+     * camera and parameters is used and only the radiance map is calculated. Otherwise the calculated response curve
+     * is added to the cache.
+     *
+     * @param lambda                weight factor for the smoothness term
+     * @param iterations            number of iterations for the inner and outer iterations of the solver
+     * @param mu                    weight factor for the monotonie constraint
+     * @param robustnessDataG       true: subquadratic penalty functions are used in the calculation of the response curve
+     * @param robustnessSmoothnessE true: subquadratic penalty functions are used for the 2d smoothness term of the resulting HDR image
+     * @param weight                weightning mode which should be used to weight the greyvalues during the complete calculations
+     * @param alpha                 weight factor of the 2d smoothness term of the resulting irradiance map
+     * @param useCache              true: the response curve cache is used (@see ResponseCurveCache)
+     */
+    public void solve(double lambda, final int iterations, double mu, boolean robustnessDataG, boolean robustnessSmoothnessE, WeightMode weight, double alpha, boolean useCache) {
+        solve(lambda, iterations, mu, robustnessDataG, robustnessSmoothnessE, weight, alpha, useCache, false);
+    }
+
+    /**
+     * Method to start the generation of an HDR Image. Is called by the UI and updates the UI asynchron.
+     * <p/>
+     * If the response curve cache is used and the camera of the images is known, a cached response curve of the same
+     * camera and parameters is used and only the radiance map is calculated. Otherwise the calculated response curve
+     * is added to the cache.
+     *
+     * @param lambda                weight factor for the smoothness term
+     * @param iterations            number of iterations for the inner and outer iterations of the solver
+     * @param mu                    weight factor for the monotonie constraint
+     * @param robustnessDataG       true: subquadratic penalty functions are used in the calculation of the response curve
+     * @param robustnessSmoothnessE true: subquadratic penalty functions are used for the 2d smoothness term of the resulting HDR image
+     * @param weight                weightning mode which should be used to weight the greyvalues during the complete calculations
+     * @param alpha                 weight factor of the 2d smoothness term of the resulting irradiance map
+     * @param useCache              true: the response curve cache is used (@see ResponseCurveCache)
+     * @param stopOnConvergence     true: the iterations stop as soon as the energy and the solution do not change
+     *                              anymore (@see ConvergenceController), false: all iterations are calculated
+     */
+    public void solve(double lambda, final int iterations, double mu, boolean robustnessDataG, boolean robustnessSmoothnessE, WeightMode weight, double alpha, boolean useCache, boolean stopOnConvergence) {
 
         if (solver != null) {
             display.alert("Prozess bereits gestartet und kann nicht ein zweites Mal gestartet werden.");
         } else {
-            solver = new IterativeEnergySolver(images, lambda, iterations, mu, robustnessDataG, robustnessSmoothnessE, weight, alpha, this);
+            IterativeEnergySolver iterativeSolver = new IterativeEnergySolver(images, lambda, iterations, mu, robustnessDataG, robustnessSmoothnessE, weight, alpha, this);
+            if (stopOnConvergence)
+                iterativeSolver.setConvergenceController(new ConvergenceController(ENERGY_TOLERANCE, CHANGE_TOLERANCE));
+            iterativeSolver.setProgressThrottle(new ProgressThrottle(1, PROGRESS_INTERVAL));
+            energyTrace.clear();
+            progressPlot = null;
+            responseCurveKey = null;
+            if (useCache) {
+                if (cameraModel == null) {
+                    display.append("Antwortkurven-Cache: Kamera unbekannt (keine EXIF-Daten), g wird berechnet.");
+                } else {
+                    ResponseCurveCache.Key key = new ResponseCurveCache.Key(cameraModel, iso, lambda, mu, alpha,
+                            iterativeSolver.getWeightTable(), robustnessDataG, robustnessSmoothnessE);
+                    try {
+                        Vector g = getResponseCurveCache().get(key);
+                        if (g != null) {
+                            iterativeSolver.setFixedG(g);
+                        } else {
+                            responseCurveKey = key;
+                        }
+                        display.append("Antwortkurven-Cache: " + (g != null ? "Treffer" : "Fehlschlag") + " für " + key
+                                + " (Treffer: " + responseCurveCache.getHits() + ", Fehlschläge: " + responseCurveCache.getMisses() + ")");
+                    } catch (IOException e) {
+                        display.append("Antwortkurven-Cache konnte nicht gelesen werden: " + e.getMessage());
+                    }
+                }
+            }
+            solver = iterativeSolver;
             display.append(solver.toString());
             solver.execute();
         }
     }
 
+    /**
+     * Returns the response curve cache. It is stored in the home directory of the user.
+     *
+     * @return the cache of response curves
+     * @throws IOException if the cache could not be read
+     */
+    public ResponseCurveCache getResponseCurveCache() throws IOException {
+        if (responseCurveCache == null) {
+            File file = new File(new File(System.getProperty("user.home"), ".hdr-generator"), "response-curves.bin");
+            responseCurveCache = ResponseCurveCache.open(file, ResponseCurveCache.DEFAULT_CAPACITY);
+        }
+        return responseCurveCache;
+    }
+
 
     /**
      * Reads a list of images from a set if filenames and exposure times.
@@ -109,9 +207,15 @@ public class Controller implements HDRSolverUpdateListener {
     public void readImages(Map<String, Float> imgList, boolean saltAndPepperNoise, double gaussianNoise) {
         display.append("Reading files...");
         images = new ArrayList<Image>();
+        cameraModel = null;
+        iso = 0;
         for (Map.Entry<String, Float> e : imgList.entrySet()) {
             try {
                 Image image = new Image(e.getKey(), e.getValue());
+                if (images.isEmpty()) {
+                    cameraModel = extractCameraModel(new File(e.getKey()));
+                    iso = extractISO(new File(e.getKey()));
+                }
                 images.add(image);
             } catch (Exception x) {
                 display.alert("Datei '" + e.getKey() + "' konnte nicht gelesen werden und wurde übersprungen. (" + x.getMessage() + ")");
@@ -147,11 +251,28 @@ public class Controller implements HDRSolverUpdateListener {
         //Controller.getInstance().getDisplay().addPlot(new ScatterPlot(E), "E(" + getProgress() + "%)");
         display.setProgress(progress);
         if (hdrResult != null) {
-            ScatterPlot p = new ScatterPlot(hdrResult.getG());
-            p.setXDescription("Grauwert");
-            p.setYDescription("ln E(i)");
-            display.addPlot(p, "g(" + progress + "%)");
+            // the intermediate results update one plot instead of adding a tab each
+            if (progressPlot == null) {
+                progressPlot = new ScatterPlot(hdrResult.getG());
+                progressPlot.setXDescription("Grauwert");
+                progressPlot.setYDescription("ln E(i)");
+                display.addPlot(progressPlot, "g(" + progress + "%)");
+            } else {
+                progressPlot.setY(hdrResult.getG().toArray());
+                display.setPlotTitle(progressPlot, "g(" + progress + "%)");
+            }
             if (progress >= 100) {
+                storeResponseCurve(hdrResult.getG());
+                if (!energyTrace.isEmpty()) {
+                    double[] energy = new double[energyTrace.size()];
+                    for (int i = 0; i < energy.length; i++) {
+                        energy[i] = energyTrace.get(i);
+                    }
+                    ScatterPlot e = new ScatterPlot(energy);
+                    e.setXDescription("Iteration");
+                    e.setYDescription("Energie");
+                    display.addPlot(e, "Energie");
+                }
                 display.addPlot(new ToneMappingPlot(hdrResult, new LocalReinhardMapping(0.6, 0.05, 8.0, 0.18)), "LocalReinhardMapping");
                 display.addPlot(new ToneMappingPlot(hdrResult, new ReinhardMapping(0.72)), "Reinhard");
             }
@@ -159,6 +280,34 @@ public class Controller implements HDRSolverUpdateListener {
 
     }
 
+    @Override
+    public void energyUpdated(int iteration, double energy) {
+        energyTrace.add(energy);
+        display.append(String.format("  Energie nach Iteration %d: %.6e", iteration, energy));
+    }
+
+    @Override
+    public void log(String message) {
+        display.append(message);
+    }
+
+    /**
+     * adds the calculated response curve to the cache if it was requested from the cache before and not found.
+     *
+     * @param g the calculated response curve
+     */
+    private void storeResponseCurve(Vector g) {
+        if (responseCurveKey != null) {
+            try {
+                getResponseCurveCache().put(responseCurveKey, g);
+                display.append("Antwortkurve im Cache gespeichert: " + responseCurveKey);
+            } catch (IOException e) {
+                display.append("Antwortkurve konnte nicht im Cache gespeichert werden: " + e.getMessage());
+            }
+            responseCurveKey = null;
+        }
+    }
+
     /**
      * this method is going to be called if some errors occured in the solver. If available the last calculated result will be returned.
      *
@@ -179,15 +328,32 @@ public class Controller implements HDRSolverUpdateListener {
      *
      * @param f file name to read
      * @return Exposure time if detectable, otherwise null
+     * @see ImageMetadata#exposureTime
      */
     public Float extractExposureTime(File f) {
-        try {
-            Metadata metadata = ImageMetadataReader.readMetadata(f);
-            ExifSubIFDDirectory directory = metadata.getDirectory(ExifSubIFDDirectory.class);
-            return directory.getFloat(ExifSubIFDDirectory.TAG_EXPOSURE_TIME);
-        } catch (Exception e) {
-            return calculate(f.getName());
-        }
+        return ImageMetadata.exposureTime(f);
+    }
+
+    /**
+     * reads the camera model from the metadata of a picture.
+     *
+     * @param f file name to read
+     * @return camera model if available, otherwise null
+     * @see ImageMetadata#cameraModel
+     */
+    public String extractCameraModel(File f) {
+        return ImageMetadata.cameraModel(f);
+    }
+
+    /**
+     * reads the ISO setting from the metadata of a picture.
+     *
+     * @param f file name to read
+     * @return ISO setting if available, otherwise 0
+     * @see ImageMetadata#iso
+     */
+    public int extractISO(File f) {
+        return ImageMetadata.iso(f);
     }
 
     /**
@@ -195,25 +361,10 @@ public class Controller implements HDRSolverUpdateListener {
      *
      * @param s string to be parsed
      * @return Exposure time if detectable, otherwise null
+     * @see ImageMetadata#parseExposureTime
      */
     public Float calculate(String s) {
-        try {
-            Double v = Double.valueOf(s);
-            if (v != null && !v.isNaN())
-                return v.floatValue();
-
-        } catch (Exception e) {
-
-        }
-        try {
-
-            String filename = s.split("\\.")[0].replace(":", "/");
-            ScriptEngineManager mgr = new ScriptEngineManager();
-            ScriptEngine engine = mgr.getEngineByName("JavaScript");
-            return Float.parseFloat(engine.eval(String.valueOf(filename)).toString());
-        } catch (Exception e) {
-            return null;
-        }
+        return ImageMetadata.parseExposureTime(s);
     }
 
 
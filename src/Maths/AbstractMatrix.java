@@ -3,9 +3,8 @@ package Maths;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Abstract implementation of a Matrix.
@@ -16,6 +15,12 @@ import java.util.concurrent.Executors;
  */
 public abstract class AbstractMatrix {
 
+    /**
+     * number of doubles which are touched by one chunk of rows in a parallel matrix vector multiplication
+     * (256 KB, so a chunk stays in the cache of one core).
+     */
+    protected static final int CACHE_CHUNK_DOUBLES = 32 * 1024;
+
     /**
      * Sets a entry of the Matrix.
      *
@@ -76,30 +81,35 @@ public abstract class AbstractMatrix {
      * @throws java.lang.IllegalArgumentException if the Vector doesn't match the size of the matrix (x.length() != this.cols())
      */
     public Vector mult(final Vector x) {
+        return mult(x, ParallelLoop.getDefault());
+    }
+
+    /**
+     * Multiplies a matrix with a vector on the threads of the given loop.
+     *
+     * @param x    vector to multiply this matrix with
+     * @param loop the threads to use
+     * @return result of A * x
+     * @throws java.lang.IllegalArgumentException if the Vector doesn't match the size of the matrix (x.length() != this.cols())
+     */
+    public Vector mult(final Vector x, ParallelLoop loop) {
         if (x.length() != cols())
             throw new IllegalArgumentException("Matrix * vector: vector must be of size " + cols() + " but was " + x.length());
-        final Vector r = new Vector(this.rows());
-        ExecutorService executor = Executors.newFixedThreadPool(8);
-        for (int i = 0; i < rows(); i++) {
-            final int finalI = i;
-            Runnable worker = new Runnable() {
-                @Override
-                public void run() {
+        final double[] r = new double[this.rows()];
+        loop.run(rows(), Math.max(1, CACHE_CHUNK_DOUBLES / cols()), new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
                     double sum = 0;
                     for (int j = 0; j < cols(); j++) {
-                        if (x.get(j) != 0 && get(finalI, j) != 0)
-                            sum += x.get(j) * get(finalI, j);
+                        if (x.get(j) != 0 && get(i, j) != 0)
+                            sum += x.get(j) * get(i, j);
                     }
-                    r.set(finalI, sum);
+                    r[i] = sum;
                 }
-            };
-            executor.execute(worker);
-        }
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-        }
-
-        return r;
+            }
+        });
+        return new Vector(r);
     }
 
     /**
@@ -213,23 +223,17 @@ public abstract class AbstractMatrix {
             m[i] = get(i, i) - k[i] * p[i - 2] - l[i] * r[i - 1];
         }
 
-        // build L
-        for (int i = 0; i < n; i++) {
-            L.set(i, i, 1);
-            if (i >= 1)
-                L.set(i, i - 1, l[i]);
-            if (i >= 2)
-                L.set(i, i - 2, k[i]);
-        }
-
-        //build R
-        for (int i = 0; i < n; i++) {
-            R.set(i, i, m[i]);
-            if (i < n - 1)
-                R.set(i, i + 1, r[i]);
-            if (i < n - 2)
-                R.set(i, i + 2, p[i]);
-        }
+        // build L: the element (i, i - d) is stored at getBand(-d) + i - d
+        double[] lElements = L.getElements();
+        Arrays.fill(lElements, L.getBand(0), L.getBand(0) + n, 1);
+        System.arraycopy(l, 1, lElements, L.getBand(-1), n - 1);
+        System.arraycopy(k, 2, lElements, L.getBand(-2), n - 2);
+
+        //build R: the element (i, i + d) is stored at getBand(d) + i
+        double[] rElements = R.getElements();
+        System.arraycopy(m, 0, rElements, R.getBand(0), n);
+        System.arraycopy(r, 0, rElements, R.getBand(1), n - 1);
+        System.arraycopy(p, 0, rElements, R.getBand(2), n - 2);
 
         return new AbstractMatrix[]{L, R};
     }
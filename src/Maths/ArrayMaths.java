@@ -76,4 +76,18 @@ public class ArrayMaths {
         }
         return max;
     }
+
+    /**
+     * Returns the absolute biggest value of an array.
+     *
+     * @param a array
+     * @return absolute biggest value (0 for an empty array)
+     */
+    public static double absMax(double[] a) {
+        double max = 0;
+        for (int i = 0; i < a.length; i++) {
+            max = Math.max(max, Math.abs(a[i]));
+        }
+        return max;
+    }
 }
@@ -7,20 +7,24 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * This implements a band Matrix with diagonales from top left to bottom right.
  * It can be used to save memory.
+ * <p/>
+ * The diagonales are stored one after another in one array (sorted by their band index). The element (row, col)
+ * of the diagonale d = col - row is stored at getBand(d) + min(row, col), so algorithms can walk along the
+ * diagonales with plain array arithmetic on @see #getElements.
  *
  * @author sebastianzillessen
  */
-public class BandMatrix extends AbstractMatrix {
+public class BandMatrix extends AbstractMatrix implements LinearOperator {
 
 
     protected double[] elements;
     protected int[] bandIndexes;
+    private int[] bandOffsets;
+    private int[] bandLookup;
     private int size;
 
     /**
@@ -55,7 +59,9 @@ public class BandMatrix extends AbstractMatrix {
 
         Arrays.sort(bandIndexes);
         int elementSize = 0;
+        this.bandOffsets = new int[bandIndexes.length];
         for (int i = 0; i < bandIndexes.length; i++) {
+            bandOffsets[i] = elementSize;
             elementSize += (size - Math.abs(bandIndexes[i]));
         }
         this.elements = new double[elementSize];
@@ -63,6 +69,16 @@ public class BandMatrix extends AbstractMatrix {
             elements[i] = 0;
         }
         this.bandIndexes = bandIndexes;
+        // direct lookup of the offset for each diagonale between the lowest and highest band
+        if (bandIndexes.length > 0) {
+            bandLookup = new int[bandIndexes[bandIndexes.length - 1] - bandIndexes[0] + 1];
+            Arrays.fill(bandLookup, -1);
+            for (int i = 0; i < bandIndexes.length; i++) {
+                bandLookup[bandIndexes[i] - bandIndexes[0]] = bandOffsets[i];
+            }
+        } else {
+            bandLookup = new int[0];
+        }
     }
 
     /**
@@ -183,6 +199,68 @@ public class BandMatrix extends AbstractMatrix {
         return m;
     }
 
+    /**
+     * Multiplies this Band Matrix with a real number in place.
+     *
+     * @param a value to multiply this matrix
+     */
+    public void scale(double a) {
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] *= a;
+        }
+    }
+
+    /**
+     * Adds a * m to this Band Matrix in place. The bands of m have to be bands of this matrix as well.
+     *
+     * @param m other matrix to add on this matrix
+     * @param a factor of m
+     * @throws java.lang.IllegalArgumentException if the matrices are not of the same size or m has a band which is
+     *                                            not stored in this matrix
+     */
+    public void addScaled(BandMatrix m, double a) {
+        if (m.size != size) {
+            throw new IllegalArgumentException("The both matrices to add are not of the same size");
+        }
+        for (int i = 0; i < m.bandIndexes.length; i++) {
+            int offset = getBand(m.bandIndexes[i]);
+            if (offset == -1)
+                throw new IllegalArgumentException("The band " + m.bandIndexes[i] + " is not stored in this matrix");
+            int length = size - Math.abs(m.bandIndexes[i]);
+            for (int k = 0; k < length; k++) {
+                elements[offset + k] += a * m.elements[m.bandOffsets[i] + k];
+            }
+        }
+    }
+
+    /**
+     * Adds a value to an entry of the center diagonale in place.
+     *
+     * @param row row (and col) of the matrix element
+     * @param a   value to add
+     */
+    public void addToDiagonal(int row, double a) {
+        if (Double.isInfinite(a) || Double.isNaN(a)) {
+            throw new ArithmeticException("Value to add in Band Matrix is " + a);
+        }
+        int diagonale = getBand(0);
+        if (diagonale == -1)
+            throw new IndexOutOfBoundsException("This Band Matrix has no center diagonale");
+        elements[diagonale + row] += a;
+    }
+
+    /**
+     * Copies the entries of this Band Matrix into another one with the same size and the same bands.
+     *
+     * @param target matrix to copy the entries to
+     * @throws java.lang.IllegalArgumentException if the matrices do not have the same size and bands
+     */
+    public void copyTo(BandMatrix target) {
+        if (target.size != size || !Arrays.equals(target.bandIndexes, bandIndexes))
+            throw new IllegalArgumentException("The both matrices do not have the same size and bands");
+        System.arraycopy(elements, 0, target.elements, 0, elements.length);
+    }
+
 
     /**
      * sets an entry in the matrix.
@@ -286,12 +364,10 @@ public class BandMatrix extends AbstractMatrix {
         for (int i = 0; i < bandIndexes.length; i++)
             newBandIndexes[i] = -1 * bandIndexes[i];
         BandMatrix res = new BandMatrix(size, newBandIndexes);
-        for (int row = 0; row < size; row++) {
-            for (int k = 0; k < newBandIndexes.length; k++) {
-                int col = row + newBandIndexes[k];
-                if (col >= 0 && col < size)
-                    res.set(row, col, get(col, row));
-            }
+        // the diagonale d becomes the diagonale -d, the order of the elements on it stays the same
+        for (int i = 0; i < bandIndexes.length; i++) {
+            int d = bandIndexes[i];
+            System.arraycopy(elements, bandOffsets[i], res.elements, res.getBand(-d), size - Math.abs(d));
         }
         return res;
     }
@@ -337,39 +413,61 @@ public class BandMatrix extends AbstractMatrix {
 
 
     /**
-     * Multiplies a matrix with a vector.
+     * Multiplies a matrix with a vector on the threads of the given loop.
      *
-     * @param x vector to multiply this matrix with
+     * @param x    vector to multiply this matrix with
+     * @param loop the threads to use
      * @return result of A * x
      * @throws java.lang.IllegalArgumentException if the Vector doesn't match the size of the matrix (x.length() != this.cols())
      */
     @Override
-    public Vector mult(final Vector x) {
+    public Vector mult(final Vector x, ParallelLoop loop) {
         if (x.length() != this.cols())
             throw new IllegalArgumentException("Matrix * vector: vector must be of size " + cols() + " but was " + x.length());
-        final Vector r = new Vector(this.rows());
-
-        ExecutorService executor = Executors.newFixedThreadPool(7);
-        for (int i = 0; i < rows(); i++) {
-            final int finalI = i;
-            Runnable worker = new Runnable() {
-                @Override
-                public void run() {
+        double[] r = new double[this.rows()];
+        mult(x.v, r, loop);
+        return new Vector(r);
+    }
+
+    /**
+     * Multiplies this matrix with the vector x (given as array) and stores the result in r. No memory is allocated.
+     *
+     * @param x vector to multiply this matrix with
+     * @param r array for the result of A * x (must not be x)
+     * @throws java.lang.IllegalArgumentException if the arrays do not match the size of the matrix
+     */
+    public void mult(final double[] x, final double[] r) {
+        mult(x, r, ParallelLoop.getDefault());
+    }
+
+    /**
+     * Multiplies this matrix with the vector x (given as array) on the threads of the given loop and stores the result
+     * in r. No memory is allocated.
+     *
+     * @param x    vector to multiply this matrix with
+     * @param r    array for the result of A * x (must not be x)
+     * @param loop the threads to use
+     * @throws java.lang.IllegalArgumentException if the arrays do not match the size of the matrix
+     */
+    public void mult(final double[] x, final double[] r, ParallelLoop loop) {
+        if (x.length != size || r.length != size)
+            throw new IllegalArgumentException("Matrix * vector: vector must be of size " + cols() + " but was " + x.length);
+        // one row touches one element of each band and of x
+        int rowsPerChunk = Math.max(1, CACHE_CHUNK_DOUBLES / (2 * bandIndexes.length + 1));
+        loop.run(size, rowsPerChunk, new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
                     double sum = 0;
                     for (int j = 0; j < bandIndexes.length; j++) {
-                        int k = finalI + bandIndexes[j];
-                        if (k >= 0 && k < cols() && x.get(finalI) != 0 && get(finalI, k) != 0)
-                            sum += get(finalI, k);
+                        int k = i + bandIndexes[j];
+                        if (k >= 0 && k < size)
+                            sum += elements[bandOffsets[j] + Math.min(i, k)] * x[k];
                     }
-                    r.set(finalI, sum * x.get(finalI));
+                    r[i] = sum;
                 }
-            };
-            executor.execute(worker);
-        }
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-        }
-        return r;
+            }
+        });
     }
 
     /**
@@ -475,6 +573,65 @@ public class BandMatrix extends AbstractMatrix {
         return true;
     }
 
+    /**
+     * returns the offset of a diagonale in the backing array (@see #getElements). The element (row, col) with
+     * col - row = d is stored at getBand(d) + min(row, col).
+     *
+     * @param d diagonale (0 is the center, -n is the n-th diagonale below, +n the n-th diagonale above the center)
+     * @return offset of the diagonale in the backing array or -1 if this diagonale is not stored in this matrix
+     */
+    public int getBand(int d) {
+        if (bandLookup.length == 0 || d < bandIndexes[0] || d > bandIndexes[bandIndexes.length - 1])
+            return -1;
+        return bandLookup[d - bandIndexes[0]];
+    }
+
+    /**
+     * returns the diagonales which are stored in this matrix (sorted ascending). The array must not be modified.
+     *
+     * @return band indexes of this matrix
+     */
+    public int[] getBandIndexes() {
+        return bandIndexes;
+    }
+
+    /**
+     * returns the backing array of this matrix. The diagonales are stored one after another, use @see #getBand
+     * to find the offset of a diagonale. Changes on the array are changes of the matrix.
+     *
+     * @return the elements of all diagonales
+     */
+    public double[] getElements() {
+        return elements;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void apply(double[] x, double[] r) {
+        mult(x, r);
+    }
+
+    @Override
+    public double diagonal(int row) {
+        int diagonale = getBand(0);
+        return diagonale == -1 ? 0 : elements[diagonale + row];
+    }
+
+    @Override
+    public double offDiagonalProduct(int row, double[] x) {
+        double sum = 0;
+        for (int i = 0; i < bandIndexes.length; i++) {
+            int col = row + bandIndexes[i];
+            if (col >= 0 && col < size && col != row)
+                sum += elements[bandOffsets[i] + Math.min(row, col)] * x[col];
+        }
+        return sum;
+    }
+
     // --------------- --------------- Private Methods  --------------- ---------------
 
     /**
@@ -485,20 +642,10 @@ public class BandMatrix extends AbstractMatrix {
      * @return index in the band index array (1D) or -1 if not availble
      */
     private int getIndex(int row, int col) {
-        int diffToCenterInRow = col - row;
-        int pos = Arrays.binarySearch(bandIndexes, diffToCenterInRow);
-        if (pos < 0)
+        int offset = getBand(col - row);
+        if (offset == -1)
             return -1;
-        else {
-            int index = row;
-            for (int i = 0; i < pos; i++) {
-                index += (size - Math.abs(bandIndexes[i]));
-            }
-            if (row > col)
-                index += bandIndexes[pos];
-
-            return index;
-        }
+        return offset + Math.min(row, col);
     }
 
     /**
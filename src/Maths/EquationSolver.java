@@ -1,7 +1,5 @@
 package Maths;
 
-import java.util.Arrays;
-
 /**
  * This helper class provides possibilities to solve linear equotations with different algorithms.
  *
@@ -13,6 +11,8 @@ public class EquationSolver {
     private static double ACCEPTED_DIFFERENCE_SOR = 0.001;
     private static double ACCEPTED_PERCENTAGE_RESIDUUM_SOR = 0.02;
     private static double OMEGA_SOR = 1.2;
+    private static int MAX_ITERATIONS_CG = 1000;
+    private static double ACCEPTED_RESIDUUM_CG = 0.000001;
 
 
     /**
@@ -25,10 +25,57 @@ public class EquationSolver {
      * @return
      */
     public static Vector solve(AbstractMatrix A, Vector b, EquationSolverAlgorithm algorithm) throws EquationSolverException {
+        return solve(A, b, algorithm, null);
+    }
+
+    /**
+     * Method to solve a system of linear equotations of the structure A * x = b.
+     * The iterative algorithms store the number of iterations and the reached residual in the report.
+     *
+     * @param A         The matrix A of the system of linear equotations.
+     * @param b         The right side of the system of linear equotations
+     * @param algorithm The algorithm which should be used.
+     * @param report    report to store the statistics of the iterative algorithms in (may be null)
+     * @return
+     */
+    public static Vector solve(AbstractMatrix A, Vector b, EquationSolverAlgorithm algorithm, EquationSolverReport report) throws EquationSolverException {
+        return solve(A, b, algorithm, ParallelLoop.getDefault(), report);
+    }
+
+    /**
+     * Method to solve a system of linear equotations of the structure A * x = b.
+     * The parallel parts of the algorithms (the products with the matrix and the red-black SOR) run on the threads of
+     * the given loop, e.g. the one of a solver which shares the processors with other solvers.
+     *
+     * @param A         The matrix A of the system of linear equotations.
+     * @param b         The right side of the system of linear equotations
+     * @param algorithm The algorithm which should be used.
+     * @param loop      the threads to use
+     * @param report    report to store the statistics of the iterative algorithms in (may be null)
+     * @return
+     */
+    public static Vector solve(AbstractMatrix A, Vector b, EquationSolverAlgorithm algorithm, ParallelLoop loop, EquationSolverReport report) throws EquationSolverException {
         if (algorithm == EquationSolverAlgorithm.LU) {
             return solveWithLU(A, b);
         } else if (algorithm == EquationSolverAlgorithm.SOR) {
-            return solveWithSOR(A, b);
+            return solveWithSOR(A, b, loop, report);
+        } else if (algorithm == EquationSolverAlgorithm.SOR_RED_BLACK) {
+            return solveWithRedBlackSOR(A, b, loop, report);
+        } else if (algorithm == EquationSolverAlgorithm.CG_JACOBI || algorithm == EquationSolverAlgorithm.CG_INCOMPLETE_CHOLESKY) {
+            return solveWithCG(A, b, algorithm, loop, report);
+        } else if (algorithm == EquationSolverAlgorithm.MULTIGRID) {
+            if (!(A instanceof BandMatrix))
+                throw new EquationSolverException("Matrix A is no Band-Matrix. Multigrid-Solver should only be used on them.", A, b);
+            // the grid width is the distance of the outermost diagonale (the neighbours above and below)
+            int[] bands = ((BandMatrix) A).getBandIndexes();
+            int cols = Math.max(1, bands[bands.length - 1]);
+            if (A.rows() % cols != 0)
+                throw new EquationSolverException("Matrix A does not describe a grid with " + cols + " columns.", A, b);
+            return solveWithMultigrid((BandMatrix) A, b, cols, A.rows() / cols, loop, report);
+        } else if (algorithm == EquationSolverAlgorithm.PENTA) {
+            if (!A.isQuadratic())
+                throw new EquationSolverException("Matrix A is not quadratic.", A, b);
+            return new PentadiagonalSolver(A.rows()).solve(A, b);
         } else {
             throw new IllegalArgumentException("This solving strategy is not supported");
         }
@@ -69,7 +116,7 @@ public class EquationSolver {
      * @throws EquationSolverException if the matrix is not symetric, quadratic or positiv semi definite or
      *                                 if the size of the vector and the matrix do not match.
      */
-    private static Vector solveWithSOR(AbstractMatrix a, Vector b) throws EquationSolverException {
+    private static Vector solveWithSOR(AbstractMatrix a, Vector b, ParallelLoop loop, EquationSolverReport report) throws EquationSolverException {
         if (!a.isQuadratic())
             throw new EquationSolverException("Matrix A is not quadratic.", a, b);
         if (b.length() != a.rows())
@@ -81,9 +128,183 @@ public class EquationSolver {
 
         if (!(a instanceof BandMatrix))
             throw new EquationSolverException("Matrix A is no Band-Matrix. SOR-Solver should only be used on them.", a, b);
-        return solveSORBand((BandMatrix) a, b);
+        return solveSORBand((BandMatrix) a, b, loop, report);
     }
 
+    /**
+     * Solves A * x = b where A is only given as operator, e.g. a matrix whose elements are calculated on the fly.
+     * SOR and CG_JACOBI work on any operator, the other algorithms need a matrix. As the elements are not stored,
+     * the operator is not checked for symmetry and definiteness.
+     *
+     * @param a         the operator A
+     * @param b         right side
+     * @param algorithm SOR or CG_JACOBI (the others are only supported if a is an AbstractMatrix)
+     * @param report    report for the statistics (may be null)
+     * @return Result vector of a * x = b
+     * @throws EquationSolverException if the size of the vector and the operator do not match or the operator has
+     *                                 a non positive diagonale (CG_JACOBI).
+     */
+    public static Vector solveMatrixFree(LinearOperator a, Vector b, EquationSolverAlgorithm algorithm, EquationSolverReport report) throws EquationSolverException {
+        return solveMatrixFree(a, b, algorithm, ParallelLoop.getDefault(), report);
+    }
+
+    /**
+     * Solves A * x = b where A is only given as operator (@see #solveMatrixFree(LinearOperator, Vector,
+     * EquationSolverAlgorithm, EquationSolverReport)). The products with a band matrix run on the threads of the given
+     * loop; an other operator uses its own threads.
+     *
+     * @param a         the operator A
+     * @param b         right side
+     * @param algorithm SOR or CG_JACOBI (the others are only supported if a is an AbstractMatrix)
+     * @param loop      the threads to use
+     * @param report    report for the statistics (may be null)
+     * @return Result vector of a * x = b
+     * @throws EquationSolverException if the size of the vector and the operator do not match or the operator has
+     *                                 a non positive diagonale (CG_JACOBI).
+     */
+    public static Vector solveMatrixFree(LinearOperator a, Vector b, EquationSolverAlgorithm algorithm, ParallelLoop loop, EquationSolverReport report) throws EquationSolverException {
+        if (a instanceof AbstractMatrix && algorithm != EquationSolverAlgorithm.SOR && algorithm != EquationSolverAlgorithm.CG_JACOBI)
+            return solve((AbstractMatrix) a, b, algorithm, loop, report);
+        if (b.length() != a.size())
+            throw new EquationSolverException("Size of Vextor and Operator does not match.");
+        if (algorithm == EquationSolverAlgorithm.SOR) {
+            return solveSORBand(a, b, loop, report);
+        } else if (algorithm == EquationSolverAlgorithm.CG_JACOBI) {
+            double[] diagonale = new double[a.size()];
+            for (int i = 0; i < diagonale.length; i++) {
+                diagonale[i] = a.diagonal(i);
+                if (diagonale[i] <= 0)
+                    throw new EquationSolverException("Operator A has a non positive diagonale in row " + i + ".");
+            }
+            return solveCGBand(a, b, null, diagonale, algorithm, loop, report);
+        } else {
+            throw new IllegalArgumentException("This solving strategy is not supported without a matrix");
+        }
+    }
+
+    /**
+     * Solves an equation with the SOR algorithm in multicolor ordering on several threads.
+     * <p/>
+     * The rows are colored by their index modulo k where k is the smallest number (at least 2) which divides none of
+     * the distances of the diagonales. Rows of the same color do not depend on each other, so each color is updated
+     * in parallel. For the five point stencil of an odd picture width this is the red-black ordering. The result
+     * does not depend on the number of threads. Omega is estimated from the matrix (@see #estimateOmega), the
+     * break conditions are the same as for the sequential SOR.
+     *
+     * @param a      Matrix
+     * @param b      Vector
+     * @param loop   the threads to use
+     * @param report report for the statistics (may be null)
+     * @return Result vector of a * x = b
+     * @throws EquationSolverException if the matrix is not symetric, quadratic or positiv semi definite or
+     *                                 if the size of the vector and the matrix do not match.
+     */
+    public static Vector solveWithRedBlackSOR(AbstractMatrix a, Vector b, ParallelLoop loop, EquationSolverReport report) throws EquationSolverException {
+        if (!a.isQuadratic())
+            throw new EquationSolverException("Matrix A is not quadratic.", a, b);
+        if (b.length() != a.rows())
+            throw new EquationSolverException("Size of Vextor and Matrix does not match.", a, b);
+        if (!a.isSymmetric())
+            throw new EquationSolverException("Matrix A is not symmetric.", a, b);
+        if (!a.isPositiveSemiDefinit())
+            throw new EquationSolverException("Matrix A is not positive-semi-definite.", a, b);
+
+        if (!(a instanceof BandMatrix))
+            throw new EquationSolverException("Matrix A is no Band-Matrix. SOR-Solver should only be used on them.", a, b);
+        return solveRedBlackSORBand((BandMatrix) a, b, loop, report);
+    }
+
+    /**
+     * Solves an equation with the preconditioned conjugate gradient method.
+     * The matrix needs to be a symmetric and positive definite band matrix.
+     *
+     * @param a         Matrix
+     * @param b         Vector
+     * @param algorithm CG_JACOBI or CG_INCOMPLETE_CHOLESKY to select the preconditioner
+     * @param loop      the threads to use for the products with the matrix
+     * @param report    report for the statistics (may be null)
+     * @return Result vector of a * x = b
+     * @throws EquationSolverException if the matrix is not symetric, quadratic or positiv semi definite, if the
+     *                                 size of the vector and the matrix do not match or if the preconditioner failed.
+     */
+    private static Vector solveWithCG(AbstractMatrix a, Vector b, EquationSolverAlgorithm algorithm, ParallelLoop loop, EquationSolverReport report) throws EquationSolverException {
+        if (!a.isQuadratic())
+            throw new EquationSolverException("Matrix A is not quadratic.", a, b);
+        if (b.length() != a.rows())
+            throw new EquationSolverException("Size of Vextor and Matrix does not match.", a, b);
+        if (!a.isSymmetric())
+            throw new EquationSolverException("Matrix A is not symmetric.", a, b);
+        if (!a.isPositiveSemiDefinit())
+            throw new EquationSolverException("Matrix A is not positive-semi-definite.", a, b);
+        if (!(a instanceof BandMatrix))
+            throw new EquationSolverException("Matrix A is no Band-Matrix. CG-Solver should only be used on them.", a, b);
+        BandMatrix band = (BandMatrix) a;
+        IncompleteCholesky ic = null;
+        double[] diagonale = null;
+        if (algorithm == EquationSolverAlgorithm.CG_INCOMPLETE_CHOLESKY) {
+            ic = new IncompleteCholesky(band);
+        } else {
+            diagonale = new double[band.rows()];
+            for (int i = 0; i < diagonale.length; i++) {
+                diagonale[i] = band.get(i, i);
+                if (diagonale[i] <= 0)
+                    throw new EquationSolverException("Matrix A has a non positive diagonale in row " + i + ".", a, b);
+            }
+        }
+        return solveCGBand(band, b, ic, diagonale, algorithm, loop, report);
+    }
+
+    /**
+     * Solves an equation on a cols x rows grid with the geometric multigrid method (@see MultigridSolver).
+     * The unknown of the grid point (x, y) has the index x + y * cols. The matrix needs to be a symmetric and
+     * positive definite band matrix.
+     *
+     * @param a      Matrix of the size (cols * rows) x (cols * rows)
+     * @param b      Vector
+     * @param cols   number of columns of the grid (width of the picture)
+     * @param rows   number of rows of the grid (height of the picture)
+     * @param report report for the statistics (may be null)
+     * @return Result vector of a * x = b
+     * @throws EquationSolverException if the matrix is not symetric, quadratic or positiv semi definite, if it has
+     *                                 a non positive diagonale or if the sizes of the vector, the matrix and the grid
+     *                                 do not match.
+     */
+    public static Vector solveWithMultigrid(BandMatrix a, Vector b, int cols, int rows, EquationSolverReport report) throws EquationSolverException {
+        return solveWithMultigrid(a, b, cols, rows, ParallelLoop.getDefault(), report);
+    }
+
+    /**
+     * Solves an equation on a cols x rows grid with the geometric multigrid method (@see MultigridSolver). The
+     * products with the matrices run on the threads of the given loop.
+     *
+     * @param a      Matrix of the size (cols * rows) x (cols * rows)
+     * @param b      Vector
+     * @param cols   number of columns of the grid (width of the picture)
+     * @param rows   number of rows of the grid (height of the picture)
+     * @param loop   the threads to use
+     * @param report report for the statistics (may be null)
+     * @return Result vector of a * x = b
+     * @throws EquationSolverException if the matrix is not symetric, quadratic or positiv semi definite, if it has
+     *                                 a non positive diagonale or if the sizes of the vector, the matrix and the grid
+     *                                 do not match.
+     */
+    public static Vector solveWithMultigrid(BandMatrix a, Vector b, int cols, int rows, ParallelLoop loop, EquationSolverReport report) throws EquationSolverException {
+        if (!a.isQuadratic())
+            throw new EquationSolverException("Matrix A is not quadratic.", a, b);
+        if (b.length() != a.rows())
+            throw new EquationSolverException("Size of Vextor and Matrix does not match.", a, b);
+        if (a.rows() != cols * rows)
+            throw new EquationSolverException("Size of Matrix and grid " + cols + "x" + rows + " does not match.", a, b);
+        if (!a.isSymmetric())
+            throw new EquationSolverException("Matrix A is not symmetric.", a, b);
+        if (!a.isPositiveSemiDefinit())
+            throw new EquationSolverException("Matrix A is not positive-semi-definite.", a, b);
+        for (int i = 0; i < a.rows(); i++) {
+            if (a.get(i, i) <= 0)
+                throw new EquationSolverException("Matrix A has a non positive diagonale in row " + i + ".", a, b);
+        }
+        return new MultigridSolver(a, cols, rows, loop).solve(b, report);
+    }
 
     /**
      * Forward Elimination (only used in LU decomposition with pentadiagonale matrizes)
@@ -127,37 +348,201 @@ public class EquationSolver {
 
 
     /**
-     * solves an system of equations if it is a band matrix efficient with SOR
-     * @param a Matrix (band)
+     * solves an system of equations with the preconditioned conjugate gradient method. Either ic or diagonale
+     * has to be set as preconditioner.
+     *
+     * @param a         Matrix (band) or operator, symmetric positive definite
+     * @param b         Vector (right side)
+     * @param ic        incomplete cholesky preconditioner (or null)
+     * @param diagonale diagonale of a for the Jacobi preconditioner (or null)
+     * @param algorithm used algorithm (for the report)
+     * @param loop      the threads to use for the products with a band matrix
+     * @param report    report for the statistics (may be null)
+     * @return x so that A * x = b
+     */
+    private static Vector solveCGBand(LinearOperator a, Vector b, IncompleteCholesky ic, double[] diagonale, EquationSolverAlgorithm algorithm, ParallelLoop loop, EquationSolverReport report) {
+        final int n = a.size();
+        double[] x = new Vector(n, 1).toArray();
+        double[] r = new double[n];
+        double[] z = new double[n];
+        double[] p = new double[n];
+        double[] q = new double[n];
+
+        // r = b - A * x
+        apply(a, x, q, loop);
+        for (int i = 0; i < n; i++) {
+            r[i] = b.get(i) - q[i];
+        }
+        double bNorm = b.absMax();
+        if (bNorm == 0)
+            bNorm = 1;
+        precondition(r, z, ic, diagonale);
+        System.arraycopy(z, 0, p, 0, n);
+        double rz = dot(r, z);
+        double res = ArrayMaths.absMax(r) / bNorm;
+
+        int iterations = 0;
+        while (res > ACCEPTED_RESIDUUM_CG && iterations < MAX_ITERATIONS_CG) {
+            apply(a, p, q, loop);
+            double pq = dot(p, q);
+            if (pq <= 0)
+                // the matrix is not positive definite in the direction p, no further progress possible
+                break;
+            double alpha = rz / pq;
+            for (int i = 0; i < n; i++) {
+                x[i] += alpha * p[i];
+                r[i] -= alpha * q[i];
+            }
+            iterations++;
+            res = ArrayMaths.absMax(r) / bNorm;
+
+            precondition(r, z, ic, diagonale);
+            double rzNew = dot(r, z);
+            double beta = rzNew / rz;
+            rz = rzNew;
+            for (int i = 0; i < n; i++) {
+                p[i] = z[i] + beta * p[i];
+            }
+        }
+        if (report != null)
+            report.update(algorithm, iterations, res);
+        return new Vector(x);
+    }
+
+    /**
+     * applies the preconditioner of the CG method: z = M^-1 * r
+     */
+    private static void precondition(double[] r, double[] z, IncompleteCholesky ic, double[] diagonale) {
+        if (ic != null) {
+            ic.apply(r, z);
+        } else {
+            for (int i = 0; i < r.length; i++) {
+                z[i] = r[i] / diagonale[i];
+            }
+        }
+    }
+
+    /**
+     * calculates r = A * x, the product with a band matrix runs on the threads of the given loop
+     */
+    private static void apply(LinearOperator a, double[] x, double[] r, ParallelLoop loop) {
+        if (a instanceof BandMatrix)
+            ((BandMatrix) a).mult(x, r, loop);
+        else
+            a.apply(x, r);
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double s = 0;
+        for (int i = 0; i < a.length; i++) {
+            s += a[i] * b[i];
+        }
+        return s;
+    }
+
+    /**
+     * solves an system of equations if it is a band matrix (or an operator) efficient with SOR
+     * @param a Matrix (band) or operator
      * @param b Vector (right side)
+     * @param loop the threads to use for the residual of a band matrix
+     * @param report report for the statistics (may be null)
      * @return x so that A * x = b
      */
-    private static Vector solveSORBand(BandMatrix a, Vector b) {
+    private static Vector solveSORBand(LinearOperator a, Vector b, ParallelLoop loop, EquationSolverReport report) {
         double vec[] = b.toArray();
-        double x[] = new Vector(a.rows(), 1).toArray();
+        double x[] = new Vector(a.size(), 1).toArray();
+        final int n = a.size();
+        double q[] = new double[n];
 
         double first_res = -1;
+        double last_res = Double.NaN;
         double old_x[] = new double[x.length];
-        for (int iterations = 0; iterations <= MAX_ITERATIONS_SOR; iterations++) {
-            for (int row = 0; row < a.rows(); row++) {
-                double phi = 0;
-                for (int i = 0; i < a.bandIndexes.length; i++) {
-                    int col = row + a.bandIndexes[i];
-                    if (col >= 0 && col < a.cols() && col != row) {
-                        phi += a.get(row, col) * x[col];
-                    }
-                }
-                x[row] = x[row] + OMEGA_SOR * ((vec[row] - phi) / a.get(row, row) - x[row]);
+        int iterations;
+        for (iterations = 0; iterations <= MAX_ITERATIONS_SOR; iterations++) {
+            for (int row = 0; row < n; row++) {
+                double phi = a.offDiagonalProduct(row, x);
+                double diag = a.diagonal(row);
+                x[row] = x[row] + OMEGA_SOR * ((vec[row] - phi) / diag - x[row]);
             }
 
             if (iterations % 10 == 0) {
                 // Are the break conditions met?
                 // http://www.home.hs-karlsruhe.de/~weth0002/buecher/mathe/downloads/kap21.pdf, S 143
                 try {
-                    double max_abs_res = a.mult(x).subtract(b).absMax();
+                    apply(a, x, q, loop);
+                    double max_abs_res = 0;
+                    for (int i = 0; i < n; i++) {
+                        max_abs_res = Math.max(max_abs_res, Math.abs(q[i] - vec[i]));
+                    }
+                    if (first_res == -1)
+                        first_res = max_abs_res;
+                    max_abs_res /= first_res;
+                    last_res = max_abs_res;
+                    double max_diff = ArrayMaths.diffMax(x, old_x);
+                    if (max_abs_res < ACCEPTED_PERCENTAGE_RESIDUUM_SOR && max_diff < ACCEPTED_DIFFERENCE_SOR) {
+                        break;
+                    }
+                } catch (ArithmeticException e) {
+                }
+            }
+            // the difference is only checked every 10 iterations against the iteration before
+            if ((iterations + 1) % 10 == 0)
+                System.arraycopy(x, 0, old_x, 0, x.length);
+        }
+        if (report != null)
+            report.update(EquationSolverAlgorithm.SOR, Math.min(iterations + 1, MAX_ITERATIONS_SOR + 1), last_res);
+        return new Vector(x);
+    }
+
+
+    private static Vector solveRedBlackSORBand(final BandMatrix a, Vector b, ParallelLoop loop, EquationSolverReport report) {
+        final double vec[] = b.toArray();
+        final double x[] = new Vector(a.rows(), 1).toArray();
+
+        final double[] elements = a.getElements();
+        final int[] bands = a.getBandIndexes();
+        final int[] offsets = new int[bands.length];
+        for (int i = 0; i < bands.length; i++) {
+            offsets[i] = a.getBand(bands[i]);
+        }
+        final int diagonale = a.getBand(0);
+        final int n = a.rows();
+        final int colors = colorCount(bands);
+        final double omega = estimateOmega(a);
+
+        double first_res = -1;
+        double last_res = Double.NaN;
+        double old_x[] = new double[x.length];
+        int iterations;
+        for (iterations = 0; iterations <= MAX_ITERATIONS_SOR; iterations++) {
+            for (int c = 0; c < colors; c++) {
+                final int color = c;
+                loop.run(n, new RangeTask() {
+                    public void run(int from, int to) {
+                        // first row of this color in the range
+                        int start = from + ((color - from % colors) + colors) % colors;
+                        for (int row = start; row < to; row += colors) {
+                            double phi = 0;
+                            for (int i = 0; i < bands.length; i++) {
+                                int col = row + bands[i];
+                                if (col >= 0 && col < n && col != row) {
+                                    phi += elements[offsets[i] + Math.min(row, col)] * x[col];
+                                }
+                            }
+                            double diag = diagonale == -1 ? 0 : elements[diagonale + row];
+                            x[row] = x[row] + omega * ((vec[row] - phi) / diag - x[row]);
+                        }
+                    }
+                });
+            }
+
+            if (iterations % 10 == 0) {
+                try {
+                    double max_abs_res = a.mult(new Vector(x), loop).subtract(b).absMax();
                     if (first_res == -1)
                         first_res = max_abs_res;
                     max_abs_res /= first_res;
+                    last_res = max_abs_res;
                     double max_diff = ArrayMaths.diffMax(x, old_x);
                     if (max_abs_res < ACCEPTED_PERCENTAGE_RESIDUUM_SOR && max_diff < ACCEPTED_DIFFERENCE_SOR) {
                         break;
@@ -165,9 +550,72 @@ public class EquationSolver {
                 } catch (ArithmeticException e) {
                 }
             }
-            old_x = Arrays.copyOf(x, x.length);
+            // the difference is only checked every 10 iterations against the iteration before
+            if ((iterations + 1) % 10 == 0)
+                System.arraycopy(x, 0, old_x, 0, x.length);
         }
+        if (report != null)
+            report.update(EquationSolverAlgorithm.SOR_RED_BLACK, Math.min(iterations + 1, MAX_ITERATIONS_SOR + 1), last_res);
         return new Vector(x);
     }
 
+    /**
+     * returns the smallest number of colors k (at least 2) so that no diagonale connects two rows with the same
+     * index modulo k.
+     *
+     * @param bands indexes of the diagonales
+     * @return number of colors
+     */
+    static int colorCount(int[] bands) {
+        for (int k = 2; ; k++) {
+            boolean independent = true;
+            for (int d : bands) {
+                if (d != 0 && d % k == 0)
+                    independent = false;
+            }
+            if (independent)
+                return k;
+        }
+    }
+
+    /**
+     * Estimates the optimal relaxation factor omega = 2 / (1 + sqrt(1 - rho^2)) of the SOR method. The spectral
+     * radius rho of the Jacobi iteration is estimated as the one of the Laplacian on the grid given by the outermost
+     * diagonale (cols x rows), scaled with the largest ratio of the off diagonale sum and the diagonale of a row.
+     *
+     * @param a band matrix
+     * @return omega (between 1 and 2)
+     */
+    static double estimateOmega(BandMatrix a) {
+        int n = a.rows();
+        double[] elements = a.getElements();
+        int[] bands = a.getBandIndexes();
+        int diagonale = a.getBand(0);
+        if (diagonale == -1)
+            return 1;
+        double ratio = 0;
+        for (int row = 0; row < n; row++) {
+            double sum = 0;
+            for (int i = 0; i < bands.length; i++) {
+                int col = row + bands[i];
+                if (col >= 0 && col < n && col != row)
+                    sum += Math.abs(elements[a.getBand(bands[i]) + Math.min(row, col)]);
+            }
+            double diag = elements[diagonale + row];
+            if (diag > 0)
+                ratio = Math.max(ratio, sum / diag);
+        }
+        ratio = Math.min(ratio, 1);
+        int cols = bands[bands.length - 1];
+        double laplace;
+        if (cols > 1 && cols < n) {
+            int rows = (n + cols - 1) / cols;
+            laplace = (Math.cos(Math.PI / (cols + 1)) + Math.cos(Math.PI / (rows + 1))) / 2;
+        } else {
+            laplace = Math.cos(Math.PI / (n + 1));
+        }
+        double rho = ratio * laplace;
+        return 2 / (1 + Math.sqrt(1 - rho * rho));
+    }
+
 }
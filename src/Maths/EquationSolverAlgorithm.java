@@ -6,5 +6,26 @@ package Maths;
  */
 public enum EquationSolverAlgorithm {
     SOR,
-    LU
+    /**
+     * parallel SOR with multicolor (red-black) ordering and automatically estimated omega for symmetric band matrices
+     */
+    SOR_RED_BLACK,
+    LU,
+    /**
+     * LU decomposition for pentadiagonale matrices on primitive arrays (@see PentadiagonalSolver)
+     */
+    PENTA,
+    /**
+     * conjugate gradient method with Jacobi (diagonale) preconditioner for symmetric positive definite band matrices
+     */
+    CG_JACOBI,
+    /**
+     * conjugate gradient method with incomplete Cholesky preconditioner for symmetric positive definite band matrices
+     */
+    CG_INCOMPLETE_CHOLESKY,
+    /**
+     * geometric multigrid method for symmetric positive definite band matrices on a picture grid
+     * (@see MultigridSolver), the width of the grid is the distance of the outermost diagonale
+     */
+    MULTIGRID
 }
@@ -0,0 +1,60 @@
+package Maths;
+
+import java.util.Locale;
+
+/**
+ * Statistics of the last system of equations which was solved with an iterative algorithm of the
+ * @see EquationSolver. It can be passed to EquationSolver#solve to find out how fast an algorithm converged.
+ *
+ * @author sebastianzillessen
+ */
+public class EquationSolverReport {
+    private EquationSolverAlgorithm algorithm = null;
+    private int iterations = 0;
+    private double residual = Double.NaN;
+
+    /**
+     * stores the statistics of a solved system
+     *
+     * @param algorithm  the algorithm which was used
+     * @param iterations number of iterations
+     * @param residual   relative residual of the result
+     */
+    void update(EquationSolverAlgorithm algorithm, int iterations, double residual) {
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.residual = residual;
+    }
+
+    /**
+     * @return the algorithm which was used to solve the last system (null if nothing was solved yet)
+     */
+    public EquationSolverAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return number of iterations which were needed
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * returns the relative residual of the result. It is the measure which is used by the stopping rule of the
+     * algorithm (for CG max|b - A*x| / max|b|, for SOR max|A*x - b| relative to the first residual).
+     *
+     * @return relative residual (NaN if it was not calculated)
+     */
+    public double getResidual() {
+        return residual;
+    }
+
+    /**
+     * @return string representation of the statistics
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%s: %d iterations, residual %.3e", algorithm, iterations, residual);
+    }
+}
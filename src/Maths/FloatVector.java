@@ -0,0 +1,70 @@
+package Maths;
+
+/**
+ * Vector which stores its values with single precision.
+ * <p/>
+ * It needs half of the memory of a @see Vector, which halves the memory bandwidth of loops over large vectors (e.g.
+ * the radiance map). The values are rounded to float on @see #set and returned as double, so it can be used wherever
+ * a Vector is expected. Results of the calculations (e.g. add, exp, copy) are double vectors.
+ *
+ * @author sebastianzillessen
+ */
+public class FloatVector extends Vector {
+    private final float[] f;
+
+    /**
+     * creates a vector of size n inited with 0.
+     *
+     * @param n the size of the vector.
+     */
+    public FloatVector(int n) {
+        f = new float[n];
+    }
+
+    /**
+     * sets a vector entry. The value is rounded to single precision.
+     *
+     * @param i index to set
+     * @param value value to set.
+     * @throws java.lang.ArithmeticException if the value is NaN or infinite or does not fit into a float
+     */
+    @Override
+    public void set(int i, double value) {
+        float rounded = (float) value;
+        if (Float.isNaN(rounded) || Float.isInfinite(rounded)) {
+            throw new ArithmeticException("Value is " + value);
+        }
+        f[i] = rounded;
+        min = -1;
+        max = -1;
+    }
+
+    @Override
+    public double get(int i) {
+        return f[i];
+    }
+
+    @Override
+    public int length() {
+        return f.length;
+    }
+
+    /**
+     * Copies the values of this vector into an other vector of the same length without allocating a new one.
+     *
+     * @param target vector to copy the values to.
+     * @throws java.lang.IllegalArgumentException if the vectors do not match in their size.
+     */
+    @Override
+    public void copyTo(Vector target) {
+        if (target.length() != length())
+            throw new IllegalArgumentException("Wrong length self: " + length() + " other: " + target.length());
+        if (target instanceof FloatVector)
+            System.arraycopy(f, 0, ((FloatVector) target).f, 0, f.length);
+        else
+            for (int i = 0; i < f.length; i++)
+                target.set(i, f[i]);
+        target.min = -1;
+        target.max = -1;
+    }
+}
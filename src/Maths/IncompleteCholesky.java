@@ -0,0 +1,134 @@
+package Maths;
+
+/**
+ * Incomplete Cholesky factorization IC(0) of a symmetric band matrix A = L * L^T.
+ * <p/>
+ * L has the same diagonales as the lower part of A, all fill in outside of these diagonales is dropped.
+ * It is used as preconditioner for the conjugate gradient method (@see EquationSolverAlgorithm#CG_INCOMPLETE_CHOLESKY).
+ *
+ * @author sebastianzillessen
+ */
+public class IncompleteCholesky {
+    private final int n;
+    private final double[] l;
+    // distances s of the diagonales -s of L (descending), their offsets and the diagonale
+    private final int[] s;
+    private final int[] offsets;
+    private final int diagonale;
+
+    /**
+     * Calculates the factorization of a.
+     *
+     * @param a symmetric band matrix with positive diagonale
+     * @throws EquationSolverException if the factorization breaks down because of a non positive diagonale.
+     */
+    public IncompleteCholesky(BandMatrix a) throws EquationSolverException {
+        n = a.rows();
+        int[] bands = a.getBandIndexes();
+        int lower = 0;
+        while (lower < bands.length && bands[lower] < 0)
+            lower++;
+        int[] lowerBands = new int[lower + 1];
+        System.arraycopy(bands, 0, lowerBands, 0, lower);
+        BandMatrix L = new BandMatrix(n, lowerBands);
+        l = L.getElements();
+        s = new int[lower];
+        offsets = new int[lower];
+        int[] aOffsets = new int[lower];
+        for (int i = 0; i < lower; i++) {
+            // bands are sorted ascending, so s is descending
+            s[i] = -bands[i];
+            offsets[i] = L.getBand(bands[i]);
+            aOffsets[i] = a.getBand(bands[i]);
+        }
+        diagonale = L.getBand(0);
+        int aDiagonale = a.getBand(0);
+
+        // L(i, j) = (A(i, j) - sum_k L(i, k) * L(j, k)) / L(j, j) where k = i - t = j - u is inside of the pattern.
+        // with j = i - s this needs t = s + u, so the pairs (s, u) with s + u in the pattern are collected first.
+        int[][] pairU = new int[lower][];
+        int[][] pairT = new int[lower][];
+        for (int a1 = 0; a1 < lower; a1++) {
+            int count = 0;
+            int[] u = new int[lower];
+            int[] t = new int[lower];
+            for (int a2 = 0; a2 < lower; a2++) {
+                int ti = indexOf(s[a1] + s[a2]);
+                if (ti != -1) {
+                    u[count] = a2;
+                    t[count] = ti;
+                    count++;
+                }
+            }
+            pairU[a1] = new int[count];
+            pairT[a1] = new int[count];
+            System.arraycopy(u, 0, pairU[a1], 0, count);
+            System.arraycopy(t, 0, pairT[a1], 0, count);
+        }
+
+        double[] e = a.getElements();
+        for (int i = 0; i < n; i++) {
+            double aii = aDiagonale == -1 ? 0 : e[aDiagonale + i];
+            double d = aii;
+            // the diagonales far away from the center first, they are needed for the closer ones
+            for (int a1 = 0; a1 < lower; a1++) {
+                int j = i - s[a1];
+                if (j < 0)
+                    continue;
+                double v = e[aOffsets[a1] + j];
+                for (int p = 0; p < pairU[a1].length; p++) {
+                    int k = j - s[pairU[a1][p]];
+                    if (k >= 0)
+                        v -= l[offsets[pairT[a1][p]] + k] * l[offsets[pairU[a1][p]] + k];
+                }
+                double lij = v / l[diagonale + j];
+                l[offsets[a1] + j] = lij;
+                d -= lij * lij;
+            }
+            if (d <= 0) {
+                // dropped fill in made the pivot non positive, use the diagonale of A instead
+                d = aii;
+            }
+            if (d <= 0 || Double.isNaN(d))
+                throw new EquationSolverException("Incomplete Cholesky factorization failed: diagonale " + i + " is not positive.");
+            l[diagonale + i] = Math.sqrt(d);
+        }
+    }
+
+    private int indexOf(int distance) {
+        for (int i = 0; i < s.length; i++) {
+            if (s[i] == distance)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Applies the preconditioner: solves L * L^T * z = r.
+     *
+     * @param r right side
+     * @param z array for the result (may be r)
+     */
+    public void apply(double[] r, double[] z) {
+        // forward: L * y = r, (i, i - s) is stored at offset(s) + i - s
+        for (int i = 0; i < n; i++) {
+            double v = r[i];
+            for (int a1 = 0; a1 < s.length; a1++) {
+                int j = i - s[a1];
+                if (j >= 0)
+                    v -= l[offsets[a1] + j] * z[j];
+            }
+            z[i] = v / l[diagonale + i];
+        }
+        // backward: L^T * z = y, (i + s, i) is stored at offset(s) + i
+        for (int i = n - 1; i >= 0; i--) {
+            double v = z[i];
+            for (int a1 = 0; a1 < s.length; a1++) {
+                int j = i + s[a1];
+                if (j < n)
+                    v -= l[offsets[a1] + i] * z[j];
+            }
+            z[i] = v / l[diagonale + i];
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package Maths;
+
+/**
+ * A quadratic linear operator A which only provides the products with vectors instead of storing its elements.
+ * <p/>
+ * It is used by the iterative solvers (@see EquationSolver#solveMatrixFree) for systems whose elements can be
+ * calculated on the fly, so the matrix never has to be stored.
+ *
+ * @author sebastianzillessen
+ */
+public interface LinearOperator {
+
+    /**
+     * @return number of rows (and cols) of this operator
+     */
+    public int size();
+
+    /**
+     * Calculates r = A * x.
+     *
+     * @param x vector to multiply the operator with
+     * @param r array for the result (must not be x)
+     */
+    public void apply(double[] x, double[] r);
+
+    /**
+     * @param row index of the row
+     * @return the element A(row, row)
+     */
+    public double diagonal(int row);
+
+    /**
+     * Calculates the product of one row without its diagonale element: sum of A(row, col) * x[col] for col != row.
+     *
+     * @param row index of the row
+     * @param x   vector to multiply the row with
+     * @return product of the row without the diagonale
+     */
+    public double offDiagonalProduct(int row, double[] x);
+}
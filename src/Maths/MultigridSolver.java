@@ -0,0 +1,314 @@
+package Maths;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Geometric multigrid solver for systems A * x = b where A is a band matrix on a cols x rows grid
+ * (the unknown of the pixel (x, y) has the index x + y * cols), e.g. the five point stencil of the spatial
+ * smoothness term of the radiance map.
+ * <p/>
+ * Each coarser grid has every second row and column of the finer one. The prolongation is the bilinear
+ * interpolation P, the restriction is P^T and the coarse matrices are built with the Galerkin product P^T * A * P,
+ * which results in (at most) nine point stencils. The solver runs V-cycles with symmetric Gauss-Seidel smoothing
+ * (forward before, backward after the coarse grid correction) until the relative residual is small enough.
+ * The hierarchy is built once in the constructor and can be used for several right sides.
+ *
+ * @author sebastianzillessen
+ */
+public class MultigridSolver {
+    private static final int MAX_CYCLES = 50;
+    private static final double ACCEPTED_RESIDUUM = 0.000001;
+    private static final int SMOOTHING_STEPS = 2;
+    private static final int COARSEST_SWEEPS = 50;
+    private static final int COARSEST_SIZE = 64;
+
+    private final Level finest;
+    private final ParallelLoop loop;
+
+    /**
+     * Builds the multigrid hierarchy for the matrix a on the given grid.
+     *
+     * @param a    band matrix of the size (cols * rows) x (cols * rows)
+     * @param cols number of columns of the grid (width of the picture)
+     * @param rows number of rows of the grid (height of the picture)
+     * @throws java.lang.IllegalArgumentException if the matrix does not match the grid.
+     */
+    public MultigridSolver(BandMatrix a, int cols, int rows) {
+        this(a, cols, rows, ParallelLoop.getDefault());
+    }
+
+    /**
+     * Builds the multigrid hierarchy for the matrix a on the given grid. The products with the matrices run on the
+     * threads of the given loop.
+     *
+     * @param a    band matrix of the size (cols * rows) x (cols * rows)
+     * @param cols number of columns of the grid (width of the picture)
+     * @param rows number of rows of the grid (height of the picture)
+     * @param loop the threads to use
+     * @throws java.lang.IllegalArgumentException if the matrix does not match the grid.
+     */
+    public MultigridSolver(BandMatrix a, int cols, int rows, ParallelLoop loop) {
+        this.loop = loop;
+        if (cols < 1 || rows < 1 || a.rows() != cols * rows)
+            throw new IllegalArgumentException("Matrix of size " + a.rows() + " does not match a grid of " + cols + "x" + rows);
+        finest = new Level(a, cols, rows);
+        Level level = finest;
+        while (level.n > COARSEST_SIZE && level.cols > 2 && level.rows > 2) {
+            level.coarse = new Level(galerkin(level), (level.cols + 1) / 2, (level.rows + 1) / 2);
+            level = level.coarse;
+        }
+    }
+
+    /**
+     * @return number of grids in the hierarchy
+     */
+    public int levels() {
+        int count = 0;
+        for (Level l = finest; l != null; l = l.coarse)
+            count++;
+        return count;
+    }
+
+    /**
+     * Solves A * x = b.
+     *
+     * @param b      right side
+     * @param report report for the statistics (may be null)
+     * @return x so that A * x = b
+     * @throws java.lang.IllegalArgumentException if the size of b does not match
+     */
+    public Vector solve(Vector b, EquationSolverReport report) {
+        if (b.length() != finest.n)
+            throw new IllegalArgumentException("Size of Vextor and Matrix does not match.");
+        int n = finest.n;
+        double[] x = new double[n];
+        double[] r = new double[n];
+        double[] z = new double[n];
+        double[] p = new double[n];
+        double[] q = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = 1;
+        }
+        double bNorm = ArrayMaths.absMax(b.v);
+        if (bNorm == 0)
+            bNorm = 1;
+        finest.a.mult(x, q, loop);
+        for (int i = 0; i < n; i++) {
+            r[i] = b.get(i) - q[i];
+        }
+        double res = ArrayMaths.absMax(r) / bNorm;
+        int cycles = 0;
+        double rz = 0;
+        while (res > ACCEPTED_RESIDUUM && cycles < MAX_CYCLES) {
+            precondition(r, z);
+            double rzNew = dot(r, z);
+            double beta = cycles == 0 ? 0 : rzNew / rz;
+            rz = rzNew;
+            for (int i = 0; i < n; i++) {
+                p[i] = z[i] + beta * p[i];
+            }
+            finest.a.mult(p, q, loop);
+            double alpha = rz / dot(p, q);
+            for (int i = 0; i < n; i++) {
+                x[i] += alpha * p[i];
+                r[i] -= alpha * q[i];
+            }
+            cycles++;
+            res = ArrayMaths.absMax(r) / bNorm;
+        }
+        if (report != null)
+            report.update(EquationSolverAlgorithm.MULTIGRID, cycles, res);
+        return new Vector(x);
+    }
+
+    /**
+     * one V-cycle for A * z = r starting with z = 0
+     */
+    private void precondition(double[] r, double[] z) {
+        System.arraycopy(r, 0, finest.b, 0, finest.n);
+        Arrays.fill(finest.x, 0);
+        vCycle(finest);
+        System.arraycopy(finest.x, 0, z, 0, finest.n);
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private void vCycle(Level l) {
+        if (l.coarse == null) {
+            for (int s = 0; s < COARSEST_SWEEPS; s++) {
+                gaussSeidel(l, true);
+                gaussSeidel(l, false);
+            }
+            return;
+        }
+        for (int s = 0; s < SMOOTHING_STEPS; s++)
+            gaussSeidel(l, true);
+        residual(l);
+        Level c = l.coarse;
+        // restriction of the residual as right side of the coarse grid correction
+        for (int i = 0; i < c.n; i++) {
+            c.b[i] = 0;
+            c.x[i] = 0;
+        }
+        for (int y = 0; y < l.rows; y++) {
+            for (int x = 0; x < l.cols; x++) {
+                double v = l.r[x + y * l.cols];
+                int n = parents(l, x, y);
+                for (int p = 0; p < n; p++)
+                    c.b[l.parent[p]] += l.weight[p] * v;
+            }
+        }
+        vCycle(c);
+        // prolongation of the correction
+        for (int y = 0; y < l.rows; y++) {
+            for (int x = 0; x < l.cols; x++) {
+                int n = parents(l, x, y);
+                double v = 0;
+                for (int p = 0; p < n; p++)
+                    v += l.weight[p] * c.x[l.parent[p]];
+                l.x[x + y * l.cols] += v;
+            }
+        }
+        for (int s = 0; s < SMOOTHING_STEPS; s++)
+            gaussSeidel(l, false);
+    }
+
+    /**
+     * one Gauss-Seidel sweep (SOR with omega = 1) in forward or backward order
+     */
+    private void gaussSeidel(Level l, boolean forward) {
+        double[] e = l.a.getElements();
+        int[] bands = l.a.getBandIndexes();
+        int n = l.n;
+        for (int k = 0; k < n; k++) {
+            int row = forward ? k : n - 1 - k;
+            double phi = 0;
+            for (int i = 0; i < bands.length; i++) {
+                int col = row + bands[i];
+                if (col >= 0 && col < n && col != row)
+                    phi += e[l.offsets[i] + Math.min(row, col)] * l.x[col];
+            }
+            l.x[row] = (l.b[row] - phi) / e[l.diagonale + row];
+        }
+    }
+
+    /**
+     * r = b - A * x
+     */
+    private void residual(Level l) {
+        l.a.mult(l.x, l.r, loop);
+        for (int i = 0; i < l.n; i++)
+            l.r[i] = l.b[i] - l.r[i];
+    }
+
+    /**
+     * stores the coarse grid points and the bilinear interpolation weights of the fine grid point (x, y) in
+     * l.parent and l.weight
+     *
+     * @return number of coarse grid points (1, 2 or 4)
+     */
+    private static int parents(Level l, int x, int y) {
+        int cc = (l.cols + 1) / 2;
+        int rc = (l.rows + 1) / 2;
+        int x0 = x / 2;
+        int y0 = y / 2;
+        // odd coordinates lie between two coarse points (if the second one exists)
+        boolean xBetween = x % 2 == 1 && x0 + 1 < cc;
+        boolean yBetween = y % 2 == 1 && y0 + 1 < rc;
+        int n = 0;
+        for (int dy = 0; dy <= (yBetween ? 1 : 0); dy++) {
+            for (int dx = 0; dx <= (xBetween ? 1 : 0); dx++) {
+                l.parent[n] = (x0 + dx) + (y0 + dy) * cc;
+                l.weight[n] = (xBetween ? 0.5 : 1) * (yBetween ? 0.5 : 1);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * builds the coarse grid matrix P^T * A * P of a level
+     */
+    private static BandMatrix galerkin(Level l) {
+        int cc = (l.cols + 1) / 2;
+        int rc = (l.rows + 1) / 2;
+        int nc = cc * rc;
+        TreeSet<Integer> bands = new TreeSet<Integer>();
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int d = dy * cc + dx;
+                if (Math.abs(d) < nc)
+                    bands.add(d);
+            }
+        }
+        BandMatrix coarse = new BandMatrix(nc, bands);
+        double[] ce = coarse.getElements();
+        double[] e = l.a.getElements();
+        int[] fineBands = l.a.getBandIndexes();
+        int[] rowParent = new int[4];
+        double[] rowWeight = new double[4];
+        for (int y = 0; y < l.rows; y++) {
+            for (int x = 0; x < l.cols; x++) {
+                int i = x + y * l.cols;
+                int ni = parents(l, x, y);
+                System.arraycopy(l.parent, 0, rowParent, 0, ni);
+                System.arraycopy(l.weight, 0, rowWeight, 0, ni);
+                for (int k = 0; k < fineBands.length; k++) {
+                    int j = i + fineBands[k];
+                    if (j < 0 || j >= l.n)
+                        continue;
+                    double aij = e[l.offsets[k] + Math.min(i, j)];
+                    if (aij == 0)
+                        continue;
+                    int nj = parents(l, j % l.cols, j / l.cols);
+                    for (int p = 0; p < ni; p++) {
+                        for (int q = 0; q < nj; q++) {
+                            int I = rowParent[p];
+                            int J = l.parent[q];
+                            int offset = coarse.getBand(J - I);
+                            if (offset != -1)
+                                ce[offset + Math.min(I, J)] += rowWeight[p] * aij * l.weight[q];
+                        }
+                    }
+                }
+            }
+        }
+        return coarse;
+    }
+
+    /**
+     * one grid of the hierarchy with its matrix and work arrays
+     */
+    private static class Level {
+        final BandMatrix a;
+        final int cols, rows, n;
+        final int[] offsets;
+        final int diagonale;
+        final double[] x, b, r;
+        final int[] parent = new int[4];
+        final double[] weight = new double[4];
+        Level coarse = null;
+
+        Level(BandMatrix a, int cols, int rows) {
+            this.a = a;
+            this.cols = cols;
+            this.rows = rows;
+            this.n = cols * rows;
+            int[] bands = a.getBandIndexes();
+            offsets = new int[bands.length];
+            for (int i = 0; i < bands.length; i++)
+                offsets[i] = a.getBand(bands[i]);
+            diagonale = a.getBand(0);
+            x = new double[n];
+            b = new double[n];
+            r = new double[n];
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package Maths;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Executes loops over independent indexes (e.g. the pixels of an image) on several threads.
+ * <p/>
+ * The index range is split into one contiguous part per thread. Each index is processed by exactly one task,
+ * so as long as the work on an index does not depend on other indexes the result is identical to a sequential
+ * loop.
+ * <p/>
+ * The classes in Maths share one instance (@see #getDefault) instead of creating their own threads on every call.
+ * It can be replaced with @see #setDefault, e.g. to limit the number of threads of an application. Their parallel
+ * methods can also be given a loop, so a solver with its own number of threads does not use the shared one.
+ *
+ * @author sebastianzillessen
+ */
+public class ParallelLoop {
+    private static final long KEEP_ALIVE_SECONDS = 5;
+    private static ParallelLoop defaultLoop = null;
+    private final int parallelism;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a parallel loop which uses all available processors.
+     */
+    public ParallelLoop() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a parallel loop with the given number of threads. Idle threads are stopped after a few seconds.
+     *
+     * @param parallelism number of threads to use (1 executes everything in the calling thread)
+     * @throws java.lang.IllegalArgumentException if parallelism is smaller than 1
+     */
+    public ParallelLoop(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism has to be at least 1 but was " + parallelism);
+        this.parallelism = parallelism;
+        if (parallelism > 1) {
+            // the calling thread processes one part itself
+            executor = new ThreadPoolExecutor(parallelism - 1, parallelism - 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ParallelLoop");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Returns the shared instance which is used by the classes in Maths. It uses all available processors.
+     *
+     * @return shared parallel loop
+     */
+    public static synchronized ParallelLoop getDefault() {
+        if (defaultLoop == null) {
+            defaultLoop = new ParallelLoop();
+        }
+        return defaultLoop;
+    }
+
+    /**
+     * Replaces the shared instance which is used by the classes in Maths. The old instance is not shut down.
+     *
+     * @param loop the new shared instance (null creates a new default instance on the next access)
+     */
+    public static synchronized void setDefault(ParallelLoop loop) {
+        defaultLoop = loop;
+    }
+
+    /**
+     * @return number of threads used by this loop
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Processes the indexes [0, n) in chunks of the given size and waits until all chunks are finished.
+     * <p/>
+     * Each thread takes the next unprocessed chunk until all chunks are done, so the chunk size should be chosen
+     * that the data of one chunk fits into the cache.
+     *
+     * @param n         number of indexes
+     * @param chunkSize number of indexes which are processed at once
+     * @param task      the work to do on a range of indexes
+     * @throws java.lang.RuntimeException if the task failed on one of the chunks, the exception is rethrown.
+     */
+    public void run(final int n, final int chunkSize, final RangeTask task) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size has to be at least 1 but was " + chunkSize);
+        final int chunks = (int) (((long) n + chunkSize - 1) / chunkSize);
+        final AtomicInteger next = new AtomicInteger(0);
+        run(Math.min(parallelism, chunks), new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int c = next.getAndIncrement(); c < chunks; c = next.getAndIncrement()) {
+                    int start = c * chunkSize;
+                    task.run(start, (int) Math.min((long) start + chunkSize, n));
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the threads of this loop. Loops which are currently running are finished, later calls of run are
+     * rejected.
+     */
+    public void shutdown() {
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    /**
+     * Processes the indexes [0, n) with the given task and waits until all parts are finished.
+     * <p/>
+     * If a part fails or the calling thread is interrupted, the parts which did not start yet are skipped and the
+     * running ones are waited for, so no task works on the data of the caller any more when the exception is thrown.
+     *
+     * @param n    number of indexes
+     * @param task the work to do on a range of indexes
+     * @throws java.lang.RuntimeException if the task failed on one of the parts, the first exception is rethrown.
+     */
+    public void run(int n, final RangeTask task) {
+        int parts = Math.min(parallelism, n);
+        if (parts <= 1) {
+            task.run(0, n);
+            return;
+        }
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch finished = new CountDownLatch(parts - 1);
+        for (int p = 1; p < parts; p++) {
+            final int from = (int) ((long) n * p / parts);
+            final int to = (int) ((long) n * (p + 1) / parts);
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            // parts which did not start before a failure are skipped
+                            if (!stop.get())
+                                task.run(from, to);
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                            stop.set(true);
+                        } finally {
+                            finished.countDown();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                failure.compareAndSet(null, e);
+                stop.set(true);
+                finished.countDown();
+            }
+        }
+        try {
+            if (!stop.get())
+                task.run(0, (int) ((long) n / parts));
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+            stop.set(true);
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                // the running parts are still waited for
+                interrupted = true;
+                failure.compareAndSet(null, new RuntimeException("Parallel loop was interrupted", e));
+                stop.set(true);
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+        if (e != null)
+            throw new RuntimeException(e);
+    }
+}
@@ -0,0 +1,176 @@
+package Maths;
+
+/**
+ * Solves systems of linear equotations A * x = b with a pentadiagonale matrix A of a fixed size.
+ * <p/>
+ * It does the same LU decomposition, forward elimination and backward substitution as
+ * @see AbstractMatrix#decomposePenta and @see EquationSolver (EquationSolverAlgorithm.LU), but it works on the five
+ * diagonales as primitive arrays and keeps all temporary arrays in a workspace which is reused for each call.
+ * The matrices L and U are never built, so solving a system does not allocate any memory.
+ * <p/>
+ * An instance is not thread safe, each thread has to use its own solver.
+ *
+ * @author sebastianzillessen
+ */
+public class PentadiagonalSolver {
+    private final int n;
+    // diagonales of A: sub2[i] = A(i, i-2), sub1[i] = A(i, i-1), diag[i] = A(i, i), sup1[i] = A(i, i+1), sup2[i] = A(i, i+2)
+    private final double[] sub2, sub1, diag, sup1, sup2;
+    // decomposition: L has the diagonales 1, l, k and U has the diagonales m, r, p
+    private final double[] m, l, k, p, r;
+    private final double[] y, x;
+
+    /**
+     * Creates a solver (and its workspace) for systems of size n x n.
+     *
+     * @param n size of the systems
+     * @throws java.lang.IllegalArgumentException if n is smaller than 3
+     */
+    public PentadiagonalSolver(int n) {
+        if (n < 3)
+            throw new IllegalArgumentException("Pentadiagonale systems need at least 3 rows but have " + n);
+        this.n = n;
+        sub2 = new double[n];
+        sub1 = new double[n];
+        diag = new double[n];
+        sup1 = new double[n];
+        sup2 = new double[n];
+        m = new double[n];
+        l = new double[n];
+        k = new double[n];
+        p = new double[n];
+        r = new double[n];
+        y = new double[n];
+        x = new double[n];
+    }
+
+    /**
+     * @return size of the systems which can be solved with this solver
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Solves A * x = b and stores the result in x.
+     *
+     * @param a pentadiagonale matrix
+     * @param b right side
+     * @param x vector for the result (may be b)
+     * @throws EquationSolverException if the sizes do not match, the matrix is not pentadiagonale or it is singular.
+     */
+    public void solve(AbstractMatrix a, Vector b, Vector x) throws EquationSolverException {
+        if (b.length() != n || x.length() != n)
+            throw new EquationSolverException("Size of Vextor and Solver does not match.", a, b);
+        loadDiagonales(a, b);
+        solve(sub2, sub1, diag, sup1, sup2, b.v, this.x);
+        for (int i = 0; i < n; i++) {
+            x.set(i, this.x[i]);
+        }
+    }
+
+    /**
+     * Solves A * x = b.
+     *
+     * @param a pentadiagonale matrix
+     * @param b right side
+     * @return x
+     * @throws EquationSolverException if the sizes do not match, the matrix is not pentadiagonale or it is singular.
+     */
+    public Vector solve(AbstractMatrix a, Vector b) throws EquationSolverException {
+        Vector res = new Vector(n);
+        solve(a, b, res);
+        return res;
+    }
+
+    /**
+     * Solves A * x = b where A is given by its five diagonales. All arrays have the length n and are indexed by the
+     * row, e.g. sub2[i] = A(i, i-2) and sup1[i] = A(i, i+1). Entries outside of the matrix are ignored.
+     *
+     * @param sub2 second diagonale below the center
+     * @param sub1 first diagonale below the center
+     * @param diag center diagonale
+     * @param sup1 first diagonale above the center
+     * @param sup2 second diagonale above the center
+     * @param b    right side
+     * @param res  array for the result (may be b)
+     * @throws EquationSolverException if the matrix is singular
+     */
+    public void solve(double[] sub2, double[] sub1, double[] diag, double[] sup1, double[] sup2, double[] b, double[] res) throws EquationSolverException {
+        // decomposition
+        m[0] = diag[0];
+        r[0] = sup1[0];
+        l[1] = sub1[1] / m[0];
+        m[1] = diag[1] - l[1] * r[0];
+        for (int i = 0; i < n - 2; i++) {
+            p[i] = sup2[i];
+        }
+        for (int i = 2; i < n; i++) {
+            k[i] = sub2[i] / m[i - 2];
+            l[i] = (sub1[i] - k[i] * r[i - 2]) / m[i - 1];
+            r[i - 1] = sup1[i - 1] - (l[i - 1] * (p[i - 2]));
+            m[i] = diag[i] - k[i] * p[i - 2] - l[i] * r[i - 1];
+        }
+        for (int i = 0; i < n; i++) {
+            if (m[i] == 0 || Double.isNaN(m[i]) || Double.isInfinite(m[i]))
+                throw new EquationSolverException("Matrix A is singular (pivot " + i + " is " + m[i] + ").");
+        }
+        // forward elimination L*y = b
+        y[0] = b[0];
+        y[1] = b[1] - l[1] * y[0];
+        for (int i = 2; i < n; i++) {
+            y[i] = b[i] - k[i] * y[i - 2] - l[i] * y[i - 1];
+        }
+        // backward substitution U*x = y
+        res[n - 1] = y[n - 1] / m[n - 1];
+        res[n - 2] = (y[n - 2] - r[n - 2] * res[n - 1]) / m[n - 2];
+        for (int i = n - 3; i >= 0; i--) {
+            double d = m[i];
+            double v = r[i] * res[i + 1] / d;
+            double v1 = p[i] * res[i + 2] / d;
+            double v2 = y[i] / d;
+            res[i] = v2 - v - v1;
+        }
+    }
+
+    /**
+     * copies the diagonales of a into the workspace
+     */
+    private void loadDiagonales(AbstractMatrix a, Vector b) throws EquationSolverException {
+        if (a.rows() != n || a.cols() != n)
+            throw new EquationSolverException("Size of Matrix and Solver does not match.", a, b);
+        if (a instanceof BandMatrix) {
+            BandMatrix band = (BandMatrix) a;
+            int[] bands = band.getBandIndexes();
+            if (bands.length > 0 && (bands[0] < -2 || bands[bands.length - 1] > 2))
+                throw new EquationSolverException("Matrix A is not pentadiagonale.", a, b);
+            double[] elements = band.getElements();
+            // (i, i+d) is stored at getBand(d) + min(i, i+d)
+            copyBand(elements, band.getBand(-2), sub2, 2, n - 2);
+            copyBand(elements, band.getBand(-1), sub1, 1, n - 1);
+            copyBand(elements, band.getBand(0), diag, 0, n);
+            copyBand(elements, band.getBand(1), sup1, 0, n - 1);
+            copyBand(elements, band.getBand(2), sup2, 0, n - 2);
+        } else {
+            if (!a.isPentadiagonale())
+                throw new EquationSolverException("Matrix A is not pentadiagonale.", a, b);
+            for (int i = 0; i < n; i++) {
+                sub2[i] = i >= 2 ? a.get(i, i - 2) : 0;
+                sub1[i] = i >= 1 ? a.get(i, i - 1) : 0;
+                diag[i] = a.get(i, i);
+                sup1[i] = i < n - 1 ? a.get(i, i + 1) : 0;
+                sup2[i] = i < n - 2 ? a.get(i, i + 2) : 0;
+            }
+        }
+    }
+
+    private static void copyBand(double[] elements, int offset, double[] target, int targetPos, int length) {
+        if (offset == -1) {
+            for (int i = 0; i < target.length; i++) {
+                target[i] = 0;
+            }
+        } else {
+            System.arraycopy(elements, offset, target, targetPos, length);
+        }
+    }
+}
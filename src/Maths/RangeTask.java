@@ -0,0 +1,16 @@
+package Maths;
+
+/**
+ * A piece of work on a range of indexes which can be executed by a @see ParallelLoop.
+ *
+ * @author sebastianzillessen
+ */
+public interface RangeTask {
+    /**
+     * processes all indexes in the range [from, to). The ranges passed to different calls never overlap.
+     *
+     * @param from first index (inclusive)
+     * @param to   last index (exclusive)
+     */
+    public void run(int from, int to);
+}
@@ -13,11 +13,17 @@ import java.math.BigDecimal;
  */
 public class Vector {
     protected double[] v;
-    private double max = -1;
-    private double min = -1;
+    protected double max = -1;
+    protected double min = -1;
     private int precision = -1;
 
 
+    /**
+     * Constructor for subclasses which store the values themselves (@see FloatVector).
+     */
+    protected Vector() {
+    }
+
     /**
      * Default constructor to be used to init a vector of size n
      * the vector is inited with 0.
@@ -122,7 +128,7 @@ public class Vector {
     public double abs2() {
         double t = 0;
         for (int i = 0; i < length(); i++) {
-            t += v[i] * v[i];
+            t += get(i) * get(i);
         }
         return t;
     }
@@ -137,7 +143,7 @@ public class Vector {
     public Vector add(double v) {
         Vector r = new Vector(length());
         for (int i = 0; i < length(); i++) {
-            r.set(i, this.v[i] + v);
+            r.set(i, get(i) + v);
         }
         return r;
     }
@@ -193,14 +199,31 @@ public class Vector {
         return v.length;
     }
 
+    /**
+     * Copies the values of this vector into an other vector of the same length without allocating a new one.
+     * @param target vector to copy the values to.
+     * @throws java.lang.IllegalArgumentException if the vectors do not match in their size.
+     */
+    public void copyTo(Vector target) {
+        if (target.length() != length())
+            throw new IllegalArgumentException("Wrong length self: " + length() + " other: " + target.length());
+        if (target.v == null) {
+            // the target stores its values itself
+            for (int i = 0; i < v.length; i++)
+                target.set(i, v[i]);
+        } else
+            System.arraycopy(v, 0, target.v, 0, v.length);
+        target.min = -1;
+        target.max = -1;
+    }
+
     /**
      * Copies a vector
      * @return copied instance of this vector. Values are preserved.
      */
     public Vector copy() {
         Vector res = new Vector(length());
-        for (int i = 0; i < length(); i++)
-            res.set(i, get(i));
+        copyTo(res);
         return res;
     }
 
@@ -239,7 +262,7 @@ public class Vector {
     public double absMax() {
         double absMax = Math.abs(get(0));
         for (int i = 1; i < length(); i++) {
-            absMax = Math.max(absMax, Math.abs(v[i]));
+            absMax = Math.max(absMax, Math.abs(get(i)));
         }
         return absMax;
     }
@@ -252,7 +275,7 @@ public class Vector {
         if (this.max == -1) {
             this.max = get(0);
             for (int i = 1; i < length(); i++) {
-                max = Math.max(max, v[i]);
+                max = Math.max(max, get(i));
             }
         }
         return max;
@@ -266,7 +289,7 @@ public class Vector {
         if (this.min == -1) {
             this.min = get(0);
             for (int i = 1; i < length(); i++) {
-                min = Math.min(min, v[i]);
+                min = Math.min(min, get(i));
             }
         }
         return min;
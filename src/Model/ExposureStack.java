@@ -0,0 +1,161 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * Packed representation of a series of grey scale images with different exposure times.
+ * <p/>
+ * All P exposures are stored in one contiguous byte array in pixel-major order, so the P grey values of pixel i
+ * are stored next to each other at the positions i * P ... i * P + P - 1. Together with the precomputed
+ * logarithm of the exposure times this is the representation the solvers work on.
+ *
+ * @author sebastianzillessen
+ */
+public class ExposureStack {
+    private final byte[] samples;
+    private final double[] exposureTimes;
+    private final double[] lnT;
+    private final int width;
+    private final int height;
+    private final int N;
+    private final int P;
+
+    /**
+     * Packs a list of images into an exposure stack.
+     *
+     * @param images the list of images with different exposure times
+     * @throws java.lang.IllegalArgumentException if the list is empty or the images are not of the same size.
+     */
+    public ExposureStack(List<Image> images) {
+        if (images == null || images.isEmpty())
+            throw new IllegalArgumentException("An exposure stack needs at least one image.");
+        this.width = images.get(0).getWidth();
+        this.height = images.get(0).getHeight();
+        this.N = images.get(0).getImageSize();
+        this.P = images.size();
+        this.samples = new byte[N * P];
+        this.exposureTimes = new double[P];
+        for (int j = 0; j < P; j++) {
+            Image image = images.get(j);
+            if (image.getWidth() != width || image.getHeight() != height)
+                throw new IllegalArgumentException("Image " + j + " is not of the size " + width + "x" + height);
+            exposureTimes[j] = image.getExposureTime();
+            for (int i = 0; i < N; i++) {
+                samples[i * P + j] = (byte) image.getValue(i);
+            }
+        }
+        this.lnT = initLnT(exposureTimes);
+    }
+
+    /**
+     * Creates an exposure stack from already packed samples.
+     *
+     * @param width         width of the pictures
+     * @param height        height of the pictures
+     * @param exposureTimes exposure time of each picture
+     * @param samples       grey values in pixel-major order (length width * height * exposureTimes.length)
+     * @throws java.lang.IllegalArgumentException if the length of the samples does not match.
+     */
+    public ExposureStack(int width, int height, double[] exposureTimes, byte[] samples) {
+        if (samples.length != width * height * exposureTimes.length)
+            throw new IllegalArgumentException("Samples do not match the size " + width + "x" + height + "x" + exposureTimes.length);
+        this.width = width;
+        this.height = height;
+        this.N = width * height;
+        this.P = exposureTimes.length;
+        this.samples = samples;
+        this.exposureTimes = exposureTimes.clone();
+        this.lnT = initLnT(this.exposureTimes);
+    }
+
+    private static double[] initLnT(double[] exposureTimes) {
+        double[] lnT = new double[exposureTimes.length];
+        for (int j = 0; j < lnT.length; j++) {
+            lnT[j] = Math.log(exposureTimes[j]);
+        }
+        return lnT;
+    }
+
+    /**
+     * Returns the grey value of pixel i in picture j
+     *
+     * @param i index of the pixel
+     * @param j index of the picture
+     * @return grey value (0-255)
+     */
+    public int get(int i, int j) {
+        return samples[i * P + j] & 0xff;
+    }
+
+    /**
+     * Returns the packed samples. The grey value of pixel i in picture j is stored at i * P + j and has to be read
+     * as unsigned value (samples[i * P + j] &amp; 0xff).
+     * <p/>
+     * The array is not copied and must not be modified.
+     *
+     * @return packed samples in pixel-major order
+     */
+    public byte[] getSamples() {
+        return samples;
+    }
+
+    /**
+     * exposure time of the picture j
+     *
+     * @param j index of the picture
+     * @return exposure time
+     */
+    public double getExposureTime(int j) {
+        return exposureTimes[j];
+    }
+
+    /**
+     * returns ln(t_j) for each picture. The array is not copied and must not be modified.
+     *
+     * @return logarithm of the exposure times
+     */
+    public double[] getLnT() {
+        return lnT;
+    }
+
+    /**
+     * Generates a histogram over all pictures in this stack.
+     *
+     * @return histogram of the grey values
+     */
+    public int[] getHistogram() {
+        int[] histogram = new int[256];
+        for (int n = 0; n < samples.length; n++) {
+            histogram[samples[n] & 0xff]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * @return image size (width*height)
+     */
+    public int getImageSize() {
+        return N;
+    }
+
+    /**
+     * @return number of pictures in this stack
+     */
+    public int getImageCount() {
+        return P;
+    }
+
+    /**
+     * @return width of the pictures
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the pictures
+     */
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,294 @@
+package Model;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An exposure stack which is stored in a file instead of the heap.
+ * <p/>
+ * The samples have the same pixel-major layout as in @see ExposureStack (the P grey values of pixel i are stored
+ * at i * P ... i * P + P - 1), so a range of pixels is one contiguous block of the file and can be read tile by tile.
+ * The file starts with a header (magic number, width, height, number of pictures and the exposure times).
+ * <p/>
+ * Reading the file never needs a complete picture in memory. When the file is created each picture is decoded once
+ * and converted and written stripe by stripe, so only one decoded picture (not the whole stack) is held at a time.
+ * Decoding a region of a picture would save that memory, but most image readers (e.g. JPEG) decode from the top of
+ * the picture for every region, so the time would grow with height^2 / stripe height.
+ *
+ * @author sebastianzillessen
+ */
+public class ExposureStackFile {
+    private static final int MAGIC = 0x48445253;
+    private static final int DEFAULT_STRIPE_HEIGHT = 64;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long headerSize;
+    private final double[] exposureTimes;
+    private final double[] lnT;
+    private final int width;
+    private final int height;
+    private final int N;
+    private final int P;
+
+    private ExposureStackFile(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        if (raf.readInt() != MAGIC) {
+            close();
+            throw new IOException("File " + file + " is not an exposure stack.");
+        }
+        this.width = raf.readInt();
+        this.height = raf.readInt();
+        this.P = raf.readInt();
+        this.N = width * height;
+        this.exposureTimes = new double[P];
+        this.lnT = new double[P];
+        for (int j = 0; j < P; j++) {
+            exposureTimes[j] = raf.readDouble();
+            lnT[j] = Math.log(exposureTimes[j]);
+        }
+        this.headerSize = headerSize(P);
+        if (raf.length() != headerSize + (long) N * P) {
+            close();
+            throw new IOException("File " + file + " is incomplete.");
+        }
+    }
+
+    private static long headerSize(int P) {
+        return 4 * 4 + 8L * P;
+    }
+
+    /**
+     * Opens an existing exposure stack file.
+     *
+     * @param file the file
+     * @return the opened exposure stack
+     * @throws IOException if the file could not be read or is not an exposure stack.
+     */
+    public static ExposureStackFile open(File file) throws IOException {
+        return new ExposureStackFile(file);
+    }
+
+    /**
+     * Creates an exposure stack file from picture files. Each picture is decoded once and converted to grey values
+     * stripe by stripe.
+     *
+     * @param file          the file to create (an existing file is overwritten)
+     * @param fileNames     the pictures
+     * @param exposureTimes exposure time of each picture
+     * @return the opened exposure stack
+     * @throws IOException if a picture could not be read or the pictures are not of the same size.
+     */
+    public static ExposureStackFile create(File file, List<String> fileNames, double[] exposureTimes) throws IOException {
+        return create(file, fileNames, exposureTimes, DEFAULT_STRIPE_HEIGHT);
+    }
+
+    /**
+     * Creates an exposure stack file from picture files. Each picture is decoded once and converted to grey values
+     * stripe by stripe.
+     *
+     * @param file          the file to create (an existing file is overwritten)
+     * @param fileNames     the pictures
+     * @param exposureTimes exposure time of each picture
+     * @param stripeHeight  number of rows which are converted and written at once
+     * @return the opened exposure stack
+     * @throws IOException if a picture could not be read or the pictures are not of the same size.
+     */
+    public static ExposureStackFile create(File file, List<String> fileNames, double[] exposureTimes, int stripeHeight) throws IOException {
+        if (fileNames.isEmpty() || fileNames.size() != exposureTimes.length)
+            throw new IllegalArgumentException("An exposure stack needs at least one picture and an exposure time for each picture.");
+        int P = fileNames.size();
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            int width = -1;
+            int height = -1;
+            for (int j = 0; j < P; j++) {
+                ImageInputStream in = ImageIO.createImageInputStream(new File(fileNames.get(j)));
+                if (in == null)
+                    throw new IOException("Picture " + fileNames.get(j) + " could not be read.");
+                try {
+                    Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+                    if (!readers.hasNext())
+                        throw new IOException("Picture " + fileNames.get(j) + " has an unknown format.");
+                    ImageReader reader = readers.next();
+                    try {
+                        reader.setInput(in);
+                        if (j == 0) {
+                            width = reader.getWidth(0);
+                            height = reader.getHeight(0);
+                            writeHeader(raf, width, height, exposureTimes);
+                        } else if (reader.getWidth(0) != width || reader.getHeight(0) != height) {
+                            throw new IOException("Picture " + fileNames.get(j) + " is not of the size " + width + "x" + height);
+                        }
+                        BufferedImage picture = reader.read(0);
+                        for (int y = 0; y < height; y += stripeHeight) {
+                            int h = Math.min(stripeHeight, height - y);
+                            BufferedImage grayscale = new BufferedImage(width, h, BufferedImage.TYPE_BYTE_GRAY);
+                            Graphics g = grayscale.getGraphics();
+                            g.drawImage(picture, 0, -y, null);
+                            g.dispose();
+                            byte[] pixels = (byte[]) grayscale.getData().getDataElements(0, 0, width, h, null);
+                            writeStripe(raf, headerSize(P), (long) y * width, pixels, j, P);
+                        }
+                    } finally {
+                        reader.dispose();
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            if (raf != null)
+                raf.close();
+        }
+        return open(file);
+    }
+
+    /**
+     * Creates an exposure stack file from an exposure stack in memory.
+     *
+     * @param file  the file to create (an existing file is overwritten)
+     * @param stack the exposure stack
+     * @return the opened exposure stack
+     * @throws IOException if the file could not be written.
+     */
+    public static ExposureStackFile create(File file, ExposureStack stack) throws IOException {
+        int P = stack.getImageCount();
+        double[] exposureTimes = new double[P];
+        for (int j = 0; j < P; j++) {
+            exposureTimes[j] = stack.getExposureTime(j);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            writeHeader(raf, stack.getWidth(), stack.getHeight(), exposureTimes);
+            raf.write(stack.getSamples());
+        } finally {
+            raf.close();
+        }
+        return open(file);
+    }
+
+    private static void writeHeader(RandomAccessFile raf, int width, int height, double[] exposureTimes) throws IOException {
+        raf.seek(0);
+        raf.writeInt(MAGIC);
+        raf.writeInt(width);
+        raf.writeInt(height);
+        raf.writeInt(exposureTimes.length);
+        for (double t : exposureTimes) {
+            raf.writeDouble(t);
+        }
+        raf.setLength(headerSize(exposureTimes.length) + (long) width * height * exposureTimes.length);
+    }
+
+    /**
+     * writes the grey values of picture j for the pixels first ... first + pixels.length - 1
+     */
+    private static void writeStripe(RandomAccessFile raf, long headerSize, long first, byte[] pixels, int j, int P) throws IOException {
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, headerSize + first * P, (long) pixels.length * P);
+        for (int i = 0; i < pixels.length; i++) {
+            buffer.put(i * P + j, pixels[i]);
+        }
+    }
+
+    /**
+     * Reads the samples of the pixels first ... first + count - 1 in pixel-major order (the grey value of the pixel
+     * first + i in picture j is stored at i * P + j and has to be read as unsigned value).
+     *
+     * @param first   first pixel
+     * @param count   number of pixels
+     * @param samples array for the samples (at least count * P elements)
+     * @throws IOException if the file could not be read
+     */
+    public void read(int first, int count, byte[] samples) throws IOException {
+        if (first < 0 || count < 0 || first + count > N)
+            throw new IndexOutOfBoundsException("Pixels " + first + " to " + (first + count) + " are not in the stack.");
+        ByteBuffer buffer = ByteBuffer.wrap(samples, 0, count * P);
+        long position = headerSize + (long) first * P;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of " + file);
+            position += read;
+        }
+    }
+
+    /**
+     * closes the file
+     *
+     * @throws IOException if the file could not be closed
+     */
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * exposure time of the picture j
+     *
+     * @param j index of the picture
+     * @return exposure time
+     */
+    public double getExposureTime(int j) {
+        return exposureTimes[j];
+    }
+
+    /**
+     * returns ln(t_j) for each picture. The array is not copied and must not be modified.
+     *
+     * @return logarithm of the exposure times
+     */
+    public double[] getLnT() {
+        return lnT;
+    }
+
+    /**
+     * @return the file of this stack
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return image size (width*height)
+     */
+    public int getImageSize() {
+        return N;
+    }
+
+    /**
+     * @return number of pictures in this stack
+     */
+    public int getImageCount() {
+        return P;
+    }
+
+    /**
+     * @return width of the pictures
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the pictures
+     */
+    public int getHeight() {
+        return height;
+    }
+}
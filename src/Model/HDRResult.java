@@ -7,12 +7,17 @@ import Maths.Vector;
  * This represents a (temp.) result of the calculation of an HDR Picture.
  * It contains the radiance map E and the response curve g.
  * It is used to exchange this information asynchronously between the calculator and the GUI.
+ * <p/>
+ * A result created with @see #fromLogRadiance keeps ln E and calculates E when it is read the first time, so
+ * intermediate results which are only used for g do not need a pass over all pixels.
  *
  * @author sebastianzillessen
  */
 public class HDRResult {
 
-    private final Vector E;
+    private Vector E;
+    // ln E until E is calculated
+    private Vector F;
     private final Vector g;
     private final int height;
     private final int width;
@@ -27,14 +32,33 @@ public class HDRResult {
      * @param height the height of the picture
      */
     public HDRResult(Vector E, Vector g, int width, int height) {
+        this(E, null, g, width, height);
+    }
+
+    private HDRResult(Vector E, Vector F, Vector g, int width, int height) {
         if (g.length() != 256)
             throw new IndexOutOfBoundsException("G should be a vector of 256 elements!");
         this.E = E;
+        this.F = F;
         this.g = g;
         this.width = width;
         this.height = height;
     }
 
+    /**
+     * creates a result of the logarithm of the radiance map. E = exp(F) is calculated when it is read the first time.
+     * The result keeps F, so it must not be changed afterwards.
+     *
+     * @param F      the logarithm of the radiance map (ln E)
+     * @param g      the camera response curve
+     * @param width  the width of the picture
+     * @param height the height of the picture
+     * @return the result
+     */
+    public static HDRResult fromLogRadiance(Vector F, Vector g, int width, int height) {
+        return new HDRResult(null, F, g, width, height);
+    }
+
     /**
      * returns the camera response curve
      *
@@ -49,10 +73,51 @@ public class HDRResult {
      *
      * @return the currently calculated radiance map
      */
-    public Vector getE() {
+    public synchronized Vector getE() {
+        if (E == null) {
+            E = F.exp();
+            F = null;
+        }
         return E;
     }
 
+    /**
+     * copies the radiance values of row y into the given array. If E was not calculated yet (@see #fromLogRadiance)
+     * the values of the row are calculated from ln E without keeping them, so a writer of the radiance map only needs
+     * the memory of one row.
+     *
+     * @param y   row (0 is the top row)
+     * @param row array of the size of the width to fill
+     * @throws java.lang.IllegalArgumentException    if the array does not have the size of the width
+     * @throws java.lang.IndexOutOfBoundsException if the row is outside of the radiance map
+     */
+    public synchronized void getRadianceRow(int y, double[] row) {
+        if (row.length != width)
+            throw new IllegalArgumentException("The row has to have " + width + " values but has " + row.length);
+        Vector values = E != null ? E : F;
+        int offset = y * width;
+        if (y < 0 || offset + width > values.length())
+            throw new IndexOutOfBoundsException("Row " + y + " is outside of the radiance map.");
+        for (int x = 0; x < width; x++) {
+            double v = values.get(offset + x);
+            row[x] = E != null ? v : Math.exp(v);
+        }
+    }
+
+    /**
+     * @return number of values of the radiance map (width * height for a complete result)
+     */
+    public synchronized int getRadianceMapLength() {
+        return E != null ? E.length() : F.length();
+    }
+
+    /**
+     * @return true if the radiance map was already calculated (@see #fromLogRadiance)
+     */
+    public synchronized boolean isRadianceMapCalculated() {
+        return E != null;
+    }
+
     /**
      * Width of the HDRI
      *
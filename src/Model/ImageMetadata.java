@@ -0,0 +1,96 @@
+package Model;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+
+import java.io.File;
+
+/**
+ * Reads the exposure time, the camera model and the ISO setting of a picture from its EXIF data. It does not need a
+ * GUI, so it is used by the @see Ctrl.Controller as well as by the @see Ctrl.BatchRunner.
+ *
+ * @author sebastianzillessen
+ */
+public class ImageMetadata {
+
+    private ImageMetadata() {
+    }
+
+    /**
+     * read exposure time first by trying to extract it from metadata, then by reading the filename without its
+     * extension (1:10.jpg is read as 1/10, @see #parseExposureTime).
+     *
+     * @param f file name to read
+     * @return Exposure time if detectable, otherwise null
+     */
+    public static Float exposureTime(File f) {
+        try {
+            Metadata metadata = ImageMetadataReader.readMetadata(f);
+            ExifSubIFDDirectory directory = metadata.getDirectory(ExifSubIFDDirectory.class);
+            return directory.getFloat(ExifSubIFDDirectory.TAG_EXPOSURE_TIME);
+        } catch (Exception e) {
+            String name = f.getName();
+            int extension = name.lastIndexOf('.');
+            return parseExposureTime(extension > 0 ? name.substring(0, extension) : name);
+        }
+    }
+
+    /**
+     * reads the camera model from the metadata of a picture.
+     *
+     * @param f file name to read
+     * @return camera model if available, otherwise null
+     */
+    public static String cameraModel(File f) {
+        try {
+            Metadata metadata = ImageMetadataReader.readMetadata(f);
+            ExifIFD0Directory directory = metadata.getDirectory(ExifIFD0Directory.class);
+            String model = directory.getString(ExifIFD0Directory.TAG_MODEL);
+            return model == null ? null : model.trim();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * reads the ISO setting from the metadata of a picture.
+     *
+     * @param f file name to read
+     * @return ISO setting if available, otherwise 0
+     */
+    public static int iso(File f) {
+        try {
+            Metadata metadata = ImageMetadataReader.readMetadata(f);
+            ExifSubIFDDirectory directory = metadata.getDirectory(ExifSubIFDDirectory.class);
+            Integer iso = directory.getInteger(ExifSubIFDDirectory.TAG_ISO_EQUIVALENT);
+            return iso == null ? 0 : iso;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * calculates the exposure time of a string: a decimal number (0.2) or a fraction of two decimal numbers (1/5 or
+     * 1:5, which is used in file names, will result to 0.2). Anything else is rejected.
+     *
+     * @param s string to be parsed
+     * @return Exposure time if it is a positive and finite number, otherwise null
+     */
+    public static Float parseExposureTime(String s) {
+        String value = s.trim();
+        int separator = Math.max(value.indexOf('/'), value.indexOf(':'));
+        try {
+            double t;
+            if (separator < 0)
+                t = Double.parseDouble(value);
+            else
+                t = Double.parseDouble(value.substring(0, separator)) / Double.parseDouble(value.substring(separator + 1));
+            float exposureTime = (float) t;
+            return exposureTime > 0 && !Float.isInfinite(exposureTime) ? exposureTime : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
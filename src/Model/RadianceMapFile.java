@@ -0,0 +1,250 @@
+package Model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Writes the radiance map E of an @see HDRResult to a file, so it can be used by other programs (e.g. for
+ * compositing).
+ * <p/>
+ * Two formats are supported:
+ * <ul>
+ * <li>Portable Float Map (PFM, grey scale): a short text header ("Pf", the size and -1.0 for little endian) followed by
+ * one float per pixel, starting with the bottom row.</li>
+ * <li>Radiance RGBE (.hdr): a text header followed by one shared exponent and three 8 bit mantissas per pixel. The rows
+ * are run length encoded per component if the width allows it (8 to 32767 pixels).</li>
+ * </ul>
+ * The maps are written row by row through a small buffer to a file channel, so the memory needed does not depend on
+ * the size of the picture. A result with a lazy radiance map (@see HDRResult#fromLogRadiance) is written without
+ * calculating E for all pixels.
+ *
+ * @author sebastianzillessen
+ */
+public class RadianceMapFile {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // run length encoded rows of the Radiance format need a width in this range
+    private static final int MIN_RLE_WIDTH = 8;
+    private static final int MAX_RLE_WIDTH = 0x7fff;
+    private static final int MIN_RUN = 4;
+    private static final int MAX_RUN = 127;
+    private static final int MAX_DUMP = 128;
+
+    private RadianceMapFile() {
+    }
+
+    /**
+     * writes the radiance map as file, the format is chosen by the extension (.pfm or .hdr).
+     *
+     * @param result the HDR result
+     * @param file   file to write
+     * @throws IOException              if the file could not be written
+     * @throws IllegalArgumentException if the extension is unknown
+     */
+    public static void write(HDRResult result, File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ENGLISH);
+        if (name.endsWith(".pfm"))
+            writePFM(result, file);
+        else if (name.endsWith(".hdr") || name.endsWith(".pic"))
+            writeHDR(result, file);
+        else
+            throw new IllegalArgumentException("Unknown format of " + file + ", use .pfm or .hdr");
+    }
+
+    /**
+     * writes the radiance map as grey scale PFM file.
+     *
+     * @param result the HDR result
+     * @param file   file to write
+     * @throws IOException if the file could not be written
+     */
+    public static void writePFM(HDRResult result, File file) throws IOException {
+        int width = result.getWidth();
+        int height = result.getHeight();
+        checkSize(result);
+        ChannelWriter out = new ChannelWriter(file);
+        try {
+            out.buffer.order(ByteOrder.LITTLE_ENDIAN);
+            out.put(("Pf\n" + width + " " + height + "\n-1.0\n").getBytes(Charset.forName("US-ASCII")));
+            double[] row = new double[width];
+            for (int y = height - 1; y >= 0; y--) {
+                result.getRadianceRow(y, row);
+                for (int x = 0; x < width; x++) {
+                    out.ensure(4);
+                    out.buffer.putFloat((float) row[x]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * writes the radiance map as grey Radiance RGBE file (red, green and blue are E).
+     *
+     * @param result the HDR result
+     * @param file   file to write
+     * @throws IOException if the file could not be written
+     */
+    public static void writeHDR(HDRResult result, File file) throws IOException {
+        int width = result.getWidth();
+        int height = result.getHeight();
+        checkSize(result);
+        ChannelWriter out = new ChannelWriter(file);
+        try {
+            out.put(("#?RADIANCE\nFORMAT=32-bit_rle_rgbe\n\n-Y " + height + " +X " + width + "\n").getBytes(Charset.forName("US-ASCII")));
+            double[] row = new double[width];
+            // the components of a row: mantissa (the same for red, green and blue) and exponent
+            byte[][] rgbe = new byte[4][width];
+            boolean rle = width >= MIN_RLE_WIDTH && width <= MAX_RLE_WIDTH;
+            for (int y = 0; y < height; y++) {
+                result.getRadianceRow(y, row);
+                for (int x = 0; x < width; x++) {
+                    int v = rgbe(row[x]);
+                    rgbe[0][x] = rgbe[1][x] = rgbe[2][x] = (byte) (v >> 8);
+                    rgbe[3][x] = (byte) v;
+                }
+                if (rle) {
+                    out.ensure(4);
+                    out.buffer.put((byte) 2).put((byte) 2).put((byte) (width >> 8)).put((byte) width);
+                    for (byte[] component : rgbe) {
+                        writeRunLengthEncoded(out, component);
+                    }
+                } else {
+                    for (int x = 0; x < width; x++) {
+                        out.ensure(4);
+                        out.buffer.put(rgbe[0][x]).put(rgbe[1][x]).put(rgbe[2][x]).put(rgbe[3][x]);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void checkSize(HDRResult result) {
+        int width = result.getWidth();
+        int height = result.getHeight();
+        if (result.getRadianceMapLength() != width * height)
+            throw new IllegalArgumentException("The radiance map does not have " + width + "x" + height + " values.");
+    }
+
+    /**
+     * converts a radiance value to the shared exponent format of Radiance.
+     *
+     * @param value radiance value
+     * @return mantissa in the bits 8-15, exponent (with offset 128) in the bits 0-7
+     */
+    static int rgbe(double value) {
+        if (!(value >= 1e-32))
+            return 0;
+        // value = m * 2^e with 0.5 <= m < 1
+        int e = Math.getExponent(value) + 1;
+        if (e > 127)
+            return 255 << 8 | 255;
+        int mantissa = Math.min(255, (int) Math.scalb(value * 256.0, -e));
+        return mantissa << 8 | (e + 128);
+    }
+
+    /**
+     * converts the shared exponent format of Radiance back to a radiance value.
+     *
+     * @param mantissa mantissa (0-255)
+     * @param exponent exponent with offset 128 (0-255)
+     * @return radiance value (the center of the interval of the mantissa)
+     */
+    static double fromRGBE(int mantissa, int exponent) {
+        if (exponent == 0)
+            return 0;
+        return Math.scalb(mantissa + 0.5, exponent - 128 - 8);
+    }
+
+    /**
+     * writes one component of a row with the run length encoding of Radiance: a run of equal bytes is written as
+     * 128 + length and the byte, other bytes as length and the bytes.
+     */
+    private static void writeRunLengthEncoded(ChannelWriter out, byte[] data) throws IOException {
+        int n = data.length;
+        int current = 0;
+        while (current < n) {
+            // find the next run of at least MIN_RUN equal bytes
+            int runStart = current;
+            int runLength = 0;
+            int previousRunLength = 0;
+            while (runLength < MIN_RUN && runStart < n) {
+                runStart += runLength;
+                previousRunLength = runLength;
+                runLength = 1;
+                while (runStart + runLength < n && runLength < MAX_RUN && data[runStart] == data[runStart + runLength])
+                    runLength++;
+            }
+            // a short run directly before the long run is written as run as well
+            if (previousRunLength > 1 && previousRunLength == runStart - current) {
+                out.ensure(2);
+                out.buffer.put((byte) (128 + previousRunLength)).put(data[current]);
+                current = runStart;
+            }
+            while (current < runStart) {
+                int dump = Math.min(MAX_DUMP, runStart - current);
+                out.ensure(1 + dump);
+                out.buffer.put((byte) dump).put(data, current, dump);
+                current += dump;
+            }
+            if (runLength >= MIN_RUN) {
+                out.ensure(2);
+                out.buffer.put((byte) (128 + runLength)).put(data[runStart]);
+                current += runLength;
+            }
+        }
+    }
+
+    /**
+     * Buffer which is written to a file channel when it is full.
+     */
+    private static class ChannelWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelWriter(File file) throws IOException {
+            channel = new FileOutputStream(file).getChannel();
+        }
+
+        /**
+         * makes sure that n bytes can be put into the buffer
+         */
+        void ensure(int n) throws IOException {
+            if (buffer.remaining() < n)
+                flush();
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
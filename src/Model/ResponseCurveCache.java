@@ -0,0 +1,292 @@
+package Model;
+
+import Maths.Vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent cache of response curves g.
+ * <p/>
+ * The response curve only depends on the camera (model and ISO setting) and the parameters of the solver (including
+ * the spatial smoothness of the radiance map, which changes F and so g, and the weights of the grey values), so pictures
+ * of the same camera can reuse a curve which was calculated before and only the radiance map has to be calculated.
+ * <p/>
+ * All curves are stored in one small file. The cache holds at most capacity curves; if a new one is added the least
+ * recently used one is removed. The file is rewritten when a curve is added; the order of use and the number of hits
+ * and misses are stored with it, so they are kept between the runs of the application. A request alone does not write
+ * the file.
+ *
+ * @author sebastianzillessen
+ */
+public class ResponseCurveCache {
+    private static final int MAGIC = 0x48445244;
+    // caches of the first version did not store alpha, the robustness of E and the weights, their curves are dropped
+    private static final int MAGIC_VERSION_1 = 0x48445243;
+    private static final int G_LENGTH = 256;
+    /**
+     * number of curves which are kept by default
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Identifies a response curve: the camera and the parameters of the solver which change g.
+     */
+    public static class Key {
+        private final String cameraModel;
+        private final int iso;
+        private final double lambda;
+        private final double mu;
+        private final double alpha;
+        private final WeightTable weights;
+        private final boolean robustnessDataG;
+        private final boolean robustnessSmoothnessE;
+
+        /**
+         * @param cameraModel           camera model of the EXIF data
+         * @param iso                   ISO setting of the EXIF data (0 if unknown)
+         * @param lambda                smoothness scaling factor of g
+         * @param mu                    monotonie scaling factor
+         * @param alpha                 spatial smoothness scaling factor of the radiance map
+         * @param weights               weights of the grey values used by the solver, they are compared by their values
+         * @param robustnessDataG       subquadratic penalty terms in the data term of g
+         * @param robustnessSmoothnessE subquadratic penalty terms in the smoothness term of E
+         */
+        public Key(String cameraModel, int iso, double lambda, double mu, double alpha, WeightTable weights,
+                   boolean robustnessDataG, boolean robustnessSmoothnessE) {
+            if (cameraModel == null || weights == null)
+                throw new IllegalArgumentException("The camera model and the weights are required.");
+            this.cameraModel = cameraModel;
+            this.iso = iso;
+            this.lambda = lambda;
+            this.mu = mu;
+            this.alpha = alpha;
+            this.weights = weights;
+            this.robustnessDataG = robustnessDataG;
+            this.robustnessSmoothnessE = robustnessSmoothnessE;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return cameraModel.equals(key.cameraModel) && iso == key.iso
+                    && Double.compare(lambda, key.lambda) == 0 && Double.compare(mu, key.mu) == 0
+                    && Double.compare(alpha, key.alpha) == 0
+                    && Arrays.equals(weights.getWeights(), key.weights.getWeights())
+                    && robustnessDataG == key.robustnessDataG && robustnessSmoothnessE == key.robustnessSmoothnessE;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = cameraModel.hashCode();
+            result = 31 * result + iso;
+            long l = Double.doubleToLongBits(lambda);
+            result = 31 * result + (int) (l ^ (l >>> 32));
+            l = Double.doubleToLongBits(mu);
+            result = 31 * result + (int) (l ^ (l >>> 32));
+            l = Double.doubleToLongBits(alpha);
+            result = 31 * result + (int) (l ^ (l >>> 32));
+            result = 31 * result + Arrays.hashCode(weights.getWeights());
+            result = 31 * result + (robustnessDataG ? 1 : 0);
+            result = 31 * result + (robustnessSmoothnessE ? 1 : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return cameraModel + " ISO " + iso + " (lambda: " + lambda + ", mu: " + mu + ", alpha: " + alpha + ", " + weights
+                    + (robustnessDataG ? ", robust g" : "") + (robustnessSmoothnessE ? ", robust E" : "") + ")";
+        }
+    }
+
+    private final File file;
+    private final LinkedHashMap<Key, double[]> curves;
+    private int hits = 0;
+    private int misses = 0;
+
+    private ResponseCurveCache(File file, final int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The cache needs a capacity of at least one curve.");
+        this.file = file;
+        // access order: the first entry is the least recently used one
+        this.curves = new LinkedHashMap<Key, double[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, double[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Opens the cache stored in the given file. If the file does not exist the cache is empty and the file is created
+     * on the first access.
+     *
+     * @param file     file of the cache
+     * @param capacity maximum number of curves
+     * @return the cache
+     * @throws IOException if the file could not be read or is not a cache of response curves
+     */
+    public static ResponseCurveCache open(File file, int capacity) throws IOException {
+        ResponseCurveCache cache = new ResponseCurveCache(file, capacity);
+        // a replacement of the file was interrupted after the old file was moved away
+        File backup = cache.backupFile();
+        if (!file.exists() && backup.exists() && !backup.renameTo(file))
+            throw new IOException("Cache " + file + " could not be restored from " + backup + ".");
+        if (file.exists())
+            cache.load();
+        return cache;
+    }
+
+    /**
+     * Returns the cached response curve of the given key and counts a hit or a miss. The counters are written with the
+     * next added curve.
+     *
+     * @param key camera and parameters
+     * @return the response curve or null if it is not cached
+     */
+    public synchronized Vector get(Key key) {
+        double[] g = curves.get(key);
+        if (g == null)
+            misses++;
+        else
+            hits++;
+        return g == null ? null : new Vector(g);
+    }
+
+    /**
+     * Adds a response curve to the cache. If the cache is full the least recently used curve is removed.
+     *
+     * @param key camera and parameters
+     * @param g   the response curve (256 values)
+     * @throws IOException if the cache could not be written
+     */
+    public synchronized void put(Key key, Vector g) throws IOException {
+        if (g.length() != G_LENGTH)
+            throw new IllegalArgumentException("A response curve has " + G_LENGTH + " values.");
+        curves.put(key, g.toArray());
+        store();
+    }
+
+    /**
+     * @return number of requested curves which were cached
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of requested curves which were not cached
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of cached curves
+     */
+    public synchronized int size() {
+        return curves.size();
+    }
+
+    /**
+     * @return the file of this cache
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            int magic = in.readInt();
+            if (magic == MAGIC_VERSION_1)
+                return;
+            if (magic != MAGIC)
+                throw new IOException("File " + file + " is not a cache of response curves.");
+            hits = in.readInt();
+            misses = in.readInt();
+            int count = in.readInt();
+            for (int c = 0; c < count; c++) {
+                String cameraModel = in.readUTF();
+                int iso = in.readInt();
+                double lambda = in.readDouble();
+                double mu = in.readDouble();
+                double alpha = in.readDouble();
+                String name = in.readUTF();
+                double[] w = new double[WeightTable.SIZE];
+                for (int z = 0; z < w.length; z++) {
+                    w[z] = in.readDouble();
+                }
+                Key key = new Key(cameraModel, iso, lambda, mu, alpha, new WeightTable(name, w), in.readBoolean(), in.readBoolean());
+                double[] g = new double[G_LENGTH];
+                for (int z = 0; z < G_LENGTH; z++) {
+                    g[z] = in.readDouble();
+                }
+                curves.put(key, g);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private File backupFile() {
+        return new File(file.getPath() + ".bak");
+    }
+
+    /**
+     * writes the cache to a temporary file which replaces the old one, so an interrupted write does not destroy the
+     * cache. The old file is renamed to a backup first and restored if the temporary file could not be renamed.
+     */
+    private void store() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException("Directory " + parent + " could not be created.");
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(hits);
+            out.writeInt(misses);
+            out.writeInt(curves.size());
+            // from the least to the most recently used curve, so the order is restored on loading
+            for (Map.Entry<Key, double[]> e : curves.entrySet()) {
+                Key key = e.getKey();
+                out.writeUTF(key.cameraModel);
+                out.writeInt(key.iso);
+                out.writeDouble(key.lambda);
+                out.writeDouble(key.mu);
+                out.writeDouble(key.alpha);
+                out.writeUTF(key.weights.getName());
+                for (double w : key.weights.getWeights()) {
+                    out.writeDouble(w);
+                }
+                out.writeBoolean(key.robustnessDataG);
+                out.writeBoolean(key.robustnessSmoothnessE);
+                for (double v : e.getValue()) {
+                    out.writeDouble(v);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        File backup = backupFile();
+        if (backup.exists() && !backup.delete() || file.exists() && !file.renameTo(backup))
+            throw new IOException("Cache " + file + " could not be replaced.");
+        if (!tmp.renameTo(file)) {
+            backup.renameTo(file);
+            throw new IOException("Cache " + file + " could not be replaced.");
+        }
+        backup.delete();
+    }
+}
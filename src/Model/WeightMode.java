@@ -6,12 +6,80 @@ package Model;
  * None:        constant function 1
  * Default :    Triangle function
  * Parabel:     Parabel function
+ * <p/>
+ * The weights of the 256 grey values are calculated once and stored in a @see WeightTable.
  *
  * @author sebastianzillessen
  */
 
 public enum WeightMode {
-    NONE,
-    DEFAULT,
-    PARABEL
+    NONE {
+        @Override
+        double weight(double z) {
+            return 1;
+        }
+    },
+    DEFAULT {
+        @Override
+        double weight(double z) {
+            return triangle(z);
+        }
+    },
+    PARABEL {
+        @Override
+        double weight(double z) {
+            return -(1.0 / 129) * z * z + (127.0 / 64) * z;
+        }
+    };
+
+    private final WeightTable table;
+
+    WeightMode() {
+        double[] w = new double[WeightTable.SIZE];
+        for (int z = 0; z < w.length; z++) {
+            w[z] = weight(z);
+        }
+        table = new WeightTable(name(), w);
+    }
+
+    /**
+     * the weightning function of this mode
+     *
+     * @param z greyvalue
+     * @return weight for the greyvalue z
+     */
+    abstract double weight(double z);
+
+    /**
+     * the default triangle weightning function
+     *
+     * @param z greyvalue
+     * @return weight for the greyvalue z
+     */
+    public static double triangle(double z) {
+        return Math.max((z <= 127) ? z + 1 : 256 - z, 0.0001);
+    }
+
+    /**
+     * @return the table of the weights of this mode
+     */
+    public WeightTable getTable() {
+        return table;
+    }
+
+    /**
+     * @param z grey value (0-255)
+     * @return w(z)
+     */
+    public double w(int z) {
+        return table.w(z);
+    }
+
+    /**
+     * @param z grey value (0-255)
+     * @return w(z) * w(z)
+     */
+    public double w2(int z) {
+        return table.w2(z);
+    }
 }
@@ -0,0 +1,96 @@
+package Model;
+
+/**
+ * Weightning function for g as table of the 256 grey values.
+ * <p/>
+ * The solvers only evaluate the weightning function for grey values 0-255, so w(z) and w(z)^2 are calculated once and
+ * looked up afterwards. Each @see WeightMode has its table; other weightning curves (e.g. a gaussian one or one
+ * derived from the noise of a camera) can be created from their 256 values and set on the solver.
+ *
+ * @author sebastianzillessen
+ */
+public final class WeightTable {
+    /**
+     * number of grey values
+     */
+    public static final int SIZE = 256;
+    // the smallest weight of the triangle function, so no grey value is ignored completely
+    private static final double MIN_WEIGHT = 0.0001;
+
+    private final String name;
+    private final double[] w = new double[SIZE];
+    private final double[] w2 = new double[SIZE];
+
+    /**
+     * Creates a table out of the weights of each grey value.
+     *
+     * @param name    name of the weightning function
+     * @param weights w(z) for z = 0..255 (finite and not negative)
+     */
+    public WeightTable(String name, double[] weights) {
+        if (name == null)
+            throw new IllegalArgumentException("The weightning function needs a name.");
+        if (weights.length != SIZE)
+            throw new IllegalArgumentException("A weightning function has " + SIZE + " values.");
+        for (int z = 0; z < SIZE; z++) {
+            if (Double.isNaN(weights[z]) || Double.isInfinite(weights[z]) || weights[z] < 0)
+                throw new IllegalArgumentException("The weight of grey value " + z + " is " + weights[z]);
+            w[z] = weights[z];
+            w2[z] = weights[z] * weights[z];
+        }
+        this.name = name;
+    }
+
+    /**
+     * creates a gaussian weightning function centered at 127.5. Like the triangle function it does not drop below
+     * 0.0001 and its maximum is 128.
+     *
+     * @param sigma standard deviation in grey values
+     * @return the table of the gaussian function
+     */
+    public static WeightTable gaussian(double sigma) {
+        if (!(sigma > 0))
+            throw new IllegalArgumentException("The standard deviation has to be positive.");
+        double[] w = new double[SIZE];
+        for (int z = 0; z < SIZE; z++) {
+            double d = z - 127.5;
+            w[z] = Math.max(128 * Math.exp(-d * d / (2 * sigma * sigma)), MIN_WEIGHT);
+        }
+        return new WeightTable("GAUSS(" + sigma + ")", w);
+    }
+
+    /**
+     * @param z grey value (0-255)
+     * @return w(z)
+     */
+    public double w(int z) {
+        return w[z];
+    }
+
+    /**
+     * @param z grey value (0-255)
+     * @return w(z) * w(z)
+     */
+    public double w2(int z) {
+        return w2[z];
+    }
+
+    /**
+     * @return copy of the weights w(z) of all grey values
+     */
+    public double[] getWeights() {
+        return w.clone();
+    }
+
+    /**
+     * @return name of the weightning function
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
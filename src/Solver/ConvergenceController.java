@@ -0,0 +1,133 @@
+package Solver;
+
+import Maths.Vector;
+
+/**
+ * Decides when the iterations of the @see IterativeEnergySolver can be stopped.
+ * <p/>
+ * The outer iterations are stopped if the relative decrease of the energy or the largest change of g and F drops
+ * below the tolerances, the inner iterations of g and F if the largest change of g respectively F does. A tolerance of
+ * 0 disables the test, so @see #DISABLED runs all iterations like before.
+ * <p/>
+ * The controller also counts how many iterations were saved.
+ *
+ * @author sebastianzillessen
+ */
+public class ConvergenceController {
+    /**
+     * controller which never stops early
+     */
+    public static final ConvergenceController DISABLED = new ConvergenceController(0, 0);
+
+    private final double energyTolerance;
+    private final double changeTolerance;
+    private int savedOuterIterations = 0;
+    private int savedInnerIterations = 0;
+
+    /**
+     * @param energyTolerance the outer iterations stop if (E_old - E) / E_old drops below this value (0 disables this)
+     * @param changeTolerance the iterations stop if max |g_new - g_old| (and max |F_new - F_old| for the outer
+     *                        iterations) drops below this value (0 disables this)
+     */
+    public ConvergenceController(double energyTolerance, double changeTolerance) {
+        if (energyTolerance < 0 || changeTolerance < 0)
+            throw new IllegalArgumentException("The tolerances must not be negative.");
+        this.energyTolerance = energyTolerance;
+        this.changeTolerance = changeTolerance;
+    }
+
+    /**
+     * tests if the relative decrease of the energy is small enough to stop the outer iterations. An increasing energy
+     * is not treated as convergence.
+     *
+     * @param previousEnergy energy of the previous iteration
+     * @param energy         energy of the current iteration
+     * @return true if converged
+     */
+    public boolean energyConverged(double previousEnergy, double energy) {
+        if (energyTolerance <= 0 || Double.isNaN(previousEnergy) || Double.isNaN(energy))
+            return false;
+        double decrease = previousEnergy - energy;
+        return decrease >= 0 && decrease <= energyTolerance * Math.abs(previousEnergy);
+    }
+
+    /**
+     * tests if the largest change of a vector is small enough to stop the iterations.
+     *
+     * @param previous previous version of the vector
+     * @param current  current version of the vector
+     * @return true if converged
+     */
+    public boolean changeConverged(Vector previous, Vector current) {
+        return changeTolerance > 0 && maxChange(previous, current) <= changeTolerance;
+    }
+
+    /**
+     * returns the largest absolute difference of two vectors
+     *
+     * @param previous previous version of the vector
+     * @param current  current version of the vector
+     * @return max |current_i - previous_i|
+     */
+    public static double maxChange(Vector previous, Vector current) {
+        double max = 0;
+        for (int i = 0; i < current.length(); i++) {
+            max = Math.max(max, Math.abs(current.get(i) - previous.get(i)));
+        }
+        return max;
+    }
+
+    /**
+     * @return true if the change of the vectors is tested
+     */
+    public boolean testsChange() {
+        return changeTolerance > 0;
+    }
+
+    /**
+     * counts outer iterations which were not needed
+     *
+     * @param count number of saved iterations
+     */
+    public synchronized void addSavedOuterIterations(int count) {
+        savedOuterIterations += count;
+    }
+
+    /**
+     * counts inner iterations (of g or F) which were not needed
+     *
+     * @param count number of saved iterations
+     */
+    public synchronized void addSavedInnerIterations(int count) {
+        savedInnerIterations += count;
+    }
+
+    /**
+     * @return number of outer iterations which were saved
+     */
+    public synchronized int getSavedOuterIterations() {
+        return savedOuterIterations;
+    }
+
+    /**
+     * @return number of inner iterations which were saved
+     */
+    public synchronized int getSavedInnerIterations() {
+        return savedInnerIterations;
+    }
+
+    /**
+     * resets the counters of saved iterations
+     */
+    public synchronized void reset() {
+        savedOuterIterations = 0;
+        savedInnerIterations = 0;
+    }
+
+    @Override
+    public String toString() {
+        if (energyTolerance <= 0 && changeTolerance <= 0)
+            return "deaktiviert";
+        return "Energie " + energyTolerance + ", Änderung " + changeTolerance;
+    }
+}
@@ -0,0 +1,66 @@
+package Solver;
+
+/**
+ * Sufficient statistics of the data term of the response curve g: two sums for each of the 256 grey values.
+ * <p/>
+ * For each sample Z_ij = k a weight and a target are added to the bucket k. With the robust data term the weight
+ * is w(k)^2 * phi_ij and the target is (F_i + ln t_j) * phi_ij, without it the weight is 1 (so the weights are the
+ * histogram) and the target is F_i + ln t_j. These sums are all the system of g needs from the pictures, so they can
+ * be collected tile by tile without keeping all samples in memory (@see ResponseCurveSystem).
+ *
+ * @author sebastianzillessen
+ */
+public class GreyValueStatistics {
+    private final double[] weights = new double[256];
+    private final double[] targets = new double[256];
+
+    /**
+     * resets all sums to 0
+     */
+    public void clear() {
+        for (int k = 0; k < 256; k++) {
+            weights[k] = 0;
+            targets[k] = 0;
+        }
+    }
+
+    /**
+     * adds one sample with the grey value k
+     *
+     * @param k      grey value (0-255)
+     * @param weight weight of the sample in the matrix
+     * @param target value of the sample in the right side
+     */
+    public void add(int k, double weight, double target) {
+        weights[k] += weight;
+        targets[k] += target;
+    }
+
+    /**
+     * adds the sums of other statistics to these ones
+     *
+     * @param other statistics of further samples
+     */
+    public void add(GreyValueStatistics other) {
+        for (int k = 0; k < 256; k++) {
+            weights[k] += other.weights[k];
+            targets[k] += other.targets[k];
+        }
+    }
+
+    /**
+     * @param k grey value (0-255)
+     * @return sum of the weights of all samples with the grey value k
+     */
+    public double getWeight(int k) {
+        return weights[k];
+    }
+
+    /**
+     * @param k grey value (0-255)
+     * @return sum of the targets of all samples with the grey value k
+     */
+    public double getTarget(int k) {
+        return targets[k];
+    }
+}
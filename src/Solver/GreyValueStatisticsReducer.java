@@ -0,0 +1,103 @@
+package Solver;
+
+import Maths.ParallelLoop;
+import Maths.RangeTask;
+
+/**
+ * Collects @see GreyValueStatistics over all pixels in parallel.
+ * <p/>
+ * The pixels are split into blocks of BLOCK_SIZE pixels. Each block has its own accumulator, so the blocks can be
+ * processed on different threads without synchronization. At the end the accumulators are added up in the order of
+ * the blocks. The partition does not depend on the number of threads, so neither does the result. Pictures with at
+ * most BLOCK_SIZE pixels give exactly the sums of a sequential scan.
+ * <p/>
+ * The pixels may be accumulated in several calls (e.g. tile by tile), as long as each pixel is accumulated once and
+ * the calls follow the order of the pixels.
+ *
+ * @author sebastianzillessen
+ */
+public class GreyValueStatisticsReducer {
+    /**
+     * number of pixels of one block
+     */
+    public static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Adds the samples of a range of pixels to the statistics.
+     */
+    public interface Accumulator {
+        /**
+         * adds the samples of the pixels from ... to - 1
+         *
+         * @param from       first pixel (inclusive)
+         * @param to         last pixel (exclusive)
+         * @param statistics the statistics to add the samples to
+         */
+        public void accumulate(int from, int to, GreyValueStatistics statistics);
+    }
+
+    private final int n;
+    private final GreyValueStatistics[] blocks;
+
+    /**
+     * Creates a reducer and its accumulators.
+     *
+     * @param n number of pixels
+     */
+    public GreyValueStatisticsReducer(int n) {
+        this.n = n;
+        this.blocks = new GreyValueStatistics[(n + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        for (int b = 0; b < blocks.length; b++) {
+            blocks[b] = new GreyValueStatistics();
+        }
+    }
+
+    /**
+     * resets all accumulators to start a new reduction
+     */
+    public void clear() {
+        for (GreyValueStatistics block : blocks) {
+            block.clear();
+        }
+    }
+
+    /**
+     * Accumulates the pixels first ... first + count - 1. The blocks in this range are processed in parallel.
+     *
+     * @param loop        the threads to use
+     * @param first       first pixel
+     * @param count       number of pixels
+     * @param accumulator adds the samples of the pixels to the statistics
+     */
+    public void accumulate(ParallelLoop loop, final int first, int count, final Accumulator accumulator) {
+        if (first < 0 || count < 0 || first + count > n)
+            throw new IndexOutOfBoundsException("Pixels " + first + " to " + (first + count) + " are not in the range of the reducer.");
+        if (count == 0)
+            return;
+        final int end = first + count;
+        final int firstBlock = first / BLOCK_SIZE;
+        int lastBlock = (end - 1) / BLOCK_SIZE;
+        loop.run(lastBlock - firstBlock + 1, new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int b = firstBlock + from; b < firstBlock + to; b++) {
+                    int start = Math.max(first, b * BLOCK_SIZE);
+                    int stop = Math.min(end, (b + 1) * BLOCK_SIZE);
+                    accumulator.accumulate(start, stop, blocks[b]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds up the accumulators of all blocks.
+     *
+     * @param result statistics for the result (the old content is replaced)
+     */
+    public void reduce(GreyValueStatistics result) {
+        result.clear();
+        for (GreyValueStatistics block : blocks) {
+            result.add(block);
+        }
+    }
+}
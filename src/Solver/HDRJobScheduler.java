@@ -0,0 +1,348 @@
+package Solver;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many HDR calculations (jobs) at the same time.
+ * <p/>
+ * The jobs are queued by their priority (higher first) and in the order they were submitted. A job is started if
+ * fewer than the maximum number of jobs are running and its estimated memory (@see IHDRSolver#estimateMemory, which
+ * grows with N·P) fits into the memory budget together with the running jobs. A job which needs more than the whole
+ * budget is started when no other job is running. Jobs are started strictly in the order of the queue, so a large
+ * job is not starved by smaller ones.
+ * <p/>
+ * The progress of a job is reported to the HDRSolverUpdateListener of its solver. A solver uses the threads of the
+ * default @see Maths.ParallelLoop unless it got its own number of threads (@see IterativeEnergySolver#setParallelism),
+ * e.g. to divide the processors between the jobs which run at the same time.
+ *
+ * @author sebastianzillessen
+ */
+public class HDRJobScheduler {
+    private static HDRJobScheduler defaultScheduler = null;
+
+    private final int maxConcurrent;
+    private final long memoryBudget;
+    private final ExecutorService executor;
+    private final PriorityQueue<Job> queue = new PriorityQueue<Job>(11, new Comparator<Job>() {
+        @Override
+        public int compare(Job a, Job b) {
+            if (a.priority != b.priority)
+                return a.priority > b.priority ? -1 : 1;
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    });
+    private long sequence = 0;
+    private int running = 0;
+    private long usedMemory = 0;
+    private boolean shutdown = false;
+
+    /**
+     * State of a job
+     */
+    public enum State {
+        QUEUED, RUNNING, FINISHED, CANCELLED
+    }
+
+    /**
+     * A calculation which was submitted to the scheduler.
+     */
+    public static class Job {
+        private final HDRJobScheduler scheduler;
+        private final IHDRSolver solver;
+        private final String name;
+        private final int priority;
+        private final long memory;
+        private final long sequence;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private State state = State.QUEUED;
+        private Thread thread = null;
+
+        private Job(HDRJobScheduler scheduler, IHDRSolver solver, String name, int priority, long memory, long sequence) {
+            this.scheduler = scheduler;
+            this.solver = solver;
+            this.name = name;
+            this.priority = priority;
+            this.memory = memory;
+            this.sequence = sequence;
+        }
+
+        public IHDRSolver getSolver() {
+            return solver;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return estimated memory of the job in bytes
+         */
+        public long getMemory() {
+            return memory;
+        }
+
+        public State getState() {
+            synchronized (scheduler) {
+                return state;
+            }
+        }
+
+        /**
+         * @return the last progress in percent which was reported by the solver
+         */
+        public int getProgress() {
+            return solver.getProgress();
+        }
+
+        /**
+         * Cancels the job. A queued job is removed from the queue and the listener of its solver is informed with
+         * HDRSolverUpdateListener#errorOccured. A running solver is cancelled (@see IHDRSolver#cancel), it stops between
+         * two of its iterations. Its thread is interrupted as well.
+         *
+         * @return true if the job was queued or running
+         */
+        public boolean cancel() {
+            return scheduler.cancel(this);
+        }
+
+        /**
+         * waits until the job is finished or cancelled.
+         *
+         * @throws InterruptedException if the waiting thread is interrupted
+         */
+        public void await() throws InterruptedException {
+            done.await();
+        }
+
+        /**
+         * waits until the job is finished or cancelled or the timeout elapsed.
+         *
+         * @param timeout time to wait
+         * @param unit    unit of the timeout
+         * @return true if the job is finished or cancelled
+         * @throws InterruptedException if the waiting thread is interrupted
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return done.await(timeout, unit);
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + getState() + ", " + getProgress() + "%)";
+        }
+    }
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param maxConcurrent maximal number of jobs which run at the same time
+     * @param memoryBudget  memory in bytes which may be used by the running jobs together
+     * @throws java.lang.IllegalArgumentException if maxConcurrent or memoryBudget are smaller than 1
+     */
+    public HDRJobScheduler(int maxConcurrent, long memoryBudget) {
+        if (maxConcurrent < 1)
+            throw new IllegalArgumentException("At least one job has to run at the same time but was " + maxConcurrent);
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("The memory budget has to be positive but was " + memoryBudget);
+        this.maxConcurrent = maxConcurrent;
+        this.memoryBudget = memoryBudget;
+        this.executor = Executors.newFixedThreadPool(maxConcurrent, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "HDRJobScheduler");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Returns the shared instance which is used by @see IHDRSolver#execute. It runs as many jobs as processors are
+     * available within three quarters of the maximal heap size.
+     *
+     * @return shared scheduler
+     */
+    public static synchronized HDRJobScheduler getDefault() {
+        if (defaultScheduler == null) {
+            defaultScheduler = new HDRJobScheduler(Runtime.getRuntime().availableProcessors(), defaultMemoryBudget());
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * @return three quarters of the maximal heap size in bytes
+     */
+    public static long defaultMemoryBudget() {
+        return Runtime.getRuntime().maxMemory() / 4 * 3;
+    }
+
+    /**
+     * submits a solver with the default priority 0.
+     *
+     * @param solver solver to run
+     * @return the job of the solver
+     */
+    public Job submit(IHDRSolver solver) {
+        return submit(solver, solver.getClass().getSimpleName(), 0);
+    }
+
+    /**
+     * submits a solver. It is started as soon as no job with a higher priority is waiting and its memory fits into
+     * the budget.
+     *
+     * @param solver   solver to run
+     * @param name     name of the job (e.g. the name of the bracket)
+     * @param priority priority of the job, jobs with a higher priority are started first
+     * @return the job of the solver
+     * @throws java.lang.IllegalStateException if the scheduler was shut down
+     */
+    public synchronized Job submit(IHDRSolver solver, String name, int priority) {
+        if (shutdown)
+            throw new IllegalStateException("The scheduler was shut down.");
+        Job job = new Job(this, solver, name, priority, solver.estimateMemory(), sequence++);
+        queue.add(job);
+        dispatch();
+        return job;
+    }
+
+    /**
+     * starts the jobs at the head of the queue as long as they fit into the budget.
+     */
+    private void dispatch() {
+        while (!queue.isEmpty() && running < maxConcurrent) {
+            Job next = queue.peek();
+            if (running > 0 && usedMemory + next.memory > memoryBudget)
+                return;
+            queue.poll();
+            next.state = State.RUNNING;
+            running++;
+            usedMemory += next.memory;
+            final Job job = next;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    execute(job);
+                }
+            });
+        }
+    }
+
+    private void execute(Job job) {
+        synchronized (this) {
+            job.thread = Thread.currentThread();
+        }
+        try {
+            if (job.getState() == State.RUNNING)
+                job.solver.run();
+            else
+                job.solver.throwError("Berechnung " + job.name + " wurde abgebrochen.");
+        } finally {
+            synchronized (this) {
+                job.thread = null;
+                // the interruption of a cancelled job must not hit the next job of this thread
+                Thread.interrupted();
+                if (job.state == State.RUNNING)
+                    job.state = State.FINISHED;
+                running--;
+                usedMemory -= job.memory;
+                dispatch();
+                if (shutdown && isIdle())
+                    executor.shutdown();
+                notifyAll();
+            }
+            job.done.countDown();
+        }
+    }
+
+    /**
+     * cancels a job (@see Job#cancel)
+     */
+    boolean cancel(Job job) {
+        synchronized (this) {
+            if (job.state == State.RUNNING) {
+                job.state = State.CANCELLED;
+                job.solver.cancel();
+                if (job.thread != null)
+                    job.thread.interrupt();
+                return true;
+            }
+            if (job.state != State.QUEUED)
+                return false;
+            queue.remove(job);
+            job.state = State.CANCELLED;
+            if (shutdown && isIdle())
+                executor.shutdown();
+            notifyAll();
+        }
+        job.done.countDown();
+        // the listener is called without holding the lock, so it may use the scheduler
+        job.solver.throwError("Berechnung " + job.name + " wurde abgebrochen.");
+        return true;
+    }
+
+    private boolean isIdle() {
+        return queue.isEmpty() && running == 0;
+    }
+
+    /**
+     * waits until all submitted jobs are finished or cancelled.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (!isIdle()) {
+            wait();
+        }
+    }
+
+    /**
+     * No more jobs are accepted. The queued and running jobs are finished, afterwards the threads are stopped.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (isIdle())
+            executor.shutdown();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * @return memory budget in bytes
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return estimated memory in bytes of the running jobs
+     */
+    public synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+
+    /**
+     * @return number of running jobs
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * @return number of waiting jobs
+     */
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+}
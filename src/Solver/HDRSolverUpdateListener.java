@@ -16,6 +16,23 @@ public interface HDRSolverUpdateListener {
      */
     public void updateState(int progress, HDRResult hdrResult);
 
+    /**
+     * method is called from the IHDRSolver after each outer iteration with the value of the energy functional, so the
+     * convergence can be followed.
+     *
+     * @param iteration number of the iteration (starting with 0)
+     * @param energy    energy after this iteration
+     */
+    public void energyUpdated(int iteration, double energy);
+
+    /**
+     * method is called from the IHDRSolver with messages about the calculation (e.g. the current iteration), so the
+     * solver does not depend on a GUI.
+     *
+     * @param message the message
+     */
+    public void log(String message);
+
     /**
      * this method is going to be called if some errors occured in the solver. If available the last calculated result will be returned.
      *
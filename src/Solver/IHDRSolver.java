@@ -1,9 +1,12 @@
 package Solver;
 
+import Model.ExposureStack;
 import Model.HDRResult;
 import Model.Image;
+import Model.WeightMode;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class represents a abstract implementation of an IHDRSolver.
@@ -16,8 +19,16 @@ import java.util.List;
  */
 public abstract class IHDRSolver implements Runnable {
     private HDRSolverUpdateListener update;
-    List<Image> images;
+    final ExposureStack stack;
     private HDRResult lastResult = null;
+    private volatile int progress = 0;
+    // shared with the solvers of a subsample (@see #shareCancellation)
+    private AtomicBoolean cancelled = new AtomicBoolean(false);
+    private ProgressThrottle progressThrottle = ProgressThrottle.EVERY_ITERATION;
+    // iteration and time of the last reported intermediate result (@see #intermediateResultDue)
+    private boolean reported = false;
+    private int reportedIteration;
+    private long reportedAt;
 
     /**
      * accessible constructor for subclasses to init the images
@@ -26,36 +37,148 @@ public abstract class IHDRSolver implements Runnable {
      * @param update the iterative solver update listner. HDRSolverUpdateListener#updateState is fired whenever there is a status change.
      */
     protected IHDRSolver(List<Image> images, HDRSolverUpdateListener update) {
-        this.images = images;
+        this(new ExposureStack(images), update);
+    }
+
+    /**
+     * accessible constructor for subclasses to init the solver with an already packed exposure stack
+     *
+     * @param stack  the exposure stack of this hdr solver.
+     * @param update the iterative solver update listner. HDRSolverUpdateListener#updateState is fired whenever there is a status change.
+     */
+    protected IHDRSolver(ExposureStack stack, HDRSolverUpdateListener update) {
+        this.stack = stack;
         this.update = update;
     }
 
 
     /**
-     * Executes the calculation. HDRSolverUpdateListener#updateState is fired whenever there is a status change.
+     * Executes the calculation in the background. It is queued in the shared @see HDRJobScheduler#getDefault, which
+     * limits the number of calculations running at the same time by their memory footprint.
+     * HDRSolverUpdateListener#updateState is fired whenever there is a status change.
+     *
+     * @return the job of this calculation, which can be used to wait for it or to cancel it.
+     */
+    public HDRJobScheduler.Job execute() {
+        return HDRJobScheduler.getDefault().submit(this);
+    }
+
+    /**
+     * estimates the memory in bytes which is needed by this solver while it is running. It is used by the
+     * @see HDRJobScheduler to decide how many solvers can run at the same time.
+     * <p/>
+     * The default counts the samples of the exposure stack and the radiance map with its logarithm.
+     *
+     * @return estimated memory in bytes
+     */
+    public long estimateMemory() {
+        long n = stack.getImageSize();
+        return n * stack.getImageCount() + 2 * 8 * n;
+    }
+
+    /**
+     * Requests to stop the calculation. The solver stops at its next check between two iterations and informs the
+     * listener with HDRSolverUpdateListener#errorOccured and the last result.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * @return true if the calculation was cancelled (@see #cancel)
+     */
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * checks if the calculation should stop. It is called by the solvers between their iterations.
+     *
+     * @throws SolverCancelledException if the solver was cancelled or its thread was interrupted
+     */
+    protected void checkCancelled() {
+        if (cancelled.get() || Thread.currentThread().isInterrupted())
+            throw new SolverCancelledException("Berechnung wurde abgebrochen.");
+    }
+
+    /**
+     * lets an other solver (e.g. the one of a subsample) stop when this solver is cancelled.
+     *
+     * @param other solver which uses the cancellation of this solver
+     */
+    void shareCancellation(IHDRSolver other) {
+        other.cancelled = cancelled;
+    }
+
+    /**
+     * Sets how often intermediate results are reported to the listener. Creating a result needs a pass over all
+     * pixels, so large pictures should not report each iteration. Default is ProgressThrottle#EVERY_ITERATION.
+     *
+     * @param progressThrottle the throttle
+     */
+    public void setProgressThrottle(ProgressThrottle progressThrottle) {
+        this.progressThrottle = progressThrottle;
+    }
+
+    public ProgressThrottle getProgressThrottle() {
+        return progressThrottle;
+    }
+
+    /**
+     * starts a new calculation, its first intermediate result is reported.
+     */
+    protected void resetProgressThrottle() {
+        reported = false;
+    }
+
+    /**
+     * tests if an intermediate result is reported after the given iteration. The result should only be created if it
+     * is reported.
+     *
+     * @param iteration current outer iteration
+     * @return true if the result should be passed to @see #updateState
+     */
+    protected boolean intermediateResultDue(int iteration) {
+        long now = System.currentTimeMillis();
+        if (reported && !progressThrottle.shouldReport(iteration - reportedIteration, now - reportedAt))
+            return false;
+        reported = true;
+        reportedIteration = iteration;
+        reportedAt = now;
+        return true;
+    }
+
+    /**
+     * @return the last progress in percent which was reported to the listener (100 = finished)
      */
-    public void execute() {
-        Thread t = new Thread(this);
-        t.start();
+    public int getProgress() {
+        return progress;
     }
 
     protected void updateState(int percent, HDRResult h) {
         lastResult = h;
+        progress = percent;
         update.updateState(percent, h);
     }
 
-    protected void throwError(String message) {
-        throwError(message, lastResult);
+    protected void updateEnergy(int iteration, double energy) {
+        if (update != null)
+            update.energyUpdated(iteration, energy);
     }
 
-    protected void throwError(String message, HDRResult res) {
-        update.errorOccured(message, res);
+    protected void log(String message) {
+        if (update != null)
+            update.log(message);
     }
 
-    private IHDRSolver() {
-
+    protected void throwError(String message) {
+        throwError(message, lastResult);
     }
 
+    protected void throwError(String message, HDRResult res) {
+        if (update != null)
+            update.errorOccured(message, res);
+    }
 
     /**
      * Returns the grey value i of picture j
@@ -65,7 +188,7 @@ public abstract class IHDRSolver implements Runnable {
      * @return greyvalue at index i of picture j
      */
     protected int Z(int i, int j) {
-        return images.get(j).getValue(i);
+        return stack.get(i, j);
     }
 
 
@@ -76,16 +199,27 @@ public abstract class IHDRSolver implements Runnable {
      * @return exposure time of picture j
      */
     protected double t(int j) {
-        return images.get(j).getExposureTime();
+        return stack.getExposureTime(j);
+    }
+
+    /**
+     * the weighning function which should be used for the algorithm. Default is a triangle function, it is looked up
+     * in the table of WeightMode#DEFAULT.
+     *
+     * @param z greyvalue (0-255)
+     * @return weight for the greyvalue z
+     */
+    protected double w(int z) {
+        return WeightMode.DEFAULT.w(z);
     }
 
     /**
-     * the weighning function which should be used for the algorithm. Default is a triangle function.
+     * the default triangle weightning function
      *
      * @param z greyvalue
      * @return weight for the greyvalue z
      */
-    protected double w(double z) {
-        return Math.max((z <= 127) ? z + 1 : 256 - z, 0.0001);
+    static double triangle(double z) {
+        return WeightMode.triangle(z);
     }
 }
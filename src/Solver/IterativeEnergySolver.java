@@ -1,11 +1,15 @@
 package Solver;
 
-import Ctrl.Controller;
 import Maths.*;
+import Model.ExposureStack;
 import Model.HDRResult;
 import Model.Image;
 import Model.WeightMode;
+import Model.WeightTable;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -20,19 +24,50 @@ public class IterativeEnergySolver extends IHDRSolver {
     private final boolean robustnessDataG;
     private final boolean robustnessSmoothnessE;
     private double alpha;
-    private static final double EPSILON_2 = 0.0001d;
+    static final double EPSILON_2 = 0.0001d;
+    // number of pixels of which the data term of the energy is summed up together
+    private static final int ENERGY_BLOCK_SIZE = 1 << 14;
     private final int iterations;
     private final int N;
     private final int P;
     private WeightMode weightMode;
+    private WeightTable weights;
     private double mu = 50;
-    private BandMatrix dt, d, weight;
     private final double lambda;
 
-    private int[] histogram;
-    private int energySteps = 2;
     private double[][] phi_data_g = null;
+    // phi_data_g with single precision, stored pixel by pixel (i * P + j)
+    private float[] phi_data_g_float = null;
+    private boolean floatPrecision = false;
     private double ln_t[];
+    private ParallelLoop parallelLoop = ParallelLoop.getDefault();
+    private ResponseCurveSystem gSystem;
+    private final GreyValueStatistics gStatistics = new GreyValueStatistics();
+    private final GreyValueStatisticsReducer gReducer;
+    private final EquationSolverReport fReport = new EquationSolverReport();
+    private EquationSolverAlgorithm smoothnessAlgorithm = EquationSolverAlgorithm.CG_INCOMPLETE_CHOLESKY;
+    // sum of w(Z_ij)^2 over all pictures per pixel (the data term of the system with spatial smoothness)
+    private double[] smoothnessDataWeights = null;
+    // subsampling of the estimation of g (0 disables this)
+    private int samplesPerGreyValue = 0;
+    private boolean compareSubsampling = false;
+    private int sampleSize = 0;
+    private double subsamplingDifference = Double.NaN;
+    // response curve which is used instead of estimating it (null if g is estimated)
+    private Vector fixedG = null;
+    private ConvergenceController convergence = ConvergenceController.DISABLED;
+    // energy after each outer iteration of the last calculation
+    private double[] energyTrace = new double[0];
+    // the residuals of all samples were last calculated for these versions of g and F (@see #updateResiduals)
+    private Vector residualG = null;
+    private Vector residualF = null;
+    private double residualDataTerm;
+    private double[] blockDataTerm;
+    private SolverWorkspace workspace;
+    // the state is written after every checkpointInterval outer iterations (null disables this)
+    private File checkpointFile = null;
+    private int checkpointInterval = 1;
+    private boolean resume = false;
 
 
     /**
@@ -58,23 +93,47 @@ public class IterativeEnergySolver extends IHDRSolver {
                                  boolean robustnessSmoothnessE,
                                  WeightMode weightMode,
                                  double alpha, HDRSolverUpdateListener update) {
-        super(images, update);
-        this.energySteps = Math.max(iterations / 3, 1);
+        this(new ExposureStack(images), lambda, iterations, mu, robustnessDataG, robustnessSmoothnessE, weightMode, alpha, update);
+    }
+
+    /**
+     * Constructor to init a generation of an HDRI from an already packed exposure stack.
+     *
+     * @param stack                 the exposure stack with the different exposure times
+     * @param lambda                smoothness scaling factor           (0 disables this)
+     * @param iterations            number of iterations to use in inner and outer iterations
+     * @param mu                    monotonie scaling factor                             (0 disables this)
+     * @param robustnessDataG       enable subquadratic penalty terms in the data term of g
+     * @param robustnessSmoothnessE enable subquadratic penalty terms in the smoothness term for the radiance map
+     * @param weightMode            which weight mode to use (@see WeightMode). Default ist WeightMode#normal
+     * @param alpha                 smoothness term of E scaling factor (0 disables this)
+     * @param update                the HDRSolverUpdateListener to be called on status changes.
+     */
+    public IterativeEnergySolver(ExposureStack stack,
+                                 double lambda,
+                                 int iterations,
+                                 double mu,
+                                 boolean robustnessDataG,
+                                 boolean robustnessSmoothnessE,
+                                 WeightMode weightMode,
+                                 double alpha, HDRSolverUpdateListener update) {
+        super(stack, update);
         this.lambda = lambda;
         this.alpha = alpha;
-        this.N = images.get(0).getImageSize();
-        this.P = images.size();
+        this.N = stack.getImageSize();
+        this.P = stack.getImageCount();
         this.iterations = iterations;
         this.mu = mu;
         this.robustnessDataG = robustnessDataG;
         this.robustnessSmoothnessE = robustnessSmoothnessE;
         this.weightMode = weightMode;
-        initLnT(images);
-        // initialize robustness function with "1"
-        initPhiData();
-        generateOverallHistogramm();
-        initWeightMatrix();
-        initDerivativeMatrices();
+        this.weights = weightMode.getTable();
+        this.ln_t = stack.getLnT();
+        // the factors of the robust data term are allocated with the first residuals (@see #updateResiduals), so a
+        // solver which waits in the @see HDRJobScheduler does not hold them
+        gSystem = new ResponseCurveSystem(weights.getWeights(), lambda, mu, robustnessDataG);
+        gReducer = new GreyValueStatisticsReducer(N);
+        workspace = new SolverWorkspace(N, false);
     }
 
     /**
@@ -87,36 +146,350 @@ public class IterativeEnergySolver extends IHDRSolver {
         try {
             // start value for g, lets assume we just use a linear equotation
             long started = System.currentTimeMillis();
-            Vector g = new Vector(256);
-            Vector F = new Vector(N);
-
-            final double[] energy = new double[iterations / energySteps];
-            g = initG(g);
-
-
-            double[] w = new double[256];
-            for (int i = 0; i < w.length; i++) {
-                w[i] = w(i);
-            }
-            for (int i = 0; i < F.length(); i++)
-                F.set(i, 1);
-
-            for (int i = 0; i < iterations; i++) {
-                Controller.getInstance().getDisplay().append("Running iteration " + i + " out of " + iterations);
-                updateState(100 * i / iterations, new HDRResult(F.exp(), g, images.get(0).getWidth(), images.get(0).getHeight()));
-                F = calculateF(g, F, i);
-                g = calculateG(F, g, i);
-                try {
-                    energy[i / energySteps] = calculateEnergy(F, g);
-                } catch (Exception e) {
+            resetProgressThrottle();
+            Vector g = initG(workspace.nextG(null));
+            Vector F = initF(workspace.F());
+            if (fixedG != null) {
+                g = fixedG.copy();
+                log("  Using the given response curve g, only F is calculated");
+                F = calculateFWithFixedG(g, F);
+            } else if (samplesPerGreyValue > 0) {
+                if (intermediateResultDue(0))
+                    updateState(0, intermediateResult(g, F));
+                g = estimateGOnSample();
+                // the comparison with all pixels uses the buffer of F
+                if (compareSubsampling)
+                    F = initF(F);
+                String report = "  Subsampling: g estimated on " + sampleSize + " of " + N + " pixels";
+                if (compareSubsampling)
+                    report += ", max |g - g_full| = " + subsamplingDifference;
+                log(report);
+                if (intermediateResultDue(1))
+                    updateState(50, intermediateResult(g, F));
+                F = calculateFWithFixedG(g, F);
+            } else {
+                convergence.reset();
+                double[] energy = new double[iterations];
+                int done = 0;
+                double previousEnergy = Double.NaN;
+                SolverCheckpoint checkpoint = resume ? readCheckpoint() : null;
+                if (checkpoint != null) {
+                    checkpoint.getG().copyTo(g);
+                    checkpoint.getF().copyTo(F);
+                    invalidateResiduals();
+                    // the number of iterations is part of the parameters, so the checkpoint has at most as many
+                    done = checkpoint.getIteration();
+                    System.arraycopy(checkpoint.getEnergy(), 0, energy, 0, done);
+                    if (done > 0)
+                        previousEnergy = energy[done - 1];
+                    log("  Resuming after iteration " + done + " from " + checkpointFile);
                 }
+                for (int i = done; i < iterations; i++) {
+                    checkCancelled();
+                    log("Running iteration " + i + " out of " + iterations);
+                    if (intermediateResultDue(i))
+                        updateState(100 * i / iterations, intermediateResult(g, F));
+                    // g and F are changed in place, so the previous versions have to be copied
+                    Vector previousF = null;
+                    Vector previousG = null;
+                    if (convergence.testsChange()) {
+                        previousF = workspace.previousF();
+                        F.copyTo(previousF);
+                        previousG = workspace.previousG();
+                        g.copyTo(previousG);
+                    }
+                    F = calculateF(g, F, i);
+                    if (alpha > 0)
+                        log("  Spatial smoothness of F: " + fReport);
+                    g = calculateG(F, g, i);
+                    energy[i] = calculateEnergy(F, g);
+                    done = i + 1;
+                    updateEnergy(i, energy[i]);
+                    boolean converged = convergence.energyConverged(previousEnergy, energy[i])
+                            || convergence.changeConverged(previousG, g) && convergence.changeConverged(previousF, F);
+                    if (checkpointFile != null && (done % checkpointInterval == 0 || done == iterations || converged))
+                        writeCheckpoint(done, energy, g, F);
+                    if (converged) {
+                        convergence.addSavedOuterIterations(iterations - done);
+                        break;
+                    }
+                    previousEnergy = energy[i];
+                }
+                energyTrace = Arrays.copyOf(energy, done);
+                log("  Converged after " + done + " of " + iterations
+                        + " iterations, saved " + convergence.getSavedOuterIterations() + " outer and "
+                        + convergence.getSavedInnerIterations() + " inner iterations");
             }
             long finished = System.currentTimeMillis();
-            Controller.getInstance().getDisplay().append("Took: " + (finished - started) / 1000.0 / 60.0 + "min");
-            updateState(100, new HDRResult(F.exp(), g, images.get(0).getWidth(), images.get(0).getHeight()));
+            log("Took: " + (finished - started) / 1000.0 / 60.0 + "min");
+            // the result keeps F, the next calculation uses a new buffer
+            workspace.releaseF(F);
+            updateState(100, HDRResult.fromLogRadiance(F, g.copy(), stack.getWidth(), stack.getHeight()));
+        } catch (SolverCancelledException e) {
+            log(e.getMessage());
+            throwError(e.getMessage());
         } catch (Exception e) {
-            throwError("Unbekannter Fehler aufgetreten: \n" + e.getMessage());
+            // an interrupted parallel loop fails with its own exception
+            if (isCancelled() || Thread.currentThread().isInterrupted())
+                throwError("Berechnung wurde abgebrochen.");
+            else
+                throwError("Unbekannter Fehler aufgetreten: \n" + e.getMessage());
+        }
+    }
+
+    /**
+     * creates an intermediate result. F is changed in place by the next iteration, so the result keeps a copy of it;
+     * E is only calculated if the listener reads it.
+     */
+    private HDRResult intermediateResult(Vector g, Vector F) {
+        return HDRResult.fromLogRadiance(F.copy(), g.copy(), stack.getWidth(), stack.getHeight());
+    }
+
+    /**
+     * reads the checkpoint to resume from.
+     *
+     * @return the checkpoint or null if there is none which fits to the pictures
+     */
+    private SolverCheckpoint readCheckpoint() {
+        if (checkpointFile == null || !checkpointFile.isFile())
+            return null;
+        try {
+            SolverCheckpoint checkpoint = SolverCheckpoint.read(checkpointFile);
+            if (!checkpoint.matches(stack.getWidth(), stack.getHeight(), ln_t))
+                log("  Checkpoint " + checkpointFile + " belongs to other pictures, starting from the beginning");
+            else if (!checkpoint.matches(checkpointParameters()))
+                log("  Checkpoint " + checkpointFile + " was calculated with other parameters, starting from the beginning");
+            else
+                return checkpoint;
+        } catch (IOException e) {
+            log("  Checkpoint could not be read, starting from the beginning: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @return the parameters of this solver which are stored in a checkpoint
+     */
+    private SolverCheckpoint.Parameters checkpointParameters() {
+        return new SolverCheckpoint.Parameters(lambda, mu, alpha, iterations, weights.getWeights(), robustnessDataG,
+                robustnessSmoothnessE, smoothnessAlgorithm, floatPrecision);
+    }
+
+    /**
+     * writes the state after an outer iteration. An error is only logged, so the calculation goes on.
+     */
+    private void writeCheckpoint(int done, double[] energy, Vector g, Vector F) {
+        try {
+            new SolverCheckpoint(stack.getWidth(), stack.getHeight(), ln_t, checkpointParameters(), done, energy, g, F)
+                    .write(checkpointFile);
+        } catch (IOException e) {
+            log("  Checkpoint could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the alternating iterations without reporting the progress.
+     *
+     * @return the response curve g
+     */
+    Vector estimateG() {
+        Vector g = initG(workspace.nextG(null));
+        Vector F = initF(workspace.F());
+        for (int i = 0; i < iterations; i++) {
+            checkCancelled();
+            F = calculateF(g, F, i);
+            g = calculateG(F, g, i);
+        }
+        return g.copy();
+    }
+
+    /**
+     * Calculates F for a fixed response curve without reporting the progress.
+     *
+     * @param g the response curve
+     * @return the radiance map F (ln E)
+     */
+    Vector estimateF(Vector g) {
+        return calculateFWithFixedG(g, initF(workspace.F())).copy();
+    }
+
+    /**
+     * Estimates g on a stratified sample of the pixels. The sample is a single row, so the spatial smoothness of F
+     * is not used for it. The data term only sums over the sample, so lambda and mu are scaled by the size of the
+     * sample to keep the balance between the terms.
+     *
+     * @return the response curve g of the sample
+     */
+    Vector estimateGOnSample() {
+        StratifiedSample sample = new StratifiedSample(stack, samplesPerGreyValue);
+        sampleSize = sample.size();
+        double scale = (double) sample.size() / N;
+        IterativeEnergySolver sampleSolver = new IterativeEnergySolver(sample.getStack(), lambda * scale, iterations, mu * scale,
+                robustnessDataG, false, weightMode, 0, null);
+        sampleSolver.setWeightTable(weights);
+        sampleSolver.setFloatPrecision(floatPrecision);
+        sampleSolver.parallelLoop = parallelLoop;
+        sampleSolver.convergence = convergence;
+        shareCancellation(sampleSolver);
+        Vector g = sampleSolver.estimateG();
+        subsamplingDifference = Double.NaN;
+        if (compareSubsampling)
+            subsamplingDifference = g.subtract(estimateG()).absMax();
+        return g;
+    }
+
+    /**
+     * Calculates F for all pixels with a fixed response curve. Without robustness F does not depend on its old value,
+     * so one step is enough, otherwise the weights of the robust terms are updated in each step.
+     *
+     * @param g the response curve
+     * @param F start value of F
+     * @return the radiance map F (ln E)
+     */
+    private Vector calculateFWithFixedG(Vector g, Vector F) {
+        if (!robustnessDataG && alpha == 0)
+            return solveFDefault(g, F);
+        int steps = (robustnessDataG || robustnessSmoothnessE) ? iterations : 1;
+        for (int i = 0; i < steps; i++) {
+            checkCancelled();
+            F = calculateF(g, F, i);
         }
+        return F;
+    }
+
+    /**
+     * Sets the number of threads which are used for the per pixel calculations. The results do not depend on the
+     * number of threads. Default is the shared @see ParallelLoop#getDefault which uses all available processors.
+     *
+     * @param parallelism number of threads (1 disables the parallel execution)
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelLoop = new ParallelLoop(parallelism);
+    }
+
+    /**
+     * Enables single precision for the per pixel state: F (ln E) and the coefficients phi of the robust data term are
+     * stored as float, which halves the memory and the memory bandwidth of the loops over the pixels. All
+     * calculations are still done in double and the system of g (256 values) is kept in double. The solvers of the
+     * spatial smoothness work in double, their result is stored in F with single precision.
+     *
+     * @param floatPrecision true to store the per pixel state with single precision
+     */
+    public void setFloatPrecision(boolean floatPrecision) {
+        if (floatPrecision == this.floatPrecision)
+            return;
+        this.floatPrecision = floatPrecision;
+        phi_data_g = null;
+        phi_data_g_float = null;
+        workspace = new SolverWorkspace(N, floatPrecision);
+        invalidateResiduals();
+    }
+
+    /**
+     * @return true if the per pixel state is stored with single precision
+     */
+    public boolean isFloatPrecision() {
+        return floatPrecision;
+    }
+
+    /**
+     * Sets the algorithm which solves the system of the spatial smoothness of F (alpha > 0). Default is
+     * CG_INCOMPLETE_CHOLESKY, MULTIGRID needs less iterations if the smoothness term dominates the data term.
+     * SOR and CG_JACOBI work matrix free (@see NeighbourhoodOperator), so the five diagonales of the system are
+     * not stored, which allows larger pictures.
+     *
+     * @param algorithm SOR, SOR_RED_BLACK (on the threads of this solver), CG_JACOBI, CG_INCOMPLETE_CHOLESKY or MULTIGRID
+     */
+    public void setSmoothnessAlgorithm(EquationSolverAlgorithm algorithm) {
+        this.smoothnessAlgorithm = algorithm;
+    }
+
+    /**
+     * Writes the state (g, F and the energies) to a checkpoint file after every interval outer iterations and after
+     * the last one (@see SolverCheckpoint). Together with @see #setResume a long calculation can be continued after
+     * it was cancelled or the machine was restarted. Only the alternating estimation of g and F is checkpointed.
+     *
+     * @param file     checkpoint file (null disables checkpoints)
+     * @param interval number of outer iterations between two checkpoints
+     * @throws java.lang.IllegalArgumentException if interval is smaller than 1
+     */
+    public void setCheckpoint(File file, int interval) {
+        if (interval < 1)
+            throw new IllegalArgumentException("The checkpoint interval has to be at least 1 but was " + interval);
+        this.checkpointFile = file;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * If enabled the calculation starts from the checkpoint file (@see #setCheckpoint) if it exists, belongs to the
+     * same pictures and was calculated with the same parameters (including the number of iterations and the algorithm
+     * of the smoothness term). Otherwise it starts from the beginning.
+     *
+     * @param resume true to resume from the last checkpoint
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * Enables the estimation of g on a @see StratifiedSample of the pixels. g is calculated with the alternating
+     * iterations on the sample only (without spatial smoothness), afterwards F is calculated once for all pixels
+     * with the fixed g. As g has only 256 unknowns a few thousand pixels are enough, so the runtime mostly depends
+     * on the single calculation of F for large pictures.
+     *
+     * @param samplesPerGreyValue       number of occurrences per grey value which are chosen (0 disables this)
+     * @param compareWithFullEstimation additionally estimates g on all pixels and reports the largest difference
+     *                                  (@see #getSubsamplingDifference). This takes as long as without subsampling.
+     */
+    public void setSubsampling(int samplesPerGreyValue, boolean compareWithFullEstimation) {
+        if (samplesPerGreyValue < 0)
+            throw new IllegalArgumentException("The number of samples per grey value must not be negative.");
+        this.samplesPerGreyValue = samplesPerGreyValue;
+        this.compareSubsampling = compareWithFullEstimation;
+    }
+
+    /**
+     * Sets the controller which stops the outer and inner iterations early if they converged. Default is
+     * @see ConvergenceController#DISABLED which runs all iterations.
+     *
+     * @param convergence the convergence controller
+     */
+    public void setConvergenceController(ConvergenceController convergence) {
+        this.convergence = convergence == null ? ConvergenceController.DISABLED : convergence;
+    }
+
+    /**
+     * @return the energy after each outer iteration of the last calculation
+     */
+    public double[] getEnergyTrace() {
+        return energyTrace.clone();
+    }
+
+    /**
+     * Uses the given response curve (e.g. of a @see Model.ResponseCurveCache) instead of estimating it, so only F
+     * is calculated.
+     *
+     * @param g the response curve (256 values) or null to estimate it
+     */
+    public void setFixedG(Vector g) {
+        if (g != null && g.length() != 256)
+            throw new IllegalArgumentException("A response curve has 256 values.");
+        this.fixedG = g;
+    }
+
+    /**
+     * @return number of pixels g was estimated on in the last calculation with subsampling (0 if not used)
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return largest difference between g of the sample and g of all pixels in the last calculation with
+     *         subsampling (NaN if it was not compared)
+     */
+    public double getSubsamplingDifference() {
+        return subsamplingDifference;
     }
 
     /**
@@ -132,92 +505,111 @@ public class IterativeEnergySolver extends IHDRSolver {
         s += " Iterationen:          " + iterations + "\n";
         s += " Images:               " + P + "\n";
         s += " Image-Size:           " + N + "\n";
-        s += " Weight-Mode:          " + weightMode.toString() + "\n";
+        s += " Weight-Mode:          " + weights.toString() + "\n";
         s += " Räumliche Glattheit:  " + (alpha > 0 ? alpha : "deaktiviert") + "\n";
         s += " Robustheit Datenterm :" + (robustnessDataG ? "aktiv" : "deaktiv") + "\n";
         s += " Robustheit Glattheit E:" + (robustnessSmoothnessE ? "aktiv" : "deaktiv") + "\n";
+        s += " Threads:              " + parallelLoop.getParallelism() + "\n";
+        s += " Konvergenz:           " + convergence + "\n";
+        s += " Zwischenergebnisse:   " + getProgressThrottle() + "\n";
+        if (fixedG != null)
+            s += " Antwortkurve:         vorgegeben\n";
+        s += " Subsampling:          " + (samplesPerGreyValue > 0 ? samplesPerGreyValue + " Pixel je Grauwert" : "deaktiviert") + "\n";
+        if (alpha > 0)
+            s += " Glattheit Löser:      " + smoothnessAlgorithm + "\n";
 
         return s;
     }
 
 
     /**
-     * Gets the weightning value for a given grey value. It uses the specified weightning mode given in the constructur.
+     * Gets the weightning value for a given grey value. It is looked up in the table of the weightning mode given in
+     * the constructor (@see #setWeightTable).
      *
-     * @param z greyvalue
+     * @param z greyvalue (0-255)
      * @return Weightning value
      */
     @Override
-    protected double w(double z) {
-        if (this.weightMode == WeightMode.NONE)
-            return 1;
-        else if (this.weightMode == WeightMode.PARABEL)
-            return -(1.0 / 129) * z * z + (127.0 / 64) * z;
-        else
-            return super.w(z);
+    protected double w(int z) {
+        return weights.w(z);
     }
 
     /**
-     * initiates the factors for robust functions
+     * Replaces the weightning function of the weightning mode by another one, e.g. a gaussian or custom curve
+     * (@see WeightTable).
+     *
+     * @param weights table of the weights
      */
-    private void initPhiData() {
-        if (phi_data_g == null)
-            phi_data_g = new double[images.get(0).getImageSize()][ln_t.length];
-        for (int i = 0; i < phi_data_g.length; i++) {
-            for (int j = 0; j < ln_t.length; j++) {
-                phi_data_g[i][j] = 1;
-            }
-        }
+    public void setWeightTable(WeightTable weights) {
+        if (weights == null)
+            throw new IllegalArgumentException("The weightning function is required.");
+        this.weights = weights;
+        gSystem = new ResponseCurveSystem(weights.getWeights(), lambda, mu, robustnessDataG);
+        smoothnessDataWeights = null;
+        invalidateResiduals();
     }
 
     /**
-     * Generates the required derivative matrices for the calculation
+     * estimates the memory of a running calculation: the samples, F and its previous version, the coefficients of the
+     * robust data term and for alpha &gt; 0 the band matrix of the neighbourhood with its preconditioner and the
+     * vectors of the equation solver.
+     *
+     * @return estimated memory in bytes
      */
-    private void initDerivativeMatrices() {
-        int size = 256;
-        d = new BandMatrix(size, new int[]{-1, 0});
-        d.set(0, 0, 0);
-        for (int row = 1; row < size; row++) {
-            d.set(row, row - 1, -1);
-            d.set(row, row, 1);
-        }
-        dt = d.transpose();
+    @Override
+    public long estimateMemory() {
+        long n = N;
+        int value = floatPrecision ? 4 : 8;
+        long bytes = super.estimateMemory() + 2 * value * n;
+        if (robustnessDataG)
+            // double[N][P] needs an array header per pixel
+            bytes += floatPrecision ? 4 * n * P : n * (16 + 8 * P);
+        if (alpha > 0)
+            bytes += (2 * 5 + 8) * 8 * n;
+        return bytes;
     }
 
     /**
-     * inits the weight matrix. it is a diagonale matrix with the weights of w(z) on each entry
+     * @return table of the weights which are used
      */
-    private void initWeightMatrix() {
-        weight = new BandMatrix(256, new int[]{0});
-        for (int i = 0; i < weight.cols(); i++) {
-            weight.set(i, i, w(i));
-        }
+    public WeightTable getWeightTable() {
+        return weights;
     }
 
     /**
-     * Generates a histogram of all images in this serie.
+     * initiates the factors for robust functions
      */
-    private void generateOverallHistogramm() {
-        // generate histogram over all pictures
-        int[] d = images.get(0).getHistogram();
-        for (int i = 1; i < P; i++) {
-            for (int j = 0; j < d.length; j++) {
-                d[j] += images.get(i).getHistogram()[j];
+    private void initPhiData() {
+        if (floatPrecision) {
+            if (phi_data_g_float == null)
+                phi_data_g_float = new float[N * P];
+            Arrays.fill(phi_data_g_float, 1);
+            return;
+        }
+        if (phi_data_g == null)
+            phi_data_g = new double[N][P];
+        for (int i = 0; i < phi_data_g.length; i++) {
+            for (int j = 0; j < ln_t.length; j++) {
+                phi_data_g[i][j] = 1;
             }
         }
-        histogram = d;
     }
 
     /**
-     * generates a array to store the ln(t_j) in it
-     *
-     * @param images
+     * returns the coefficient of the robust data term of sample j of pixel i
      */
-    private void initLnT(List<Image> images) {
-        ln_t = new double[images.size()];
-        for (int j = 0; j < ln_t.length; j++) {
-            ln_t[j] = Math.log(t(j));
-        }
+    private double phi_data_g(int i, int j) {
+        return floatPrecision ? phi_data_g_float[i * P + j] : phi_data_g[i][j];
+    }
+
+    /**
+     * sets the coefficient of the robust data term of sample j of pixel i
+     */
+    private void set_phi_data_g(int i, int j, double phi) {
+        if (floatPrecision)
+            phi_data_g_float[i * P + j] = (float) phi;
+        else
+            phi_data_g[i][j] = phi;
     }
 
     /**
@@ -227,45 +619,7 @@ public class IterativeEnergySolver extends IHDRSolver {
      * @return w(z) * w(z)
      */
     private double w2(int z) {
-        return w(z) * w(z);
-    }
-
-    /**
-     * This method constructs a fourth derivative matrix approximation.
-     *
-     * @return fourth matrix derivative
-     */
-    private BandMatrix buildDerivativeMatrix() {
-        int n = 256;
-        BandMatrix d = new BandMatrix(n, new int[]{-2, -1, 0, 1, 2});
-        d.set(0, 0, +1 * w2(1));
-        d.set(0, 1, -2 * w2(1));
-        d.set(0, 2, +1 * w2(1));
-        // second row
-        d.set(1, 0, -2 * w2(1));
-        d.set(1, 1, 4 * w2(1) + w2(2));
-        d.set(1, 2, -2 * (w2(1) + w2(2)));
-        d.set(1, 3, w2(2));
-        // diagonale
-        for (int row = 2; row < n - 2; row++) {
-            // default matrixG 2nd degree on the base.
-            d.set(row, row - 2, w2(row - 1));
-            d.set(row, row - 1, -2 * (w2(row - 1) + w2(row)));
-            d.set(row, row, w2(row - 1) + 4 * w2(row) + w2(row + 1));
-            d.set(row, row + 1, -2 * (w2(row) + w2(row + 1)));
-            d.set(row, row + 2, w2(row + 1));
-        }
-        // second last row
-        d.set(n - 2, n - 4, w2(253));
-        d.set(n - 2, n - 3, -2 * (w2(253) + w2(254)));
-        d.set(n - 2, n - 2, w2(253) + 4 * w2(254));
-        d.set(n - 2, n - 1, -2 * w2(254));
-
-        // last row
-        d.set(n - 1, n - 3, w2(254));
-        d.set(n - 1, n - 2, -2 * w2(254));
-        d.set(n - 1, n - 1, w2(254));
-        return d.mult(2 * lambda);
+        return weights.w2(z);
     }
 
     /**
@@ -281,109 +635,69 @@ public class IterativeEnergySolver extends IHDRSolver {
         if (robustnessDataG || mu > 0) {
             MAX_ITERATIONS = iterations;
         }
+        // without robustness the statistics only depend on F, which does not change while g is calculated
+        if (!robustnessDataG)
+            collectGStatistics(F, gStatistics);
         for (int iterations = 0; iterations < MAX_ITERATIONS; iterations++) {
+            checkCancelled();
             //update_phi_smooth(g);
-            update_phi_data(g, F);
-            BandMatrix m = buildDerivativeMatrix();
-            Vector b = initializeB(F, g);
-            // add on the diagonale the Matrix with the sums of each grayvalue in the picture.
-            // Entry (k,k) says how many time the grayvalue k is present overall pictures and
-            // is added to the derivate matrix above
-            setupDataTerm(m);
-
-            if (mu > 0) {
-                m = monotonieConstraint(g, m);
+            if (robustnessDataG) {
+                // the coefficients of the robust data term change with g
+                update_phi_data(g, F);
+                collectGStatistics(F, gStatistics);
             }
-
-
+            // the new version is calculated into the second buffer, so the old one is kept for the convergence test
+            Vector next = workspace.nextG(g);
             try {
-                g = EquationSolver.solve(m, b, EquationSolverAlgorithm.LU);
+                gSystem.solve(gStatistics, g, next);
             } catch (EquationSolverException e) {
-                Controller.getInstance().getDisplay().append("Error on calculation of g in iteration " + iteration + ". Skipping this iteration and processing to next one. " + e.getMessage());
+                log("Error on calculation of g in iteration " + iteration + ". Skipping this iteration and processing to next one. " + e.getMessage());
+                g.copyTo(next);
             }
             // fix g to be zero at grey value 127
-            g = g.subtract(g.get(127));
-
+            double shift = -next.get(127);
+            for (int z = 0; z < next.length(); z++)
+                next.set(z, next.get(z) + shift);
+            invalidateResiduals();
+            Vector previous = g;
+            g = next;
+            if (iterations + 1 < MAX_ITERATIONS && convergence.changeConverged(previous, g)) {
+                convergence.addSavedInnerIterations(MAX_ITERATIONS - iterations - 1);
+                break;
+            }
         }
         return g;
     }
 
 
     /**
-     * sets up the data term in the given band matrix m. if robustness is required in this data term it is addes as factors.
+     * collects the sums of the data term of g over all samples in parallel (@see GreyValueStatisticsReducer). If
+     * robustness is required in the data term it is added as factors.
      *
-     * @param m the current matrix.
+     * @param F          current value of F (ln E_i)
+     * @param statistics the statistics to fill
      */
-    private void setupDataTerm(BandMatrix m) {
-        // DATA TERM
-        for (int k = 0; k < m.rows(); k++) {
-            double t = 0;
-            if (robustnessDataG) {
-                for (int i = 0; i < N; i++) {
+    private void collectGStatistics(final Vector F, GreyValueStatistics statistics) {
+        final byte[] samples = stack.getSamples();
+        gReducer.clear();
+        gReducer.accumulate(parallelLoop, 0, N, new GreyValueStatisticsReducer.Accumulator() {
+            @Override
+            public void accumulate(int from, int to, GreyValueStatistics statistics) {
+                for (int i = from; i < to; i++) {
                     for (int j = 0; j < P; j++) {
-                        if (Z(i, j) == k) {
-                            t += w2(k) * phi_data_g[i][j];
-                        }
-                    }
-                }
-            } else {
-                t = w(k) * histogram[k];
-            }
-            m.set(k, k, m.get(k, k) + t);
-        }
-    }
-
-    /**
-     * returns a matrix which represents the monotonie constraint. The result is the addition of the monotonie matrix and
-     * the current calculation matrix. This matrix will be returned.
-     *
-     * @param g last calculated version of g
-     * @param m the current band Matrix
-     * @return Matrix m + monotonie constraint matrix
-     */
-    private BandMatrix monotonieConstraint(Vector g, BandMatrix m) {
-        BandMatrix vwwv = new BandMatrix(256, new int[]{0});
-        for (int i = 1; i < g.length(); i++) {
-            double diff = g.get(i - 1) - (g.get(i));
-            if (diff > 0) {
-                vwwv.set(i, i, w2(i));
-            }
-        }
-
-        // mu *(dt * vt * wt * w * v * d)
-        // = mu (dt * vwwv * d)
-        BandMatrix mon = dt.mult(vwwv.mult(d)).mult(mu);
-        return m.add(mon);
-    }
-
-    /**
-     * sets the vector for the right hand side of a calculation. It keeps all the stuff like adding robustness functions
-     * and so on encapsulated from the user.
-     *
-     * @param F    old Vector F (ln E)
-     * @param oldG old Version of the discrete function g
-     * @return Vector b for the right hand side.
-     */
-    private Vector initializeB(Vector F, Vector oldG) {
-        Vector b;
-        b = new Vector(oldG.length());
-        for (int k = 0; k < b.length(); k++) {
-            double w = (robustnessDataG ? w2(k) : w(k));
-            double s = 0;
-            for (int i = 0; i < F.length(); i++) {
-                for (int j = 0; j < ln_t.length; j++) {
-                    if (Z(i, j) == k) {
+                        int k = samples[i * P + j] & 0xff;
                         double t = F.get(i) + ln_t[j];
                         if (robustnessDataG) {
-                            t *= phi_data_g[i][j];
+                            double phi = phi_data_g(i, j);
+                            statistics.add(k, w2(k) * phi, t * phi);
+                        } else {
+                            statistics.add(k, 1, t);
                         }
-                        s += t;
                     }
                 }
             }
-            b.set(k, s * w);
-        }
-        return b;
+        });
+        gReducer.reduce(statistics);
     }
 
     /**
@@ -400,18 +714,36 @@ public class IterativeEnergySolver extends IHDRSolver {
             MAX_ITERATIONS = iterations;
         }
         for (int it = 0; it < MAX_ITERATIONS; it++) {
+            checkCancelled();
             if (robustnessDataG) {
                 update_phi_data(g, F);
             }
             if (alpha > 0)
                 try {
-                    return calculateFWithNeighboorhood(g, F, alpha);
+                    Vector result = calculateFWithNeighboorhood(g, F, alpha);
+                    if (!floatPrecision)
+                        return result;
+                    // the solvers work in double, F keeps its single precision buffer
+                    result.copyTo(F);
+                    invalidateResiduals();
+                    return F;
                 } catch (EquationSolverException e) {
-                    Controller.getInstance().getDisplay().append("Exception detected during calculation of the neighbor matrix. Swapping to default algorithm. " + e.getMessage());
+                    log("Exception detected during calculation of the neighbor matrix. Swapping to default algorithm. " + e.getMessage());
                     return solveFDefault(g, F);
                 }
-            else
+            else {
+                // solveFDefault changes F in place, so the previous version has to be copied
+                Vector previous = null;
+                if (it + 1 < MAX_ITERATIONS && convergence.testsChange()) {
+                    previous = workspace.previousF();
+                    F.copyTo(previous);
+                }
                 F = solveFDefault(g, F);
+                if (previous != null && convergence.changeConverged(previous, F)) {
+                    convergence.addSavedInnerIterations(MAX_ITERATIONS - it - 1);
+                    break;
+                }
+            }
         }
         return F;
     }
@@ -426,28 +758,38 @@ public class IterativeEnergySolver extends IHDRSolver {
      * @param f current value of F
      * @return new instance of F
      */
-    private Vector solveFDefault(Vector g, Vector f) {
-        double quot;
-        double div;
-        double t;
-        for (int i = 0; i < N; i++) {
-            quot = 0;
-            div = 0;
-            for (int j = 0; j < P; j++) {
-                if (robustnessDataG) {
-                    // Zähler
-                    t = w2(Z(i, j)) * phi_data_g[i][j] * (g.get(Z(i, j)) - ln_t[j]);
-                    quot += t;
-                    // Nenner
-                    t = w2(Z(i, j)) * phi_data_g[i][j];
-                    div += t;
-                } else {
-                    quot += g.get(Z(i, j)) - ln_t[j] * w2(Z(i, j));
-                    div += w2(Z(i, j));
+    private Vector solveFDefault(final Vector g, final Vector f) {
+        final byte[] samples = stack.getSamples();
+        // f is changed in place
+        invalidateResiduals();
+        // each pixel is independent of the others, so the pixels can be calculated in parallel
+        parallelLoop.run(N, new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                double quot;
+                double div;
+                double t;
+                for (int i = from; i < to; i++) {
+                    quot = 0;
+                    div = 0;
+                    for (int j = 0; j < P; j++) {
+                        int zij = samples[i * P + j] & 0xff;
+                        if (robustnessDataG) {
+                            // Zähler
+                            t = w2(zij) * phi_data_g(i, j) * (g.get(zij) - ln_t[j]);
+                            quot += t;
+                            // Nenner
+                            t = w2(zij) * phi_data_g(i, j);
+                            div += t;
+                        } else {
+                            quot += g.get(zij) - ln_t[j] * w2(zij);
+                            div += w2(zij);
+                        }
+                    }
+                    f.set(i, quot / div);
                 }
             }
-            f.set(i, quot / div);
-        }
+        });
         return f;
     }
 
@@ -464,20 +806,88 @@ public class IterativeEnergySolver extends IHDRSolver {
         return g;
     }
 
+    /**
+     * Inits the vector F with 1 (ln E = 1 for each pixel)
+     *
+     * @param F vector to be inited.
+     * @return inited vector
+     */
+    private Vector initF(Vector F) {
+        for (int i = 0; i < F.length(); i++)
+            F.set(i, 1);
+        // F is changed in place
+        invalidateResiduals();
+        return F;
+    }
+
     /**
      * updates the coefficients for the subquadratic calculations.
      *
      * @param g current instance of reponse curve g
      * @param F current value of F (ln E_i)
      */
-    private void update_phi_data(Vector g, Vector F) {
+    private void update_phi_data(final Vector g, final Vector F) {
         if (robustnessDataG) {
-            for (int i = 0; i < F.length(); i++) {
-                for (int j = 0; j < ln_t.length; j++) {
-                    phi_data_g[i][j] = 1.0 / (2.0 * Math.sqrt(Math.pow(g.get(Z(i, j)) - F.get(i) - ln_t[j], 2) + EPSILON_2));
+            updateResiduals(g, F);
+        }
+    }
+
+    /**
+     * calculates the residuals g(Z_ij) - F_i - ln t_j of all samples in one pass. They are used twice: for the
+     * coefficients of the subquadratic data term (if robustness is enabled) and for the data term of the energy.
+     * <p/>
+     * The result is kept for the given versions of g and F, so the energy after an iteration and the coefficients at
+     * the beginning of the next one (which use the same g and F) only need one pass. F must not be changed in place
+     * without calling @see #invalidateResiduals.
+     *
+     * @param g current instance of reponse curve g
+     * @param F current value of F (ln E_i)
+     */
+    private void updateResiduals(final Vector g, final Vector F) {
+        if (g == residualG && F == residualF)
+            return;
+        if (robustnessDataG && phi_data_g == null && phi_data_g_float == null)
+            initPhiData();
+        final byte[] samples = stack.getSamples();
+        int blocks = (N + ENERGY_BLOCK_SIZE - 1) / ENERGY_BLOCK_SIZE;
+        if (blockDataTerm == null || blockDataTerm.length != blocks)
+            blockDataTerm = new double[blocks];
+        // the sums of the blocks are added in a fixed order, so the energy does not depend on the number of threads
+        parallelLoop.run(blocks, new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int b = from; b < to; b++) {
+                    double data = 0;
+                    int end = Math.min(N, (b + 1) * ENERGY_BLOCK_SIZE);
+                    for (int i = b * ENERGY_BLOCK_SIZE; i < end; i++) {
+                        for (int j = 0; j < P; j++) {
+                            int zij = samples[i * P + j] & 0xff;
+                            double residual = g.get(zij) - F.get(i) - ln_t[j];
+                            double penalty = Math.sqrt(residual * residual + EPSILON_2);
+                            if (robustnessDataG)
+                                set_phi_data_g(i, j, 1.0 / (2.0 * penalty));
+                            data += w2(zij) * penalty;
+                        }
+                    }
+                    blockDataTerm[b] = data;
                 }
             }
+        });
+        double data = 0;
+        for (double d : blockDataTerm) {
+            data += d;
         }
+        residualDataTerm = data;
+        residualG = g;
+        residualF = F;
+    }
+
+    /**
+     * marks the residuals as outdated, it has to be called if g or F are changed in place.
+     */
+    private void invalidateResiduals() {
+        residualG = null;
+        residualF = null;
     }
 
     /**
@@ -488,18 +898,10 @@ public class IterativeEnergySolver extends IHDRSolver {
      * @param g - the function g (the entry i in the vector represents the value of g(i) )
      * @return the value of the energy functional  SUM(i=1,N,SUM(j=1,P,[g(Z_ij)-ln(E_i)-ln(dt_j)]^2))+lambda*SUM(z=1,254,g''(z)^2)
      */
-    private double calculateEnergy(Vector F, Vector g) {
-        // data term
-        double data = 0.0;
-        for (int i = 0; i < F.length(); i++) {
-            for (int j = 0; j < images.size(); j++) {
-                // w^2(Z(i,j))*phi([g(Z(i,j))-ln(E_i)-ln(t_j)]^2)
-                double w = w2(Z(i, j));
-                double inner = g.get(Z(i, j)) - (F.get(i)) - ((ln_t[j]));
-                double phi = Math.sqrt(Math.pow(inner, 2) + EPSILON_2);
-                data += w * phi;
-            }
-        }
+    double calculateEnergy(Vector F, Vector g) {
+        // data term: SUM w^2(Z(i,j))*phi([g(Z(i,j))-ln(E_i)-ln(t_j)]^2), shared with the coefficients of the robust data term
+        updateResiduals(g, F);
+        double data = residualDataTerm;
         // smoothning term
         double smoothing = 0.0;
         for (int z = 1; z < 255; z++) {
@@ -529,19 +931,27 @@ public class IterativeEnergySolver extends IHDRSolver {
      * @throws EquationSolverException if the equotation could not be solved because of some issues.
      */
     private Vector calculateFWithNeighboorhood(Vector g, Vector F, double alpha) throws EquationSolverException {
-        int cols = images.get(0).getWidth();
-        int rows = images.get(0).getHeight();
+        int cols = stack.getWidth();
+        int rows = stack.getHeight();
+        final byte[] samples = stack.getSamples();
 
-        BandMatrix res = generateNeighborsBandMatrix(F, alpha, cols, rows);
-        Vector b = new Vector(F.length());
+        Vector b = workspace.b();
         for (int i = 0; i < b.length(); i++) {
             double sum = 0;
             for (int j = 0; j < P; j++) {
-                sum += w2(Z(i, j)) * (g.get(Z(i, j)) - ln_t[j]);
+                int zij = samples[i * P + j] & 0xff;
+                sum += w2(zij) * (g.get(zij) - ln_t[j]);
             }
             b.set(i, sum);
         }
-        return EquationSolver.solve(res, b, EquationSolverAlgorithm.SOR);
+        if (smoothnessAlgorithm == EquationSolverAlgorithm.SOR || smoothnessAlgorithm == EquationSolverAlgorithm.CG_JACOBI) {
+            NeighbourhoodOperator operator = new NeighbourhoodOperator(getSmoothnessDataWeights(), F, alpha, cols, rows, robustnessSmoothnessE, parallelLoop);
+            return EquationSolver.solveMatrixFree(operator, b, smoothnessAlgorithm, parallelLoop, fReport);
+        }
+        BandMatrix res = generateNeighborsBandMatrix(F, alpha, cols, rows);
+        if (smoothnessAlgorithm == EquationSolverAlgorithm.MULTIGRID)
+            return EquationSolver.solveWithMultigrid(res, b, cols, rows, parallelLoop, fReport);
+        return EquationSolver.solve(res, b, smoothnessAlgorithm, parallelLoop, fReport);
     }
 
 
@@ -554,17 +964,31 @@ public class IterativeEnergySolver extends IHDRSolver {
      * @return coefficient for the 2d smoothness of F
      */
     private double phi_smoothness_e(Vector F, int i, int j) {
-        if (robustnessSmoothnessE) {
-            double v = F.get(i) - F.get(j);
-            if (v == 0)
-                return 1;
-            else
-                return 1.0 / (2 * Math.sqrt(v * v + EPSILON_2));
-        } else
-            return 1;
+        return NeighbourhoodOperator.phi(F, i, j, robustnessSmoothnessE);
     }
 
 
+    /**
+     * returns the sum of w(Z_ij)^2 over all pictures for each pixel i. It does not change between the iterations,
+     * so it is calculated only once.
+     *
+     * @return data weights of the system with spatial smoothness
+     */
+    private double[] getSmoothnessDataWeights() {
+        if (smoothnessDataWeights == null) {
+            final byte[] samples = stack.getSamples();
+            smoothnessDataWeights = new double[N];
+            for (int i = 0; i < N; i++) {
+                double sum = 0;
+                for (int j = 0; j < P; j++) {
+                    sum += w2(samples[i * P + j] & 0xff);
+                }
+                smoothnessDataWeights[i] = sum;
+            }
+        }
+        return smoothnessDataWeights;
+    }
+
     /**
      * Generates the Matrix which calculates the influence of each pixel on the others. The distance of influence is only 1.
      * <p/>
@@ -578,13 +1002,10 @@ public class IterativeEnergySolver extends IHDRSolver {
      * @return BandMatrix which represents the (scaled) influence of the surrounding pixels
      */
     private BandMatrix generateNeighborsBandMatrix(Vector F, double alpha, int cols, int rows) {
-        BandMatrix neighborsBandMatrix = new BandMatrix(cols * rows, new int[]{-cols, -1, 0, 1, cols});
+        final double[] dataWeights = getSmoothnessDataWeights();
+        // every element of the bands is overwritten, so the matrix of the last iteration is reused
+        BandMatrix neighborsBandMatrix = workspace.neighbours(cols);
         for (int i = 0; i < cols * rows; i++) {
-            // weight
-            double sum = 0;
-            for (int j = 0; j < P; j++) {
-                sum += w2(Z(i, j));
-            }
             double d = 0;
             // left band
             if (i - 1 >= 0) {
@@ -611,7 +1032,7 @@ public class IterativeEnergySolver extends IHDRSolver {
                 neighborsBandMatrix.set(i + cols, i, -v * alpha);
             }
 
-            neighborsBandMatrix.set(i, i, sum + alpha * d);
+            neighborsBandMatrix.set(i, i, dataWeights[i] + alpha * d);
 
         }
         return neighborsBandMatrix;
@@ -0,0 +1,146 @@
+package Solver;
+
+import Maths.LinearOperator;
+import Maths.ParallelLoop;
+import Maths.RangeTask;
+import Maths.Vector;
+
+/**
+ * Matrix free form of the system for F with spatial smoothness (alpha > 0) of the @see IterativeEnergySolver.
+ * <p/>
+ * The matrix has the diagonales -cols, -1, 0, 1 and cols. The neighbours i - 1 and i + 1 are used for all pixels
+ * (also at the ends of the rows), exactly like the band matrix of the solver. The element of two neighbours i and k
+ * is -alpha * phi(F_i - F_k) and the diagonale is the sum of the data weights plus alpha times the sum of phi over
+ * all neighbours. The weights phi are calculated on the fly from F, so only the data weights (one value per pixel)
+ * are stored instead of five diagonales.
+ *
+ * @author sebastianzillessen
+ */
+public class NeighbourhoodOperator implements LinearOperator {
+    private static final int ROWS_PER_CHUNK = 4096;
+
+    private final double[] dataWeights;
+    private final Vector F;
+    private final double alpha;
+    private final int cols;
+    private final int n;
+    private final boolean robust;
+    private final ParallelLoop loop;
+
+    /**
+     * Creates the operator.
+     *
+     * @param dataWeights sum of the squared weights w(Z_ij)^2 over all pictures for each pixel i
+     * @param F           current value of F (ln E_i), it must not be changed while the operator is used
+     * @param alpha       smoothness term of E scaling factor
+     * @param cols        width of the pictures
+     * @param rows        height of the pictures
+     * @param robust      use the subquadratic penalty function for the smoothness of E
+     * @throws java.lang.IllegalArgumentException if the sizes do not match
+     */
+    public NeighbourhoodOperator(double[] dataWeights, Vector F, double alpha, int cols, int rows, boolean robust) {
+        this(dataWeights, F, alpha, cols, rows, robust, ParallelLoop.getDefault());
+    }
+
+    /**
+     * Creates the operator whose products are calculated on the threads of the given loop.
+     *
+     * @param dataWeights sum of the squared weights w(Z_ij)^2 over all pictures for each pixel i
+     * @param F           current value of F (ln E_i), it must not be changed while the operator is used
+     * @param alpha       smoothness term of E scaling factor
+     * @param cols        width of the pictures
+     * @param rows        height of the pictures
+     * @param robust      use the subquadratic penalty function for the smoothness of E
+     * @param loop        the threads to use
+     * @throws java.lang.IllegalArgumentException if the sizes do not match
+     */
+    public NeighbourhoodOperator(double[] dataWeights, Vector F, double alpha, int cols, int rows, boolean robust, ParallelLoop loop) {
+        this.n = cols * rows;
+        if (dataWeights.length != n || F.length() != n)
+            throw new IllegalArgumentException("Size of data weights and F does not match " + cols + "x" + rows);
+        this.dataWeights = dataWeights;
+        this.F = F;
+        this.alpha = alpha;
+        this.cols = cols;
+        this.robust = robust;
+        this.loop = loop;
+    }
+
+    /**
+     * returns the coefficient phi of the neighbours i and j
+     *
+     * @param F      current value of F (ln E_i)
+     * @param i      first index in F
+     * @param j      second index in F
+     * @param robust use the subquadratic penalty function
+     * @return coefficient for the 2d smoothness of F
+     */
+    static double phi(Vector F, int i, int j, boolean robust) {
+        if (robust) {
+            double v = F.get(i) - F.get(j);
+            if (v == 0)
+                return 1;
+            else
+                return 1.0 / (2 * Math.sqrt(v * v + IterativeEnergySolver.EPSILON_2));
+        } else
+            return 1;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public void apply(final double[] x, final double[] r) {
+        if (x.length != n || r.length != n)
+            throw new IllegalArgumentException("Operator * vector: vector must be of size " + n + " but was " + x.length);
+        loop.run(n, ROWS_PER_CHUNK, new RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    // same order as the band matrix: -cols, -1, 0, 1, cols
+                    double sum = 0;
+                    if (i - cols >= 0)
+                        sum += -phi(F, i, i - cols, robust) * alpha * x[i - cols];
+                    if (i - 1 >= 0)
+                        sum += -phi(F, i, i - 1, robust) * alpha * x[i - 1];
+                    sum += diagonal(i) * x[i];
+                    if (i + 1 < n)
+                        sum += -phi(F, i + 1, i, robust) * alpha * x[i + 1];
+                    if (i + cols < n)
+                        sum += -phi(F, i + cols, i, robust) * alpha * x[i + cols];
+                    r[i] = sum;
+                }
+            }
+        });
+    }
+
+    @Override
+    public double diagonal(int i) {
+        double d = 0;
+        if (i - 1 >= 0)
+            d += phi(F, i, i - 1, robust);
+        if (i + 1 < n)
+            d += phi(F, i + 1, i, robust);
+        if (i - cols >= 0)
+            d += phi(F, i, i - cols, robust);
+        if (i + cols < n)
+            d += phi(F, i + cols, i, robust);
+        return dataWeights[i] + alpha * d;
+    }
+
+    @Override
+    public double offDiagonalProduct(int i, double[] x) {
+        double sum = 0;
+        if (i - cols >= 0)
+            sum += -phi(F, i, i - cols, robust) * alpha * x[i - cols];
+        if (i - 1 >= 0)
+            sum += -phi(F, i, i - 1, robust) * alpha * x[i - 1];
+        if (i + 1 < n)
+            sum += -phi(F, i + 1, i, robust) * alpha * x[i + 1];
+        if (i + cols < n)
+            sum += -phi(F, i + cols, i, robust) * alpha * x[i + cols];
+        return sum;
+    }
+}
@@ -0,0 +1,59 @@
+package Solver;
+
+/**
+ * Decides how often an @see IHDRSolver reports intermediate results to its HDRSolverUpdateListener.
+ * <p/>
+ * An intermediate result is reported if at least the given number of outer iterations and the given time passed since
+ * the last reported one. The first intermediate result and the final result are always reported, so
+ * @see #EVERY_ITERATION reports after each iteration like before. The throttle has no state, it can be shared between
+ * solvers.
+ *
+ * @author sebastianzillessen
+ */
+public class ProgressThrottle {
+    /**
+     * reports an intermediate result after each outer iteration
+     */
+    public static final ProgressThrottle EVERY_ITERATION = new ProgressThrottle(1, 0);
+
+    private final int iterations;
+    private final long millis;
+
+    /**
+     * @param iterations minimal number of outer iterations between two intermediate results
+     * @param millis     minimal time in milliseconds between two intermediate results (0 disables this)
+     * @throws java.lang.IllegalArgumentException if iterations is smaller than 1 or millis is negative
+     */
+    public ProgressThrottle(int iterations, long millis) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("At least one iteration has to be between two results but was " + iterations);
+        if (millis < 0)
+            throw new IllegalArgumentException("The time between two results must not be negative.");
+        this.iterations = iterations;
+        this.millis = millis;
+    }
+
+    /**
+     * tests if the next intermediate result should be reported.
+     *
+     * @param iterationsSinceReport outer iterations since the last reported result
+     * @param millisSinceReport     time in milliseconds since the last reported result
+     * @return true if the result should be reported
+     */
+    public boolean shouldReport(int iterationsSinceReport, long millisSinceReport) {
+        return iterationsSinceReport >= iterations && millisSinceReport >= millis;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    @Override
+    public String toString() {
+        return "alle " + iterations + " Iterationen" + (millis > 0 ? ", mindestens " + millis + "ms" : "");
+    }
+}
@@ -0,0 +1,194 @@
+package Solver;
+
+import Maths.BandMatrix;
+import Maths.EquationSolverException;
+import Maths.PentadiagonalSolver;
+import Maths.Vector;
+
+/**
+ * The system of linear equotations for the response curve g of the @see IterativeEnergySolver.
+ * <p/>
+ * It consists of the smoothness term (fourth derivative, scaled with lambda), the data term which is built from
+ * the @see GreyValueStatistics of the pictures and the optional monotonie constraint (scaled with mu). As g has only
+ * 256 values the system is small, the pictures are only needed to collect the statistics.
+ * <p/>
+ * The smoothness term only depends on the weights and lambda, so it is built once. On each solve it is copied into the
+ * preallocated matrix and only the data term and the monotonie constraint are added, so solving does not allocate.
+ *
+ * @author sebastianzillessen
+ */
+class ResponseCurveSystem {
+    private final double[] w;
+    private final double lambda;
+    private final double mu;
+    private final boolean robustnessDataG;
+    private final PentadiagonalSolver gSolver = new PentadiagonalSolver(256);
+    // constant smoothness term, scaled by 2 * lambda
+    private final BandMatrix smoothness = new BandMatrix(256, new int[]{-2, -1, 0, 1, 2});
+    // workspace of the system
+    private final BandMatrix m = new BandMatrix(256, new int[]{-2, -1, 0, 1, 2});
+    private final BandMatrix monotonie = new BandMatrix(256, new int[]{-1, 0, 1});
+    private final Vector b = new Vector(256);
+
+    /**
+     * @param w               weight w(z) of each grey value
+     * @param lambda          smoothness scaling factor (0 disables this)
+     * @param mu              monotonie scaling factor (0 disables this)
+     * @param robustnessDataG the statistics are collected with subquadratic penalty terms
+     */
+    ResponseCurveSystem(double[] w, double lambda, double mu, boolean robustnessDataG) {
+        this.w = w.clone();
+        this.lambda = lambda;
+        this.mu = mu;
+        this.robustnessDataG = robustnessDataG;
+        buildDerivativeMatrix(smoothness);
+    }
+
+    /**
+     * Solves the system for a new version of g.
+     *
+     * @param statistics statistics of the data term
+     * @param g          last calculated version of g (for the monotonie constraint)
+     * @return new version of g (not normalized)
+     * @throws EquationSolverException if the system could not be solved
+     */
+    Vector solve(GreyValueStatistics statistics, Vector g) throws EquationSolverException {
+        Vector result = new Vector(256);
+        solve(statistics, g, result);
+        return result;
+    }
+
+    /**
+     * Solves the system for a new version of g without allocating.
+     *
+     * @param statistics statistics of the data term
+     * @param g          last calculated version of g (for the monotonie constraint)
+     * @param result     vector for the new version of g (not normalized, must not be g)
+     * @throws EquationSolverException if the system could not be solved
+     */
+    void solve(GreyValueStatistics statistics, Vector g, Vector result) throws EquationSolverException {
+        smoothness.copyTo(m);
+        // add on the diagonale the Matrix with the sums of each grayvalue in the picture.
+        // Entry (k,k) says how many time the grayvalue k is present overall pictures and
+        // is added to the derivate matrix above
+        setupDataTerm(m, statistics);
+        if (mu > 0) {
+            monotonieConstraint(g, m);
+        }
+        initializeB(statistics, b);
+        gSolver.solve(m, b, result);
+    }
+
+    /**
+     * returns the quadratic weight
+     *
+     * @param z greyvalue (0-255)
+     * @return w(z) * w(z)
+     */
+    private double w2(int z) {
+        return w[z] * w[z];
+    }
+
+    /**
+     * This method constructs a fourth derivative matrix approximation scaled by 2 * lambda. All entries of the five
+     * diagonales are overwritten.
+     *
+     * @param d pentadiagonal matrix for the fourth matrix derivative
+     */
+    private void buildDerivativeMatrix(BandMatrix d) {
+        int n = 256;
+        d.set(0, 0, +1 * w2(1));
+        d.set(0, 1, -2 * w2(1));
+        d.set(0, 2, +1 * w2(1));
+        // second row
+        d.set(1, 0, -2 * w2(1));
+        d.set(1, 1, 4 * w2(1) + w2(2));
+        d.set(1, 2, -2 * (w2(1) + w2(2)));
+        d.set(1, 3, w2(2));
+        // diagonale
+        for (int row = 2; row < n - 2; row++) {
+            // default matrixG 2nd degree on the base.
+            d.set(row, row - 2, w2(row - 1));
+            d.set(row, row - 1, -2 * (w2(row - 1) + w2(row)));
+            d.set(row, row, w2(row - 1) + 4 * w2(row) + w2(row + 1));
+            d.set(row, row + 1, -2 * (w2(row) + w2(row + 1)));
+            d.set(row, row + 2, w2(row + 1));
+        }
+        // second last row
+        d.set(n - 2, n - 4, w2(253));
+        d.set(n - 2, n - 3, -2 * (w2(253) + w2(254)));
+        d.set(n - 2, n - 2, w2(253) + 4 * w2(254));
+        d.set(n - 2, n - 1, -2 * w2(254));
+
+        // last row
+        d.set(n - 1, n - 3, w2(254));
+        d.set(n - 1, n - 2, -2 * w2(254));
+        d.set(n - 1, n - 1, w2(254));
+        d.scale(2 * lambda);
+    }
+
+    /**
+     * sets up the data term in the given band matrix m. if robustness is required in this data term it is addes as factors.
+     *
+     * @param m          the current matrix.
+     * @param statistics statistics of the data term
+     */
+    private void setupDataTerm(BandMatrix m, GreyValueStatistics statistics) {
+        for (int k = 0; k < m.rows(); k++) {
+            double t;
+            if (robustnessDataG) {
+                t = statistics.getWeight(k);
+            } else {
+                // the weights are the histogram
+                t = w[k] * statistics.getWeight(k);
+            }
+            m.addToDiagonal(k, t);
+        }
+    }
+
+    /**
+     * adds the monotonie constraint mu * (dt * vt * wt * w * v * d) to the current matrix. d is the first derivative
+     * (d(i, i) = 1, d(i, i - 1) = -1 for i > 0, the first row is 0) and vwwv is diagonale with w(i)^2 where g is
+     * decreasing between i - 1 and i. So the product is tridiagonale, it is built in place and added scaled by mu.
+     *
+     * @param g last calculated version of g
+     * @param m the current band Matrix
+     */
+    private void monotonieConstraint(Vector g, BandMatrix m) {
+        int n = g.length();
+        for (int i = 0; i < n; i++) {
+            // (dt * vwwv * d)(i, i) = vwwv(i, i) + vwwv(i + 1, i + 1)
+            monotonie.set(i, i, decreasing(g, i) + (i + 1 < n ? decreasing(g, i + 1) : 0));
+            // (dt * vwwv * d)(i, i - 1) = (dt * vwwv * d)(i - 1, i) = -vwwv(i, i)
+            if (i > 0) {
+                monotonie.set(i, i - 1, -decreasing(g, i));
+                monotonie.set(i - 1, i, -decreasing(g, i));
+            }
+        }
+        m.addScaled(monotonie, mu);
+    }
+
+    /**
+     * returns vwwv(i, i) of the monotonie constraint
+     *
+     * @param g last calculated version of g
+     * @param i grey value
+     * @return w(i)^2 if g is decreasing between i - 1 and i, otherwise 0
+     */
+    private double decreasing(Vector g, int i) {
+        return i > 0 && g.get(i - 1) - g.get(i) > 0 ? w2(i) : 0;
+    }
+
+    /**
+     * sets the vector for the right hand side of a calculation.
+     *
+     * @param statistics statistics of the data term
+     * @param b          Vector b for the right hand side.
+     */
+    private void initializeB(GreyValueStatistics statistics, Vector b) {
+        for (int k = 0; k < b.length(); k++) {
+            double w = (robustnessDataG ? w2(k) : this.w[k]);
+            b.set(k, statistics.getTarget(k) * w);
+        }
+    }
+}
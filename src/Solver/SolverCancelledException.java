@@ -0,0 +1,15 @@
+package Solver;
+
+/**
+ * Exception which is thrown inside of an @see IHDRSolver when its calculation was cancelled (@see IHDRSolver#cancel).
+ * It is unchecked, so it can leave the parallel loops of the solver.
+ *
+ * @author sebastianzillessen
+ */
+public class SolverCancelledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public SolverCancelledException(String s) {
+        super(s);
+    }
+}
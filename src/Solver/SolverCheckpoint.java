@@ -0,0 +1,345 @@
+package Solver;
+
+import Maths.EquationSolverAlgorithm;
+import Maths.FloatVector;
+import Maths.Vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * State of the alternating iterations of the @see IterativeEnergySolver after an outer iteration: the response curve
+ * g, the radiance map F (ln E) and the energies of the finished iterations. It is stored in a compact binary file, so
+ * a calculation can be resumed after it was cancelled or the machine was restarted. The header contains the pictures
+ * (size and exposure times) and the parameters of the solver, a checkpoint is only resumed if both match.
+ * <p/>
+ * The coefficients phi of the robust data term are not stored, they are calculated from g and F at the beginning of
+ * each step. F is stored with the precision of the solver (float or double), so a resumed calculation continues with
+ * exactly the same values.
+ *
+ * @author sebastianzillessen
+ */
+public class SolverCheckpoint {
+    // "HDCP"
+    private static final int MAGIC = 0x48444350;
+    private static final int VERSION = 2;
+
+    /**
+     * Parameters of the solver which change g and F.
+     */
+    public static class Parameters {
+        private final double lambda;
+        private final double mu;
+        private final double alpha;
+        private final int iterations;
+        private final double[] weights;
+        private final boolean robustnessDataG;
+        private final boolean robustnessSmoothnessE;
+        private final EquationSolverAlgorithm smoothnessAlgorithm;
+        private final boolean floatPrecision;
+
+        /**
+         * @param lambda                smoothness scaling factor of g
+         * @param mu                    monotonie scaling factor
+         * @param alpha                 spatial smoothness scaling factor of F
+         * @param iterations            number of outer iterations, which is also the number of inner iterations
+         * @param weights               weightning function w(z) for z = 0..255
+         * @param robustnessDataG       subquadratic penalty terms in the data term of g
+         * @param robustnessSmoothnessE subquadratic penalty terms in the smoothness term of E
+         * @param smoothnessAlgorithm   algorithm which solves the system of F with spatial smoothness
+         * @param floatPrecision        true if F is stored with single precision
+         */
+        public Parameters(double lambda, double mu, double alpha, int iterations, double[] weights, boolean robustnessDataG,
+                          boolean robustnessSmoothnessE, EquationSolverAlgorithm smoothnessAlgorithm, boolean floatPrecision) {
+            if (weights.length != 256)
+                throw new IllegalArgumentException("The weightning function has to have 256 values but has " + weights.length);
+            if (iterations < 1)
+                throw new IllegalArgumentException("At least one iteration is needed but was " + iterations);
+            if (smoothnessAlgorithm == null)
+                throw new IllegalArgumentException("The algorithm of the smoothness term is required.");
+            this.lambda = lambda;
+            this.mu = mu;
+            this.alpha = alpha;
+            this.iterations = iterations;
+            this.weights = weights.clone();
+            this.robustnessDataG = robustnessDataG;
+            this.robustnessSmoothnessE = robustnessSmoothnessE;
+            this.smoothnessAlgorithm = smoothnessAlgorithm;
+            this.floatPrecision = floatPrecision;
+        }
+
+        public boolean isFloatPrecision() {
+            return floatPrecision;
+        }
+
+        /**
+         * @return number of outer (and inner) iterations
+         */
+        public int getIterations() {
+            return iterations;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Parameters)) return false;
+            Parameters p = (Parameters) o;
+            return Double.compare(lambda, p.lambda) == 0 && Double.compare(mu, p.mu) == 0
+                    && Double.compare(alpha, p.alpha) == 0 && iterations == p.iterations && Arrays.equals(weights, p.weights)
+                    && robustnessDataG == p.robustnessDataG && robustnessSmoothnessE == p.robustnessSmoothnessE
+                    && smoothnessAlgorithm == p.smoothnessAlgorithm && floatPrecision == p.floatPrecision;
+        }
+
+        @Override
+        public int hashCode() {
+            long l = Double.doubleToLongBits(lambda);
+            int result = (int) (l ^ (l >>> 32));
+            l = Double.doubleToLongBits(mu);
+            result = 31 * result + (int) (l ^ (l >>> 32));
+            l = Double.doubleToLongBits(alpha);
+            result = 31 * result + (int) (l ^ (l >>> 32));
+            result = 31 * result + iterations;
+            result = 31 * result + Arrays.hashCode(weights);
+            result = 31 * result + (robustnessDataG ? 1 : 0);
+            result = 31 * result + (robustnessSmoothnessE ? 1 : 0);
+            result = 31 * result + smoothnessAlgorithm.hashCode();
+            result = 31 * result + (floatPrecision ? 1 : 0);
+            return result;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final double[] lnT;
+    private final Parameters parameters;
+    private final int iteration;
+    private final double[] energy;
+    private final Vector g;
+    private final Vector F;
+
+    /**
+     * @param width      width of the pictures
+     * @param height     height of the pictures
+     * @param lnT        logarithm of the exposure times of the pictures
+     * @param parameters parameters of the solver
+     * @param iteration  number of finished outer iterations
+     * @param energy     energy after each finished outer iteration (at least iteration values)
+     * @param g          response curve after the last finished iteration
+     * @param F          radiance map (ln E) after the last finished iteration
+     * @throws java.lang.IllegalArgumentException if the sizes do not match or more than the iterations of the
+     *                                            parameters are finished
+     */
+    public SolverCheckpoint(int width, int height, double[] lnT, Parameters parameters, int iteration, double[] energy,
+                            Vector g, Vector F) {
+        if (g.length() != 256)
+            throw new IllegalArgumentException("g has to have 256 values but has " + g.length());
+        if (F.length() != width * height)
+            throw new IllegalArgumentException("F has to have " + width * height + " values but has " + F.length());
+        if (iteration < 0 || energy.length < iteration)
+            throw new IllegalArgumentException("Energies of " + iteration + " iterations expected but got " + energy.length);
+        if (iteration > parameters.iterations)
+            throw new IllegalArgumentException(iteration + " of " + parameters.iterations + " iterations can not be finished.");
+        this.width = width;
+        this.height = height;
+        this.lnT = lnT.clone();
+        this.parameters = parameters;
+        this.iteration = iteration;
+        this.energy = Arrays.copyOf(energy, iteration);
+        this.g = g;
+        this.F = F;
+    }
+
+    /**
+     * writes the checkpoint. It is written to a temporary file which replaces the file afterwards, so the file always
+     * contains a complete checkpoint. F is written with the precision of the parameters.
+     *
+     * @param file file to write
+     * @throws IOException if the file could not be written
+     */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        boolean floatPrecision = parameters.floatPrecision;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(lnT.length);
+            for (double t : lnT)
+                out.writeDouble(t);
+            out.writeDouble(parameters.lambda);
+            out.writeDouble(parameters.mu);
+            out.writeDouble(parameters.alpha);
+            out.writeInt(parameters.iterations);
+            for (double w : parameters.weights)
+                out.writeDouble(w);
+            out.writeUTF(parameters.smoothnessAlgorithm.name());
+            out.writeBoolean(parameters.robustnessDataG);
+            out.writeBoolean(parameters.robustnessSmoothnessE);
+            out.writeBoolean(floatPrecision);
+            out.writeInt(iteration);
+            for (double e : energy)
+                out.writeDouble(e);
+            for (int z = 0; z < g.length(); z++)
+                out.writeDouble(g.get(z));
+            for (int i = 0; i < F.length(); i++) {
+                if (floatPrecision)
+                    out.writeFloat((float) F.get(i));
+                else
+                    out.writeDouble(F.get(i));
+            }
+        } finally {
+            out.close();
+        }
+        replace(file, tmp);
+    }
+
+    /**
+     * replaces the file by the temporary file. File#renameTo replaces an existing file on most platforms; where it does
+     * not, the old file is renamed to a backup first and restored if the temporary file could not be renamed.
+     */
+    private static void replace(File file, File tmp) throws IOException {
+        if (tmp.renameTo(file))
+            return;
+        File backup = new File(file.getPath() + ".bak");
+        if (backup.exists() && !backup.delete() || file.exists() && !file.renameTo(backup))
+            throw new IOException("Checkpoint " + file + " could not be replaced.");
+        if (!tmp.renameTo(file)) {
+            backup.renameTo(file);
+            throw new IOException("Checkpoint " + file + " could not be replaced.");
+        }
+        backup.delete();
+    }
+
+    /**
+     * reads a checkpoint. The sizes in the header are checked against the length of the file before anything is
+     * allocated, so a damaged header does not allocate huge arrays.
+     *
+     * @param file file to read
+     * @return the checkpoint
+     * @throws IOException if the file could not be read or is no checkpoint
+     */
+    public static SolverCheckpoint read(File file) throws IOException {
+        long length = file.length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException(file + " is no checkpoint.");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException(file + " has the unknown version " + version);
+            int width = in.readInt();
+            int height = in.readInt();
+            int images = in.readInt();
+            // the fixed part of the header and one exposure time per picture
+            long header = 4 * 5 + 8L * images + 8 * 3 + 4 + 8 * 256;
+            if (width < 1 || height < 1 || images < 1 || header > length || (long) width * height > Integer.MAX_VALUE)
+                throw new IOException(file + " is damaged.");
+            double[] lnT = new double[images];
+            for (int j = 0; j < images; j++)
+                lnT[j] = in.readDouble();
+            double lambda = in.readDouble();
+            double mu = in.readDouble();
+            double alpha = in.readDouble();
+            int iterations = in.readInt();
+            double[] weights = new double[256];
+            for (int z = 0; z < 256; z++)
+                weights[z] = in.readDouble();
+            String algorithm = in.readUTF();
+            boolean robustnessDataG = in.readBoolean();
+            boolean robustnessSmoothnessE = in.readBoolean();
+            boolean floatPrecision = in.readBoolean();
+            int iteration = in.readInt();
+            // the names of the algorithms only contain ASCII characters, which are stored with one byte each
+            header += 2 + algorithm.length() + 3 + 4;
+            long expected = header + 8L * iteration + 8 * 256 + (floatPrecision ? 4L : 8L) * width * height;
+            if (iterations < 1 || iteration < 0 || iteration > iterations || expected != length)
+                throw new IOException(file + " is damaged.");
+            Parameters parameters = new Parameters(lambda, mu, alpha, iterations, weights, robustnessDataG,
+                    robustnessSmoothnessE, EquationSolverAlgorithm.valueOf(algorithm), floatPrecision);
+            double[] energy = new double[iteration];
+            for (int i = 0; i < iteration; i++)
+                energy[i] = in.readDouble();
+            Vector g = new Vector(256);
+            for (int z = 0; z < 256; z++)
+                g.set(z, in.readDouble());
+            Vector F = floatPrecision ? new FloatVector(width * height) : new Vector(width * height);
+            for (int i = 0; i < F.length(); i++)
+                F.set(i, floatPrecision ? in.readFloat() : in.readDouble());
+            return new SolverCheckpoint(width, height, lnT, parameters, iteration, energy, g, F);
+        } catch (EOFException e) {
+            throw new IOException(file + " is incomplete.", e);
+        } catch (ArithmeticException e) {
+            throw new IOException(file + " is damaged.", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + " is damaged.", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * checks if the checkpoint belongs to pictures of the given size and exposure times
+     *
+     * @param width  width of the pictures
+     * @param height height of the pictures
+     * @param lnT    logarithm of the exposure times of the pictures
+     * @return true if the checkpoint can be used for these pictures
+     */
+    public boolean matches(int width, int height, double[] lnT) {
+        return this.width == width && this.height == height && Arrays.equals(this.lnT, lnT);
+    }
+
+    /**
+     * checks if the checkpoint was calculated with the given parameters of the solver
+     *
+     * @param parameters parameters of the solver
+     * @return true if the calculation can be resumed with these parameters
+     */
+    public boolean matches(Parameters parameters) {
+        return this.parameters.equals(parameters);
+    }
+
+    public Parameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return number of finished outer iterations
+     */
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * @return energy after each finished outer iteration
+     */
+    public double[] getEnergy() {
+        return energy.clone();
+    }
+
+    public Vector getG() {
+        return g;
+    }
+
+    public Vector getF() {
+        return F;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
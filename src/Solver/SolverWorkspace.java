@@ -0,0 +1,107 @@
+package Solver;
+
+import Maths.BandMatrix;
+import Maths.FloatVector;
+import Maths.Vector;
+
+/**
+ * Preallocated buffers of the @see IterativeEnergySolver.
+ * <p/>
+ * The iterations update g and F in these buffers instead of creating new vectors, so after the first iteration the
+ * solver does not allocate any more memory which depends on the size of the pictures. g is kept in two buffers: the
+ * new version is calculated into the buffer which does not hold the old one.
+ * <p/>
+ * The buffers are only allocated on first use, e.g. the system of the spatial smoothness is only needed with
+ * alpha > 0. With single precision F is stored in @see FloatVector buffers.
+ *
+ * @author sebastianzillessen
+ */
+class SolverWorkspace {
+    private final int n;
+    private final boolean floatPrecision;
+    private final Vector[] g = new Vector[]{new Vector(256), new Vector(256)};
+    private final Vector previousG = new Vector(256);
+    private Vector F;
+    private Vector previousF;
+    private Vector b;
+    private BandMatrix neighbours;
+
+    /**
+     * @param n              number of pixels
+     * @param floatPrecision store F with single precision
+     */
+    SolverWorkspace(int n, boolean floatPrecision) {
+        this.n = n;
+        this.floatPrecision = floatPrecision;
+    }
+
+    /**
+     * returns the buffer for the next version of g, it is the buffer which does not hold the given version.
+     *
+     * @param current current version of g
+     * @return buffer for the next version
+     */
+    Vector nextG(Vector current) {
+        return current == g[0] ? g[1] : g[0];
+    }
+
+    /**
+     * @return buffer to keep the previous version of g
+     */
+    Vector previousG() {
+        return previousG;
+    }
+
+    /**
+     * @return buffer for F
+     */
+    Vector F() {
+        if (F == null)
+            F = newPixelVector();
+        return F;
+    }
+
+    /**
+     * hands a version of F over to a result, the next call of @see #F allocates a new buffer.
+     *
+     * @param F the version of F which is kept by the result
+     */
+    void releaseF(Vector F) {
+        if (this.F == F)
+            this.F = null;
+    }
+
+    /**
+     * @return buffer to keep the previous version of F
+     */
+    Vector previousF() {
+        if (previousF == null)
+            previousF = newPixelVector();
+        return previousF;
+    }
+
+    /**
+     * @return buffer for the right side of the system of the spatial smoothness
+     */
+    Vector b() {
+        if (b == null)
+            b = new Vector(n);
+        return b;
+    }
+
+    /**
+     * returns the matrix of the system of the spatial smoothness. Its elements are overwritten on each iteration.
+     *
+     * @param cols number of cols in the picture
+     * @return band matrix with the bands -cols, -1, 0, 1, cols
+     */
+    BandMatrix neighbours(int cols) {
+        if (neighbours == null)
+            neighbours = new BandMatrix(n, new int[]{-cols, -1, 0, 1, cols});
+        return neighbours;
+    }
+
+    private Vector newPixelVector() {
+        return floatPrecision ? new FloatVector(n) : new Vector(n);
+    }
+}
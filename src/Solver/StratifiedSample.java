@@ -0,0 +1,105 @@
+package Solver;
+
+import Model.ExposureStack;
+
+/**
+ * A subset of the pixels of an exposure stack which is used to estimate the response curve g.
+ * <p/>
+ * g has only 256 unknowns, so a few thousand pixels determine it as well as all pixels do, as long as every grey value
+ * is covered. The sample is stratified by the histogram of the stack: for each grey value k up to samplesPerGreyValue
+ * of its occurrences are chosen, evenly spaced in the order of the pixels. So rare grey values (e.g. the saturated
+ * ones) are as well represented as the frequent ones and the chosen pixels are spread over the whole picture.
+ *
+ * @author sebastianzillessen
+ */
+public class StratifiedSample {
+    private final int[] pixels;
+    private final ExposureStack stack;
+
+    /**
+     * Chooses the sample.
+     *
+     * @param stack               the exposure stack
+     * @param samplesPerGreyValue number of occurrences which are chosen per grey value (at least 1)
+     */
+    public StratifiedSample(ExposureStack stack, int samplesPerGreyValue) {
+        if (samplesPerGreyValue < 1)
+            throw new IllegalArgumentException("At least one sample per grey value is needed.");
+        int N = stack.getImageSize();
+        int P = stack.getImageCount();
+        byte[] samples = stack.getSamples();
+        int[] histogram = stack.getHistogram();
+
+        // the q-th chosen occurrence of k is the one at (q + 0.5) * histogram[k] / m_k
+        int[] seen = new int[256];
+        int[] taken = new int[256];
+        int[] next = new int[256];
+        for (int k = 0; k < 256; k++) {
+            next[k] = position(0, histogram[k], samplesPerGreyValue);
+        }
+        boolean[] chosen = new boolean[N];
+        int count = 0;
+        for (int n = 0; n < samples.length; n++) {
+            int k = samples[n] & 0xff;
+            if (seen[k]++ == next[k]) {
+                taken[k]++;
+                next[k] = taken[k] < Math.min(samplesPerGreyValue, histogram[k]) ? position(taken[k], histogram[k], samplesPerGreyValue) : -1;
+                if (!chosen[n / P]) {
+                    chosen[n / P] = true;
+                    count++;
+                }
+            }
+        }
+
+        pixels = new int[count];
+        byte[] subSamples = new byte[count * P];
+        for (int i = 0, c = 0; i < N; i++) {
+            if (chosen[i]) {
+                pixels[c] = i;
+                System.arraycopy(samples, i * P, subSamples, c * P, P);
+                c++;
+            }
+        }
+        double[] exposureTimes = new double[P];
+        for (int j = 0; j < P; j++) {
+            exposureTimes[j] = stack.getExposureTime(j);
+        }
+        // the chosen pixels are no picture any more, they are stored as a single row
+        this.stack = new ExposureStack(count, 1, exposureTimes, subSamples);
+    }
+
+    /**
+     * position of the q-th chosen occurrence of a grey value
+     */
+    private static int position(int q, int occurrences, int samplesPerGreyValue) {
+        int m = Math.min(samplesPerGreyValue, occurrences);
+        if (m == 0)
+            return -1;
+        return (int) ((q + 0.5) * occurrences / m);
+    }
+
+    /**
+     * returns the indexes of the chosen pixels in ascending order. The array is not copied and must not be modified.
+     *
+     * @return pixel indexes in the original stack
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return number of chosen pixels
+     */
+    public int size() {
+        return pixels.length;
+    }
+
+    /**
+     * returns the samples of the chosen pixels as exposure stack of the size size() x 1
+     *
+     * @return exposure stack of the sample
+     */
+    public ExposureStack getStack() {
+        return stack;
+    }
+}
@@ -0,0 +1,257 @@
+package Solver;
+
+import Maths.EquationSolverException;
+import Maths.ParallelLoop;
+import Maths.RangeTask;
+import Maths.Vector;
+import Model.ExposureStackFile;
+import Model.WeightMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Out of core version of the @see IterativeEnergySolver without spatial smoothness of the radiance map (alpha = 0).
+ * <p/>
+ * Without spatial smoothness each pixel of F only depends on its own samples and the global response curve g, and g
+ * only depends on the 256 sums of the @see GreyValueStatistics. So both steps are done tile by tile: the samples of
+ * a tile are read from an @see ExposureStackFile, F of the tile is read from and written to a memory mapped file and
+ * the statistics of g are collected over all tiles. The weights of the robust data term are recalculated from g
+ * and F instead of being stored. The memory needed is bounded by the size of a tile, independent of the size of the
+ * pictures.
+ * <p/>
+ * The tiles are processed in the order of the pixels, so the results are the same as the ones of the
+ * IterativeEnergySolver with alpha = 0.
+ *
+ * @author sebastianzillessen
+ */
+public class TiledEnergySolver {
+    private static final double EPSILON_2 = IterativeEnergySolver.EPSILON_2;
+
+    private final ExposureStackFile stack;
+    private final File radianceFile;
+    private final int tileSize;
+    private final int iterations;
+    private final double mu;
+    private final boolean robustnessDataG;
+    private final int N;
+    private final int P;
+    private final double[] ln_t;
+    private final double[] w2 = new double[256];
+    private final ResponseCurveSystem gSystem;
+    private final GreyValueStatistics gStatistics = new GreyValueStatistics();
+    private final GreyValueStatisticsReducer gReducer;
+    private final byte[] samples;
+    private final double[] f;
+    private ParallelLoop parallelLoop = ParallelLoop.getDefault();
+    private Vector g = null;
+    // receives the messages of the calculation (null if nobody listens)
+    private HDRSolverUpdateListener update = null;
+
+    /**
+     * Creates a tiled solver.
+     *
+     * @param stack           the exposure stack with the different exposure times
+     * @param radianceFile    file for the radiance map. After solving it contains F = ln E of each pixel
+     *                        (x + y * width) as double.
+     * @param tileSize        number of pixels which are processed at once
+     * @param lambda          smoothness scaling factor           (0 disables this)
+     * @param iterations      number of iterations to use in inner and outer iterations
+     * @param mu              monotonie scaling factor                             (0 disables this)
+     * @param robustnessDataG enable subquadratic penalty terms in the data term of g
+     * @param weightMode      which weight mode to use (@see WeightMode).
+     */
+    public TiledEnergySolver(ExposureStackFile stack, File radianceFile, int tileSize,
+                             double lambda, int iterations, double mu, boolean robustnessDataG, WeightMode weightMode) {
+        if (tileSize < 1)
+            throw new IllegalArgumentException("A tile needs at least one pixel.");
+        this.stack = stack;
+        this.radianceFile = radianceFile;
+        this.N = stack.getImageSize();
+        this.P = stack.getImageCount();
+        this.tileSize = Math.min(tileSize, N);
+        this.iterations = iterations;
+        this.mu = mu;
+        this.robustnessDataG = robustnessDataG;
+        this.ln_t = stack.getLnT();
+        for (int z = 0; z < 256; z++) {
+            w2[z] = weightMode.w2(z);
+        }
+        this.gSystem = new ResponseCurveSystem(weightMode.getTable().getWeights(), lambda, mu, robustnessDataG);
+        this.gReducer = new GreyValueStatisticsReducer(N);
+        this.samples = new byte[this.tileSize * P];
+        this.f = new double[this.tileSize];
+    }
+
+    /**
+     * Sets the number of threads which are used for the per pixel calculations of a tile.
+     *
+     * @param parallelism number of threads (1 disables the parallel execution)
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelLoop = new ParallelLoop(parallelism);
+    }
+
+    /**
+     * Sets the listener which receives the messages of the calculation (HDRSolverUpdateListener#log), e.g. a
+     * skipped iteration of g.
+     *
+     * @param update the listener (null to ignore the messages)
+     */
+    public void setUpdateListener(HDRSolverUpdateListener update) {
+        this.update = update;
+    }
+
+    private void log(String message) {
+        if (update != null)
+            update.log(message);
+    }
+
+    /**
+     * Runs the calculation. The radiance map is written to the radiance file.
+     *
+     * @return the response curve g
+     * @throws IOException if the stack could not be read or the radiance map could not be written
+     */
+    public Vector solve() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(radianceFile, "rw");
+        try {
+            raf.setLength((long) N * 8);
+            FileChannel channel = raf.getChannel();
+            g = initG(new Vector(256));
+            for (int first = 0; first < N; first += tileSize) {
+                DoubleBuffer F = map(channel, first);
+                for (int i = 0; i < F.capacity(); i++) {
+                    F.put(i, 1);
+                }
+            }
+            for (int i = 0; i < iterations; i++) {
+                calculateF(channel);
+                calculateG(channel, i);
+            }
+        } finally {
+            raf.close();
+        }
+        return g;
+    }
+
+    /**
+     * @return the response curve g of the last calculation (or null)
+     */
+    public Vector getG() {
+        return g;
+    }
+
+    /**
+     * maps F of the tile starting at the given pixel
+     */
+    private DoubleBuffer map(FileChannel channel, int first) throws IOException {
+        int count = Math.min(tileSize, N - first);
+        return channel.map(FileChannel.MapMode.READ_WRITE, (long) first * 8, (long) count * 8).asDoubleBuffer();
+    }
+
+    /**
+     * Inits the vector g with a linear curve g(127)=0, g(0) = -5, g(256) = 5
+     */
+    private Vector initG(Vector g) {
+        for (int i = 0; i < g.length(); i++)
+            g.set(i, -5 + i * 5.0 / 127.0);
+        return g;
+    }
+
+    /**
+     * Calculates the new Version of F (ln E) tile by tile. Without robustness the result does not depend on the old
+     * value of F, so it is calculated only once.
+     */
+    private void calculateF(FileChannel channel) throws IOException {
+        for (int first = 0; first < N; first += tileSize) {
+            final int count = Math.min(tileSize, N - first);
+            stack.read(first, count, samples);
+            DoubleBuffer F = map(channel, first);
+            F.get(f, 0, count);
+            parallelLoop.run(count, new RangeTask() {
+                @Override
+                public void run(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        double quot = 0;
+                        double div = 0;
+                        for (int j = 0; j < P; j++) {
+                            int zij = samples[i * P + j] & 0xff;
+                            if (robustnessDataG) {
+                                double phi = phi(g.get(zij) - f[i] - ln_t[j]);
+                                quot += w2[zij] * phi * (g.get(zij) - ln_t[j]);
+                                div += w2[zij] * phi;
+                            } else {
+                                // same as IterativeEnergySolver#solveFDefault
+                                quot += g.get(zij) - ln_t[j] * w2[zij];
+                                div += w2[zij];
+                            }
+                        }
+                        f[i] = quot / div;
+                    }
+                }
+            });
+            F.rewind();
+            F.put(f, 0, count);
+        }
+    }
+
+    /**
+     * Alternating solving step to calculate the discrete function g, the statistics are collected tile by tile.
+     */
+    private void calculateG(FileChannel channel, int iteration) throws IOException {
+        int MAX_ITERATIONS = 1;
+        if (robustnessDataG || mu > 0) {
+            MAX_ITERATIONS = iterations;
+        }
+        for (int it = 0; it < MAX_ITERATIONS; it++) {
+            // without robustness the statistics only depend on F, which does not change while g is calculated
+            if (it == 0 || robustnessDataG) {
+                gReducer.clear();
+                for (int first = 0; first < N; first += tileSize) {
+                    final int tileStart = first;
+                    int count = Math.min(tileSize, N - first);
+                    stack.read(first, count, samples);
+                    map(channel, first).get(f, 0, count);
+                    // the reducer works on the pixel indexes of the whole picture, so the sums do not depend on the tiles
+                    gReducer.accumulate(parallelLoop, first, count, new GreyValueStatisticsReducer.Accumulator() {
+                        @Override
+                        public void accumulate(int from, int to, GreyValueStatistics statistics) {
+                            for (int i = from - tileStart; i < to - tileStart; i++) {
+                                for (int j = 0; j < P; j++) {
+                                    int k = samples[i * P + j] & 0xff;
+                                    double t = f[i] + ln_t[j];
+                                    if (robustnessDataG) {
+                                        double phi = phi(g.get(k) - f[i] - ln_t[j]);
+                                        statistics.add(k, w2[k] * phi, t * phi);
+                                    } else {
+                                        statistics.add(k, 1, t);
+                                    }
+                                }
+                            }
+                        }
+                    });
+                }
+                gReducer.reduce(gStatistics);
+            }
+            try {
+                g = gSystem.solve(gStatistics, g);
+            } catch (EquationSolverException e) {
+                // the old g is kept like in the IterativeEnergySolver
+                log("Error on calculation of g in iteration " + iteration + ". Skipping this iteration and processing to next one. " + e.getMessage());
+            }
+            // fix g to be zero at grey value 127
+            g = g.subtract(g.get(127));
+        }
+    }
+
+    /**
+     * weight of the subquadratic penalty function of the data term
+     */
+    private static double phi(double residual) {
+        return 1.0 / (2.0 * Math.sqrt(Math.pow(residual, 2) + EPSILON_2));
+    }
+}
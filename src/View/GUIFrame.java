@@ -59,6 +59,8 @@ public class GUIFrame extends JFrame implements ActionListener, Log, Runnable, I
     private long init_time = System.currentTimeMillis() / 1000;
     private boolean robustnessDataG = false;
     private boolean robustnessSmoothnessE = false;
+    private boolean useResponseCurveCache = false;
+    private boolean stopOnConvergence = false;
     private boolean saltAndPepperNoise = false;
     private double devStd = 0;
     private double alpha = 0;
@@ -125,7 +127,7 @@ public class GUIFrame extends JFrame implements ActionListener, Log, Runnable, I
                     try {
                         Controller.getInstance().readImages(img, this.saltAndPepperNoise, this.devStd);
                         append("Images read (" + (saltAndPepperNoise ? "SaltNPepperNoise" : "") + " " + (devStd > 0 ? "GaussianNoise: " + devStd : "") + ")");
-                        Controller.getInstance().solve(lambda, iteration, mu, robustnessDataG, robustnessSmoothnessE, weightning, alpha);
+                        Controller.getInstance().solve(lambda, iteration, mu, robustnessDataG, robustnessSmoothnessE, weightning, alpha, useResponseCurveCache, stopOnConvergence);
                     } catch (Exception e) {
                         alert("Failure in Reading images: \n" + e.getMessage());
                         e.printStackTrace();
@@ -226,6 +228,19 @@ public class GUIFrame extends JFrame implements ActionListener, Log, Runnable, I
         p.setOutputFileName(this.outputPrefix + "_" + name + "_" + init_time);
     }
 
+    /**
+     * Changes the headline of a Plot which was added before.
+     *
+     * @param p    Plot which was added with @see #addPlot
+     * @param name new headline in the tab
+     */
+    public void setPlotTitle(Plot p, String name) {
+        int index = tabs.indexOfComponent(p);
+        if (index >= 0)
+            tabs.setTitleAt(index, name);
+        p.setOutputFileName(this.outputPrefix + "_" + name + "_" + init_time);
+    }
+
 
     // LOG METHODS
 
@@ -373,7 +388,8 @@ public class GUIFrame extends JFrame implements ActionListener, Log, Runnable, I
 
 
         /** parameter inputs*/
-        JPanel btns = new JPanel(new GridLayout(13, 1, 5, 0));
+        // pairs of label and input, one pair per row
+        JPanel btns = new JPanel(new GridLayout(0, 2, 5, 0));
 
 
         addHeadline(bigFont, btns, "Parameter");
@@ -465,6 +481,29 @@ public class GUIFrame extends JFrame implements ActionListener, Log, Runnable, I
         });
         btns.add(check3);
 
+        btns.add(new JLabel("Antwortkurve g aus Cache (gleiche Kamera)"));
+        JCheckBox cache = new JCheckBox("aktivieren");
+        cache.setSelected(this.useResponseCurveCache);
+        cache.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent changeEvent) {
+                JCheckBox box = (JCheckBox) changeEvent.getSource();
+                GUIFrame.this.useResponseCurveCache = box.isSelected();
+            }
+        });
+        btns.add(cache);
+
+        btns.add(new JLabel("Abbruch bei Konvergenz (Energie/Änderung)"));
+        JCheckBox convergence = new JCheckBox("aktivieren");
+        convergence.setSelected(this.stopOnConvergence);
+        convergence.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent changeEvent) {
+                JCheckBox box = (JCheckBox) changeEvent.getSource();
+                GUIFrame.this.stopOnConvergence = box.isSelected();
+            }
+        });
+        btns.add(convergence);
 
     }
 